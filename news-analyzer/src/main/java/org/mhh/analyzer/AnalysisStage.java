@@ -0,0 +1,402 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.LatencyHistogram;
+import org.mhh.common.NewsItem;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The analysis half of the pipeline. Connections hand over decoded items with {@link #submit}; they
+ * wait in a {@link PriorityLaneQueue} with one lane per {@link NewsItem} priority, and a fixed pool of
+ * worker threads runs the {@link HeadlineAnalyzer} on whatever the queue hands out next. The time each
+ * item spent queued is recorded per priority, and the item's {@link Origin} is told once it has been
+ * analyzed so it can account for its in-flight budget. Analysis and recording times go to the
+ * {@link Metrics} stage histograms; with {@code logSampleEvery > 0} about one item in that many is also
+ * logged to the console. With a {@link HeadlineDeduplicator}, a headline already seen within its
+ * window is dropped before analysis.
+ * <p>
+ * Workers take items in micro-batches: after waiting for one item, a worker also takes whatever else
+ * is already queued, up to {@code batchSize}, and analyzes and records the batch with one call each
+ * ({@link HeadlineAnalyzer#analyzeBatch}, {@link BatchRecorder}). It never waits for a batch to fill.
+ * Analysis and record times are then measured per batch and recorded as the per-item average. If
+ * analysis fails, the batch is retried one item at a time, so only the item that fails is dropped and
+ * logged with its own origin. Recording is never retried, since part of the batch may already be
+ * recorded: the recorder reports the items it could not record, which are logged with their origins.
+ * <p>
+ * In the flyweight ingest mode connections submit {@link HeadlineFrame}s instead of items. A frame is
+ * analyzed with the current lexicon directly, bypassing any result cache in front of the analyzer,
+ * handed to the {@link FrameRecorder}, and released back to its pool before its origin is told.
+ */
+public class AnalysisStage {
+    public static final int PRIORITY_LEVELS = 10;
+
+    private final HeadlineAnalyzer analyzer;
+    private final BatchRecorder recorder;
+    private final int batchSize;
+    private final FrameRecorder frameRecorder;
+    private final PriorityLaneQueue<Object> queue; // Tasks, and HeadlineFrames in the flyweight mode
+    private final Thread[] workers;
+    private final LatencyHistogram[] queueWaitMicros = new LatencyHistogram[PRIORITY_LEVELS];
+    private final LatencyHistogram analyzeLatency;
+    private final LatencyHistogram recordLatency;
+    private final int logSampleEvery;
+    private final HeadlineDeduplicator deduplicator; // null when deduplication is off
+    private volatile boolean running = true;
+
+    /**
+     * Where a submitted item came from.
+     */
+    public interface Origin {
+        String getSourceName();
+
+        /**
+         * Called by the worker once the item has been analyzed and recorded, or has failed.
+         */
+        void onAnalyzed();
+    }
+
+    /**
+     * Records the results of a batch of analyzed items.
+     */
+    public interface BatchRecorder {
+        /**
+         * Records {@code items[0..count)}, each at most once. An item that cannot be recorded is passed
+         * to {@code failures} and the rest of the batch is still recorded; an exception thrown from here
+         * means the batch as a whole may be partly recorded.
+         */
+        void recordBatch(NewsItem[] items, HeadlineAnalyzer.AnalysisResult[] results, int count, RecordFailures failures);
+    }
+
+    /**
+     * Told about each item of a batch that could not be recorded, by its index in the batch.
+     */
+    public interface RecordFailures {
+        void onFailure(int index, RuntimeException error);
+    }
+
+    /**
+     * Records the result of a frame; the frame is only valid for the duration of the call.
+     */
+    public interface FrameRecorder {
+        void record(HeadlineFrame frame, HeadlineAnalyzer.AnalysisResult result);
+    }
+
+    private static final class Task {
+        final NewsItem item;
+        final Origin origin;
+        final long enqueuedNanos;
+
+        Task(NewsItem item, Origin origin, long enqueuedNanos) {
+            this.item = item;
+            this.origin = origin;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    public AnalysisStage(HeadlineAnalyzer analyzer, BatchRecorder recorder, int batchSize,
+                         int workerThreads, int queueCapacity, int[] priorityWeights, Metrics metrics, int logSampleEvery,
+                         HeadlineDeduplicator deduplicator, FrameRecorder frameRecorder) {
+        if (priorityWeights.length != PRIORITY_LEVELS) {
+            throw new IllegalArgumentException("Expected " + PRIORITY_LEVELS + " priority weights but got " + priorityWeights.length);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.analyzer = analyzer;
+        this.recorder = recorder;
+        this.batchSize = batchSize;
+        this.frameRecorder = frameRecorder;
+        this.queue = new PriorityLaneQueue<>(queueCapacity, priorityWeights);
+        this.workers = new Thread[workerThreads];
+        this.analyzeLatency = metrics.latency("analyze");
+        this.recordLatency = metrics.latency("record");
+        this.logSampleEvery = logSampleEvery;
+        this.deduplicator = deduplicator;
+        for (int i = 0; i < PRIORITY_LEVELS; i++) {
+            queueWaitMicros[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Default weights: a priority {@code p} lane is drained {@code p + 1} times as often as lane 0.
+     */
+    public static int[] linearWeights() {
+        int[] weights = new int[PRIORITY_LEVELS];
+        for (int i = 0; i < PRIORITY_LEVELS; i++) {
+            weights[i] = i + 1;
+        }
+        return weights;
+    }
+
+    public static int[] parseWeights(String value) {
+        String[] parts = value.split(",");
+        int[] weights = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            weights[i] = Integer.parseInt(parts[i].trim());
+        }
+        return weights;
+    }
+
+    public void start() {
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::workLoop, "analyzer-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Queues a decoded item for analysis, waiting while the queue is full.
+     */
+    public void submit(NewsItem item, Origin origin) throws InterruptedException {
+        queue.put(new Task(item, origin, System.nanoTime()), item.getPriority());
+    }
+
+    /**
+     * Queues {@code items[0..count)} with one enqueue timestamp, waiting while the queue is full. If
+     * interrupted, the items not yet queued are reported to {@code origin} as analyzed before the
+     * exception is thrown.
+     */
+    public void submitAll(NewsItem[] items, int count, Origin origin) throws InterruptedException {
+        long now = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            try {
+                queue.put(new Task(items[i], origin, now), items[i].getPriority());
+            } catch (InterruptedException e) {
+                for (int j = i; j < count; j++) {
+                    origin.onAnalyzed();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Queues a decoded frame for analysis, waiting while the queue is full; the stage releases it.
+     */
+    public void submit(HeadlineFrame frame, Origin origin) throws InterruptedException {
+        frame.origin = origin;
+        frame.enqueuedNanos = System.nanoTime();
+        queue.put(frame, frame.getPriority());
+    }
+
+    private void workLoop() {
+        Batch batch = new Batch(batchSize);
+        while (running) {
+            Object next;
+            try {
+                next = queue.poll(100, TimeUnit.MILLISECONDS);
+                while (next != null) {
+                    if (next instanceof HeadlineFrame) {
+                        process((HeadlineFrame) next);
+                    } else {
+                        batch.tasks[batch.size++] = (Task) next;
+                    }
+                    next = batch.size < batchSize ? queue.poll(0, TimeUnit.NANOSECONDS) : null;
+                }
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                if (batch.size > 0) {
+                    process(batch);
+                }
+            }
+        }
+    }
+
+    // Per-worker buffers for one micro-batch.
+    private static final class Batch {
+        final Task[] tasks;
+        final NewsItem[] items; // the items left after deduplication, with their origins and headlines
+        final Origin[] origins;
+        final String[] headlines;
+        final HeadlineAnalyzer.AnalysisResult[] results;
+        final RecordFailures recordFailures;
+        int size;
+
+        Batch(int capacity) {
+            tasks = new Task[capacity];
+            items = new NewsItem[capacity];
+            origins = new Origin[capacity];
+            headlines = new String[capacity];
+            results = new HeadlineAnalyzer.AnalysisResult[capacity];
+            recordFailures = (index, error) ->
+                    AsyncLog.warn("Error recording item from {}: {}", origins[index].getSourceName(), error);
+        }
+    }
+
+    private void process(Batch batch) {
+        long now = System.nanoTime();
+        for (int i = 0; i < batch.size; i++) {
+            Task task = batch.tasks[i];
+            queueWaitMicros[task.item.getPriority()].record(TimeUnit.NANOSECONDS.toMicros(now - task.enqueuedNanos));
+        }
+        try {
+            analyze(batch);
+        } catch (RuntimeException e) {
+            // A bad item must not take a worker thread down with it.
+            AsyncLog.warn("Error analyzing a batch of {} items: {}", batch.size, e);
+        } finally {
+            for (int i = 0; i < batch.size; i++) {
+                batch.tasks[i].origin.onAnalyzed();
+                batch.tasks[i] = null;
+                batch.items[i] = null;
+                batch.origins[i] = null;
+                batch.headlines[i] = null;
+            }
+            batch.size = 0;
+        }
+    }
+
+    private void process(HeadlineFrame frame) {
+        Origin origin = frame.origin;
+        queueWaitMicros[frame.getPriority()].record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - frame.enqueuedNanos));
+        try {
+            analyze(frame, origin);
+        } catch (RuntimeException e) {
+            AsyncLog.warn("Error analyzing item from {}: {}", origin.getSourceName(), e);
+        } finally {
+            frame.release();
+            origin.onAnalyzed();
+        }
+    }
+
+    private void analyze(Batch batch) {
+        int count = 0;
+        for (int i = 0; i < batch.size; i++) {
+            NewsItem item = batch.tasks[i].item;
+            if (deduplicator == null || !deduplicator.isDuplicate(item.getHeadline())) {
+                batch.items[count] = item;
+                batch.origins[count] = batch.tasks[i].origin;
+                batch.headlines[count] = item.getHeadline();
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            analyzer.analyzeBatch(batch.headlines, count, batch.results);
+        } catch (RuntimeException e) {
+            count = analyzeOneByOne(batch, count);
+            if (count == 0) {
+                return;
+            }
+        }
+        long analyzed = System.nanoTime();
+        analyzeLatency.record((analyzed - start) / count);
+
+        if (recorder != null) {
+            try {
+                recorder.recordBatch(batch.items, batch.results, count, batch.recordFailures);
+            } catch (RuntimeException e) {
+                AsyncLog.warn("Error recording a batch of {} items: {}", count, e);
+            }
+            recordLatency.record((System.nanoTime() - analyzed) / count);
+        }
+
+        if (logSampleEvery > 0) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < count; i++) {
+                if (random.nextInt(logSampleEvery) == 0) {
+                    AsyncLog.info("Received from [{}]: {}", batch.origins[i].getSourceName(), batch.headlines[i]);
+                    AsyncLog.info("Analysis for \"{}\": {}", batch.headlines[i], batch.results[i]);
+                }
+            }
+        }
+    }
+
+    // Analyzes each item on its own, drops the ones that fail and returns how many are left.
+    private int analyzeOneByOne(Batch batch, int count) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            try {
+                batch.results[kept] = analyzer.analyze(batch.headlines[i]);
+            } catch (RuntimeException e) {
+                AsyncLog.warn("Error analyzing item from {}: {}", batch.origins[i].getSourceName(), e);
+                continue;
+            }
+            batch.items[kept] = batch.items[i];
+            batch.origins[kept] = batch.origins[i];
+            batch.headlines[kept] = batch.headlines[i];
+            kept++;
+        }
+        return kept;
+    }
+
+    private void analyze(HeadlineFrame frame, Origin origin) {
+        if (deduplicator != null && deduplicator.isDuplicate(frame)) {
+            return;
+        }
+        long start = System.nanoTime();
+        HeadlineAnalyzer.AnalysisResult result = HeadlineAnalyzer.analyze(analyzer.getLexicon(), frame);
+        long analyzed = System.nanoTime();
+        analyzeLatency.record(analyzed - start);
+
+        if (frameRecorder != null) {
+            frameRecorder.record(frame, result);
+            recordLatency.record(System.nanoTime() - analyzed);
+        }
+
+        if (logSampleEvery > 0 && ThreadLocalRandom.current().nextInt(logSampleEvery) == 0) {
+            String headline = frame.toString();
+            AsyncLog.info("Received from [{}]: {}", origin.getSourceName(), headline);
+            AsyncLog.info("Analysis for \"{}\": {}", headline, result);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public void getQueueDepths(int[] depths) {
+        queue.laneSizes(depths);
+    }
+
+    /**
+     * Queue wait, in microseconds, of the items of {@code priority} taken since the last
+     * {@link #resetQueueWait()}.
+     */
+    public LatencyHistogram getQueueWait(int priority) {
+        return queueWaitMicros[priority];
+    }
+
+    public void resetQueueWait() {
+        for (LatencyHistogram histogram : queueWaitMicros) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Lets the workers finish the items already queued, for up to {@code timeoutMillis}, then stops them.
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (queue.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        running = false;
+        for (Thread worker : workers) {
+            if (worker != null) {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        }
+        if (queue.size() > 0) {
+            System.err.println("Analysis stage stopped with " + queue.size() + " items still queued.");
+        }
+    }
+}
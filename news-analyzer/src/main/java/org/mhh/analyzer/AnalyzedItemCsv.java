@@ -0,0 +1,39 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The CSV row layout shared by the shutdown dump and the columnar archive export, so both produce
+ * byte-identical files.
+ */
+final class AnalyzedItemCsv {
+    static final String HEADER = "AnalysisTimestamp,Headline,Priority,AnalysisResult";
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private AnalyzedItemCsv() {
+    }
+
+    static void appendRow(StringBuilder out, Instant timestamp, String headline, int priority,
+                          HeadlineAnalyzer.AnalysisResult result) {
+        out.append('"');
+        TIMESTAMP_FORMATTER.formatTo(timestamp.atZone(ZoneId.systemDefault()), out);
+        out.append("\",\"");
+        if (headline != null) {
+            for (int i = 0; i < headline.length(); i++) {
+                char c = headline.charAt(i);
+                if (c == '"') {
+                    out.append('"'); // Escape quotes for CSV
+                }
+                out.append(c);
+            }
+        }
+        out.append("\",").append(priority).append(',').append(result.name()).append(LINE_SEPARATOR);
+    }
+}
@@ -0,0 +1,54 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.AnalyzedNewsItem;
+
+import java.util.function.Consumer;
+
+/**
+ * In-memory store of analyzed items with bounded retention. Appends may come from any number of
+ * threads; iteration is weakly consistent and runs from the oldest retained item to the newest.
+ */
+public interface AnalyzedItemStore {
+
+    void append(AnalyzedNewsItem item);
+
+    /**
+     * Appends {@code items[0..count)}; stores override it to claim room for the whole batch at once.
+     */
+    default void appendAll(AnalyzedNewsItem[] items, int count) {
+        for (int i = 0; i < count; i++) {
+            append(items[i]);
+        }
+    }
+
+    /**
+     * Number of items currently retained.
+     */
+    long size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Number of items ever appended, including evicted ones.
+     */
+    long getTotalAppended();
+
+    /**
+     * Number of items dropped by the retention policy.
+     */
+    long getEvictedCount();
+
+    /**
+     * Drops items that fall outside the retention policy. Called periodically; a no-op for stores
+     * that only bound by count.
+     */
+    void evictExpired();
+
+    void forEach(Consumer<? super AnalyzedNewsItem> action);
+}
@@ -0,0 +1,212 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Console logging for the server's connection and analysis threads that never blocks them. A call
+ * below the configured level returns after one comparison; otherwise it claims a slot in a fixed ring
+ * of preallocated entries, stores the template and up to three arguments, and returns. A single daemon
+ * thread formats the entries ({@code {}} placeholders, in order) and writes INFO and below to
+ * {@code System.out}, WARN and ERROR to {@code System.err}. When the ring is full the entry is dropped
+ * and counted rather than making the caller wait.
+ * <p>
+ * Configured with {@code analyzer.log.level} (DEBUG, INFO, WARN, ERROR; default INFO, also used with a
+ * warning for an unknown level) and {@code analyzer.log.bufferSize} (entries, rounded up to a power of
+ * two; default 8192).
+ */
+public final class AsyncLog {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final Level THRESHOLD = parseLevel(System.getProperty("analyzer.log.level", "INFO"));
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(2, Integer.getInteger("analyzer.log.bufferSize", 8192) - 1)) << 1;
+    private static final int MASK = CAPACITY - 1;
+
+    // Bounded multi-producer queue with a sequence number per slot: a slot whose sequence equals the
+    // producer's claim position is free, one ahead of it holds a published entry.
+    private static final Entry[] RING = new Entry[CAPACITY];
+    private static final AtomicLong TAIL = new AtomicLong();
+    private static long head; // writer thread only
+    private static final LongAdder WRITTEN = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final Thread WRITER;
+    private static volatile boolean writerParked;
+
+    private static final class Entry {
+        final AtomicLong sequence;
+        Level level;
+        String template;
+        Object arg0;
+        Object arg1;
+        Object arg2;
+
+        Entry(long sequence) {
+            this.sequence = new AtomicLong(sequence);
+        }
+    }
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            RING[i] = new Entry(i);
+        }
+        WRITER = new Thread(AsyncLog::writeLoop, "analyzer-log");
+        WRITER.setDaemon(true);
+        WRITER.start();
+    }
+
+    private AsyncLog() {
+    }
+
+    private static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid analyzer.log.level: " + value + ". Using INFO (expected DEBUG, INFO, WARN or ERROR)");
+            return Level.INFO;
+        }
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(THRESHOLD) >= 0;
+    }
+
+    public static void debug(String template, Object arg0, Object arg1, Object arg2) {
+        log(Level.DEBUG, template, arg0, arg1, arg2);
+    }
+
+    public static void info(String template) {
+        log(Level.INFO, template, null, null, null);
+    }
+
+    public static void info(String template, Object arg0) {
+        log(Level.INFO, template, arg0, null, null);
+    }
+
+    public static void info(String template, Object arg0, Object arg1) {
+        log(Level.INFO, template, arg0, arg1, null);
+    }
+
+    public static void info(String template, Object arg0, Object arg1, Object arg2) {
+        log(Level.INFO, template, arg0, arg1, arg2);
+    }
+
+    public static void warn(String template, Object arg0) {
+        log(Level.WARN, template, arg0, null, null);
+    }
+
+    public static void warn(String template, Object arg0, Object arg1) {
+        log(Level.WARN, template, arg0, arg1, null);
+    }
+
+    public static void warn(String template, Object arg0, Object arg1, Object arg2) {
+        log(Level.WARN, template, arg0, arg1, arg2);
+    }
+
+    public static void error(String template, Object arg0, Object arg1) {
+        log(Level.ERROR, template, arg0, arg1, null);
+    }
+
+    public static void log(Level level, String template, Object arg0, Object arg1, Object arg2) {
+        if (level.compareTo(THRESHOLD) < 0) {
+            return;
+        }
+        Entry entry;
+        long position;
+        while (true) {
+            position = TAIL.get();
+            entry = RING[(int) position & MASK];
+            long available = entry.sequence.get() - position;
+            if (available < 0) {
+                DROPPED.increment(); // ring full: the writer is a whole buffer behind
+                return;
+            }
+            if (available == 0 && TAIL.compareAndSet(position, position + 1)) {
+                break;
+            }
+        }
+        entry.level = level;
+        entry.template = template;
+        entry.arg0 = arg0;
+        entry.arg1 = arg1;
+        entry.arg2 = arg2;
+        entry.sequence.set(position + 1);
+        if (writerParked) {
+            LockSupport.unpark(WRITER);
+        }
+    }
+
+    public static long getWrittenCount() {
+        return WRITTEN.sum();
+    }
+
+    public static long getDroppedCount() {
+        return DROPPED.sum();
+    }
+
+    /**
+     * Waits up to {@code timeoutMillis} for the entries logged so far to be written. Dropped entries
+     * never took a slot, so only written ones count towards the tail.
+     */
+    public static void flush(long timeoutMillis) {
+        long target = TAIL.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (WRITTEN.sum() < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(WRITER);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private static void writeLoop() {
+        StringBuilder line = new StringBuilder(256);
+        PrintStream lastStream = null;
+        while (true) {
+            Entry entry = RING[(int) head & MASK];
+            if (entry.sequence.get() != head + 1) {
+                if (lastStream != null) {
+                    lastStream.flush();
+                    lastStream = null;
+                }
+                writerParked = true;
+                if (entry.sequence.get() != head + 1) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                }
+                writerParked = false;
+                continue;
+            }
+            line.setLength(0);
+            format(line, entry.template, entry.arg0, entry.arg1, entry.arg2);
+            PrintStream stream = entry.level.compareTo(Level.WARN) >= 0 ? System.err : System.out;
+            entry.template = null;
+            entry.arg0 = entry.arg1 = entry.arg2 = null;
+            entry.sequence.set(head + CAPACITY);
+            head++;
+            if (lastStream != null && lastStream != stream) {
+                lastStream.flush();
+            }
+            stream.println(line);
+            lastStream = stream;
+            WRITTEN.increment();
+        }
+    }
+
+    private static void format(StringBuilder out, String template, Object arg0, Object arg1, Object arg2) {
+        int argument = 0;
+        int from = 0;
+        int marker;
+        while (argument < 3 && (marker = template.indexOf("{}", from)) >= 0) {
+            out.append(template, from, marker).append(argument == 0 ? arg0 : argument == 1 ? arg1 : arg2);
+            argument++;
+            from = marker + 2;
+        }
+        out.append(template, from, template.length());
+    }
+}
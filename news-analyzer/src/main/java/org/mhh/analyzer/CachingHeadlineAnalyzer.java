@@ -0,0 +1,373 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.Hashing;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link HeadlineAnalyzer} that remembers the results of recently seen headlines. Analysis is pure
+ * for a given {@link Lexicon}, so a repeated headline is answered from the cache without scanning it.
+ * Headlines that differ only in ASCII letter case share an entry, since the matcher folds case anyway.
+ * <p>
+ * The cache is split into stripes by headline hash, each guarded by its own lock and run as a small
+ * W-TinyLFU: new entries go to a window LRU of about 1% of the stripe; an entry leaving the window is
+ * admitted to the main segmented LRU (probation, then protected once hit again) only if a count-min
+ * frequency sketch says it has been requested more often than the entry it would evict. One-off
+ * headlines therefore cannot flush the popular ones. A stripe clears itself the first time it is used
+ * with a different lexicon, so results never outlive a reload.
+ * <p>
+ * A hit still costs a hashing pass, an equality pass and a lock, while the {@link KeywordMatcher}
+ * classifies a headline in one allocation-free pass, so the cache is off by default. Measure with
+ * {@code HeadlineAnalyzerBenchmark} before enabling it.
+ */
+public class CachingHeadlineAnalyzer extends HeadlineAnalyzer {
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final int capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public CachingHeadlineAnalyzer(Lexicon lexicon, int capacity) {
+        super(lexicon);
+        if (capacity < STRIPES * 4) {
+            throw new IllegalArgumentException("Result cache capacity must be at least " + STRIPES * 4 + ": " + capacity);
+        }
+        this.capacity = capacity;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(capacity / STRIPES);
+        }
+    }
+
+    @Override
+    public AnalysisResult analyze(String headline) {
+        if (headline == null) {
+            return AnalysisResult.NEUTRAL;
+        }
+        Lexicon current = getLexicon();
+        long hash = Hashing.hash64IgnoreAsciiCase(headline); // see sameHeadline
+        Stripe stripe = stripes[(int) (hash >>> 60)];
+        synchronized (stripe) {
+            if (stripe.lexicon != current) {
+                if (stripe.lexicon != null) {
+                    invalidations.increment();
+                }
+                stripe.clear(current);
+            }
+            AnalysisResult cached = stripe.get(hash, headline);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        AnalysisResult result = analyze(current, headline);
+        synchronized (stripe) {
+            if (stripe.lexicon == current) {
+                stripe.put(hash, headline, result);
+            }
+        }
+        return result;
+    }
+
+    // Item by item, so every headline goes through the cache.
+    @Override
+    public void analyzeBatch(String[] headlines, int count, AnalysisResult[] results) {
+        for (int i = 0; i < count; i++) {
+            results[i] = analyze(headlines[i]);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Candidates turned away by the frequency sketch on their way from the window to the main cache.
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * Stripes cleared because the lexicon changed.
+     */
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    static boolean sameHeadline(String a, String b) {
+        if (a == b) {
+            return true;
+        }
+        if (a.length() != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < a.length(); i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if (x != y && !(x >= 'A' && x <= 'Z' && x + ('a' - 'A') == y) && !(y >= 'A' && y <= 'Z' && y + ('a' - 'A') == x)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final class Node {
+        final long hash;
+        final String headline;
+        final AnalysisResult result;
+        int segment;
+        Node prev;
+        Node next;
+
+        Node(long hash, String headline, AnalysisResult result) {
+            this.hash = hash;
+            this.headline = headline;
+            this.result = result;
+        }
+    }
+
+    private final class Stripe {
+        final int windowCapacity;
+        final int protectedCapacity;
+        final int mainCapacity;
+        final Node[] heads = new Node[3]; // sentinels of circular lists, most recent first
+        final int[] sizes = new int[3];
+        final FrequencySketch sketch;
+        final long[] keys;
+        final Node[] slots;
+        int size;
+        Lexicon lexicon;
+
+        Stripe(int capacity) {
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.mainCapacity = capacity - windowCapacity;
+            this.protectedCapacity = mainCapacity * 4 / 5;
+            this.sketch = new FrequencySketch(capacity);
+            int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+            this.keys = new long[tableSize];
+            this.slots = new Node[tableSize];
+            for (int i = 0; i < 3; i++) {
+                Node sentinel = new Node(0, null, null);
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                heads[i] = sentinel;
+            }
+        }
+
+        void clear(Lexicon newLexicon) {
+            Arrays.fill(slots, null);
+            for (int i = 0; i < 3; i++) {
+                heads[i].prev = heads[i];
+                heads[i].next = heads[i];
+                sizes[i] = 0;
+            }
+            size = 0;
+            sketch.clear();
+            lexicon = newLexicon;
+        }
+
+        AnalysisResult get(long hash, String headline) {
+            sketch.increment(hash);
+            int slot = find(hash);
+            if (slot < 0) {
+                return null;
+            }
+            Node node = slots[slot];
+            if (!sameHeadline(node.headline, headline)) {
+                return null; // 64-bit collision; served uncached
+            }
+            unlink(node);
+            if (node.segment == PROBATION) {
+                linkFirst(node, PROTECTED);
+                if (sizes[PROTECTED] > protectedCapacity) {
+                    Node demoted = heads[PROTECTED].prev;
+                    unlink(demoted);
+                    linkFirst(demoted, PROBATION);
+                }
+            } else {
+                linkFirst(node, node.segment);
+            }
+            return node.result;
+        }
+
+        void put(long hash, String headline, AnalysisResult result) {
+            if (find(hash) >= 0) {
+                return; // another worker got here first, or a collision
+            }
+            Node node = new Node(hash, headline, result);
+            insert(node);
+            linkFirst(node, WINDOW);
+            if (sizes[WINDOW] <= windowCapacity) {
+                return;
+            }
+            Node candidate = heads[WINDOW].prev;
+            unlink(candidate);
+            if (sizes[PROBATION] + sizes[PROTECTED] < mainCapacity) {
+                linkFirst(candidate, PROBATION);
+                return;
+            }
+            Node victim = sizes[PROBATION] > 0 ? heads[PROBATION].prev : heads[PROTECTED].prev;
+            if (sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                unlink(victim);
+                remove(victim.hash);
+                linkFirst(candidate, PROBATION);
+            } else {
+                remove(candidate.hash);
+                rejections.increment();
+            }
+            evictions.increment();
+        }
+
+        private void linkFirst(Node node, int segment) {
+            Node head = heads[segment];
+            node.segment = segment;
+            node.prev = head;
+            node.next = head.next;
+            head.next.prev = node;
+            head.next = node;
+            sizes[segment]++;
+        }
+
+        private void unlink(Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            sizes[node.segment]--;
+        }
+
+        // Open addressing with linear probing; the table is at least twice the stripe capacity.
+        private int find(long hash) {
+            int mask = slots.length - 1;
+            for (int i = (int) hash & mask; slots[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == hash) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(Node node) {
+            int mask = slots.length - 1;
+            int i = (int) node.hash & mask;
+            while (slots[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = node.hash;
+            slots[i] = node;
+            size++;
+        }
+
+        private void remove(long hash) {
+            int mask = slots.length - 1;
+            int hole = find(hash);
+            slots[hole] = null;
+            size--;
+            // Shift later entries of the probe run back so lookups never stop at the hole early.
+            for (int i = (hole + 1) & mask; slots[i] != null; i = (i + 1) & mask) {
+                int home = (int) keys[i] & mask;
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    keys[hole] = keys[i];
+                    slots[hole] = slots[i];
+                    slots[i] = null;
+                    hole = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Count-min sketch with four rows of saturating byte counters. All counters are halved after
+     * ten samples per cache entry, so old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final long[] SEEDS = {0x9e3779b97f4a7c15L, 0xbf58476d1ce4e5b9L, 0x94d049bb133111ebL, 0xd6e8feb86659fd93L};
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] rows = new byte[DEPTH][];
+        private final int mask;
+        private final int resetThreshold;
+        private int samples;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+            for (int i = 0; i < DEPTH; i++) {
+                rows[i] = new byte[width];
+            }
+            this.mask = width - 1;
+            this.resetThreshold = 10 * capacity;
+        }
+
+        void increment(long hash) {
+            for (int i = 0; i < DEPTH; i++) {
+                int index = index(hash, i);
+                if (rows[i][index] < MAX_COUNT) {
+                    rows[i][index]++;
+                }
+            }
+            if (++samples >= resetThreshold) {
+                for (byte[] row : rows) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] >>= 1;
+                    }
+                }
+                samples /= 2;
+            }
+        }
+
+        int frequency(long hash) {
+            int min = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                min = Math.min(min, rows[i][index(hash, i)]);
+            }
+            return min;
+        }
+
+        void clear() {
+            for (byte[] row : rows) {
+                Arrays.fill(row, (byte) 0);
+            }
+            samples = 0;
+        }
+
+        private int index(long hash, int row) {
+            long h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) & 3];
+            return (int) (h >>> 40) & mask;
+        }
+    }
+}
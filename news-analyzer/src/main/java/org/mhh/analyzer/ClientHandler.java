@@ -4,73 +4,479 @@ package org.mhh.analyzer;
  * @auther:MHEsfandiari
  */
 
+import org.mhh.common.LatencyHistogram;
 import org.mhh.common.NewsItem;
+import org.mhh.common.NewsItemCodec;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.net.Socket;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
-import java.util.function.BiConsumer;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class ClientHandler implements Runnable {
-    private final Socket clientSocket;
-    private final HeadlineAnalyzer analyzer;
-    private final BiConsumer<NewsItem, HeadlineAnalyzer.AnalysisResult> analysisRecorder;
+/**
+ * Per-connection state. The {@link SelectorLoop} feeds it raw bytes; decoding runs as this
+ * {@link Runnable} on the decode executor, at most one run per connection at a time, and every
+ * decoded item is handed to the {@link AnalysisStage}, which analyzes items in priority order.
+ * <p>
+ * The first byte selects the protocol: {@link NewsItemCodec#HANDSHAKE} switches to binary frames,
+ * which are cut on the I/O thread without blocking; anything else is a legacy Java serialization
+ * stream that the worker decodes with an {@link ObjectInputStream}.
+ * <p>
+ * Every admitted item counts against this connection's and the server's {@link FlowControl} budget
+ * until it has been analyzed. Over budget, or with too many undecoded bytes buffered, the handler
+ * asks its {@link SelectorLoop} to stop reading the socket and resumes once the backlog has halved.
+ * Bytes and items received are counted per connection and decode time goes to {@link Metrics}.
+ * <p>
+ * With a {@link HeadlineFramePool} (the flyweight ingest mode), binary frames are decoded into pooled
+ * {@link HeadlineFrame}s instead of {@link NewsItem}s and queued on an intrusive list through the
+ * frames' own links, so a frame passes from the socket to the analysis workers without allocating.
+ */
+public class ClientHandler implements Runnable, AnalysisStage.Origin {
+    private static final int INITIAL_FRAME_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_BUFFERED_BYTES = 1024 * 1024;
+
+    enum Protocol { BINARY, JAVA_SERIALIZATION }
+
+    private final SocketChannel clientChannel;
+    private final String clientIdentifier;
+    private final AnalysisStage analysisStage;
+    private final Executor workerExecutor;
+    private final FlowControl flowControl;
+    private final Metrics metrics;
+    private final LatencyHistogram decodeLatency;
+    private final InboundByteStream inbound;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final Queue<NewsItem> decodedItems = new ConcurrentLinkedQueue<>();
+    private final HeadlineFramePool framePool; // null unless the flyweight ingest mode is on
+    private final Object frameLock = new Object();
+    private HeadlineFrame firstFrame; // decoded frames waiting for the worker, guarded by frameLock
+    private HeadlineFrame lastFrame;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong itemsReceived = new AtomicLong();
+    private final AtomicBoolean readingPaused = new AtomicBoolean();
+    final AtomicBoolean waitingForBudget = new AtomicBoolean(); // owned by FlowControl
+    private volatile SelectorLoop selectorLoop;
+    private volatile Protocol protocol;
+    private ByteBuffer frameBuffer; // only touched by the I/O thread
+    private ObjectInputStream in; // only touched by the worker currently running this handler
+    private NewsItem[] submitBatch; // likewise
 
-    public ClientHandler(Socket socket, HeadlineAnalyzer analyzer, BiConsumer<NewsItem, HeadlineAnalyzer.AnalysisResult> recorder) {
-        this.clientSocket = socket;
-        this.analyzer = analyzer;
-        this.analysisRecorder = recorder;
-        System.out.println("Handler created for client: " + getClientIdentifier());
+    public ClientHandler(SocketChannel channel, AnalysisStage analysisStage, Executor workerExecutor,
+                         FlowControl flowControl, Metrics metrics, long stallTimeoutMillis, HeadlineFramePool framePool) {
+        this.clientChannel = channel;
+        InetSocketAddress remoteAddress = (InetSocketAddress) channel.socket().getRemoteSocketAddress();
+        this.clientIdentifier = remoteAddress == null ? "Unknown Client"
+                : remoteAddress.getAddress().getHostAddress() + ":" + remoteAddress.getPort();
+        this.analysisStage = analysisStage;
+        this.workerExecutor = workerExecutor;
+        this.flowControl = flowControl;
+        this.metrics = metrics;
+        this.decodeLatency = metrics.latency("decode");
+        this.inbound = new InboundByteStream(stallTimeoutMillis);
+        this.framePool = framePool;
+        metrics.connectionOpened(this);
+        AsyncLog.info("Handler created for client: {}", clientIdentifier);
     }
 
-    @Override
-    public void run() {
-        System.out.println("Handler thread started for: " + getClientIdentifier());
-        try (ObjectInputStream in = new ObjectInputStream(clientSocket.getInputStream())) {
-            Object receivedObject;
-            while (true) {
-                receivedObject = in.readObject();
-                if (receivedObject instanceof NewsItem) {
-                    NewsItem receivedItem = (NewsItem) receivedObject;
-                    System.out.println("Received from [" + getClientIdentifier() + "]: " + receivedItem.getHeadline());
-
-                    HeadlineAnalyzer.AnalysisResult result = analyzer.analyze(receivedItem.getHeadline());
-                    System.out.println("Analysis for \"" + receivedItem.getHeadline() + "\": " + result);
-
-                    if (analysisRecorder != null) {
-                        analysisRecorder.accept(receivedItem, result);
-                    }
+    public SocketChannel getChannel() {
+        return clientChannel;
+    }
+
+    void setSelectorLoop(SelectorLoop selectorLoop) {
+        this.selectorLoop = selectorLoop;
+    }
+
+    boolean isReadingPaused() {
+        return readingPaused.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getItemsReceived() {
+        return itemsReceived.get();
+    }
 
+    void onBytesRead(ByteBuffer bytes) {
+        if (!bytes.hasRemaining()) {
+            return;
+        }
+        bytesReceived.addAndGet(bytes.remaining());
+        metrics.bytesReceived(bytes.remaining());
+        if (protocol == null) {
+            if (bytes.get(bytes.position()) == NewsItemCodec.HANDSHAKE) {
+                bytes.get();
+                protocol = Protocol.BINARY;
+                frameBuffer = ByteBuffer.allocate(INITIAL_FRAME_BUFFER_SIZE);
+            } else {
+                protocol = Protocol.JAVA_SERIALIZATION;
+            }
+            AsyncLog.info("Client {} is using the {} protocol", clientIdentifier, protocol);
+        }
+        boolean overBudget;
+        if (protocol == Protocol.BINARY) {
+            try {
+                overBudget = decodeFrames(bytes);
+            } catch (StreamCorruptedException e) {
+                AsyncLog.warn("Malformed frame from {}: {}", clientIdentifier, e.getMessage());
+                finish();
+                return;
+            }
+        } else {
+            inbound.append(bytes);
+            overBudget = isOverBudget();
+        }
+        if (overBudget) {
+            pauseReading();
+        }
+        schedule();
+    }
+
+    private boolean decodeFrames(ByteBuffer bytes) throws StreamCorruptedException {
+        if (frameBuffer.remaining() < bytes.remaining()) {
+            int required = frameBuffer.position() + bytes.remaining();
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(required, frameBuffer.capacity() * 2));
+            frameBuffer.flip();
+            grown.put(frameBuffer);
+            frameBuffer = grown;
+        }
+        frameBuffer.put(bytes);
+        return decodeBufferedFrames();
+    }
+
+    /**
+     * Decodes buffered frames until the budget is used up, returning true if it was; the remaining
+     * frames then stay buffered until reading resumes.
+     */
+    private boolean decodeBufferedFrames() throws StreamCorruptedException {
+        long start = System.nanoTime();
+        int decoded = 0;
+        frameBuffer.flip();
+        boolean overBudget;
+        if (framePool != null) {
+            HeadlineFrame frame;
+            while (!(overBudget = isOverBudget()) && (frame = framePool.decode(frameBuffer)) != null) {
+                decoded++;
+                if (admit(frame.getPriority())) {
+                    enqueue(frame);
                 } else {
-                    System.err.println("Received unexpected object type from "
-                            + getClientIdentifier() + ": " + (receivedObject != null ? receivedObject.getClass().getName() : "null"));
+                    frame.release();
+                }
+            }
+        } else {
+            NewsItem item;
+            while (!(overBudget = isOverBudget()) && (item = NewsItemCodec.decode(frameBuffer)) != null) {
+                decoded++;
+                if (admit(item.getPriority())) {
+                    decodedItems.add(item);
                 }
             }
+        }
+        frameBuffer.compact();
+        if (decoded > 0) {
+            decodeLatency.record((System.nanoTime() - start) / decoded); // per-item average over this read
+        }
+        return overBudget;
+    }
+
+    private void enqueue(HeadlineFrame frame) {
+        synchronized (frameLock) {
+            if (lastFrame == null) {
+                firstFrame = frame;
+            } else {
+                lastFrame.next = frame;
+            }
+            lastFrame = frame;
+        }
+    }
+
+    private HeadlineFrame pollFrame() {
+        synchronized (frameLock) {
+            HeadlineFrame frame = firstFrame;
+            if (frame != null) {
+                firstFrame = frame.next;
+                if (firstFrame == null) {
+                    lastFrame = null;
+                }
+                frame.next = null;
+            }
+            return frame;
+        }
+    }
+
+    private boolean hasDecoded() {
+        if (!decodedItems.isEmpty()) {
+            return true;
+        }
+        synchronized (frameLock) {
+            return firstFrame != null;
+        }
+    }
+
+    /**
+     * Called on the I/O thread when the selector starts reading this connection again.
+     */
+    void onReadingResumed() {
+        if (protocol != Protocol.BINARY || frameBuffer.position() == 0) {
+            return;
+        }
+        try {
+            if (decodeBufferedFrames()) {
+                pauseReading();
+            }
+        } catch (StreamCorruptedException e) {
+            AsyncLog.warn("Malformed frame from {}: {}", clientIdentifier, e.getMessage());
+            finish();
+            return;
+        }
+        schedule();
+    }
+
+    void onEndOfStream() {
+        inbound.markEndOfStream();
+        schedule();
+    }
+
+    void onReadFailure(IOException e) {
+        AsyncLog.warn("Socket Exception for {}: {} (Client likely disconnected)", clientIdentifier, e.getMessage());
+        finish();
+    }
+
+    void onHandlerFailure(RuntimeException e) {
+        AsyncLog.error("Error handling data from {}, closing the connection: {}", clientIdentifier, e);
+        finish();
+    }
+
+    private boolean admit(int priority) {
+        itemsReceived.incrementAndGet();
+        metrics.itemReceived();
+        if (!flowControl.admit(priority)) {
+            return false;
+        }
+        inFlight.incrementAndGet();
+        return true;
+    }
+
+    private boolean isOverBudget() {
+        return inFlight.get() >= flowControl.getConnectionLimit() || flowControl.isGlobalExhausted()
+                || inbound.available() > MAX_BUFFERED_BYTES;
+    }
+
+    private void pauseReading() {
+        if (finished.get() || !readingPaused.compareAndSet(false, true)) {
+            return;
+        }
+        inbound.setPaused(true);
+        flowControl.onPaused();
+        selectorLoop.updateInterest(this);
+        // The backlog may have drained before the flag was set; nobody else would resume us then.
+        maybeResumeReading();
+    }
+
+    /**
+     * Resumes reading once this connection's backlog has halved and the server has global headroom;
+     * while only the global budget is short, the connection waits in {@link FlowControl} instead.
+     */
+    void maybeResumeReading() {
+        if (!readingPaused.get() || finished.get()) {
+            return;
+        }
+        if (inFlight.get() > flowControl.getConnectionLimit() / 2 || inbound.available() > MAX_BUFFERED_BYTES / 2) {
+            return;
+        }
+        if (!flowControl.hasGlobalHeadroom()) {
+            flowControl.awaitBudget(this);
+            return;
+        }
+        if (readingPaused.compareAndSet(true, false)) {
+            inbound.setPaused(false);
+            flowControl.onResumed();
+            selectorLoop.updateInterest(this);
+        }
+    }
+
+    @Override
+    public String getSourceName() {
+        return clientIdentifier;
+    }
+
+    @Override
+    public void onAnalyzed() {
+        inFlight.decrementAndGet();
+        flowControl.release();
+        maybeResumeReading();
+    }
+
+    private void schedule() {
+        if (finished.get() || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            workerExecutor.execute(this);
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false);
+            finish();
+        }
+    }
+
+    private boolean hasWork() {
+        if (protocol == Protocol.BINARY) {
+            return hasDecoded() || inbound.isEndOfStream();
+        }
+        return inbound.available() > 0 || inbound.isEndOfStream();
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (protocol == Protocol.BINARY) {
+                processDecodedItems();
+            } else {
+                processObjectStream();
+            }
         } catch (EOFException e) {
-            System.out.println("Client " + getClientIdentifier() + " finished sending data and closed the connection (EOF).");
+            AsyncLog.info("Client {} finished sending data and closed the connection (EOF).", clientIdentifier);
+            finish();
+        } catch (SocketTimeoutException e) {
+            AsyncLog.warn("Client {} timed out: {}", clientIdentifier, e.getMessage());
+            finish();
         } catch (SocketException e) {
-            System.err.println("Socket Exception for " + getClientIdentifier() + ": " + e.getMessage() + " (Client likely disconnected)");
+            AsyncLog.warn("Socket Exception for {}: {} (Client likely disconnected)", clientIdentifier, e.getMessage());
+            finish();
         } catch (IOException e) {
-            System.err.println("I/O Error handling client " + getClientIdentifier() + ": " + e.getMessage());
+            AsyncLog.warn("I/O Error handling client {}: {}", clientIdentifier, e.getMessage());
+            finish();
         } catch (ClassNotFoundException e) {
-            System.err.println("Error: Received object of unknown class from " + getClientIdentifier() + ": " + e.getMessage());
+            AsyncLog.error("Error: Received object of unknown class from {}: {}", clientIdentifier, e.getMessage());
+            finish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish();
         } finally {
+            scheduled.set(false);
+        }
+        maybeResumeReading();
+        // Bytes may have arrived between the last hasWork() check and clearing the flag.
+        if (hasWork()) {
+            schedule();
+        }
+    }
+
+    private void processDecodedItems() throws IOException, InterruptedException {
+        if (submitBatch == null) {
+            submitBatch = new NewsItem[analysisStage.getBatchSize()];
+        }
+        NewsItem[] batch = submitBatch;
+        while (!finished.get()) {
+            int count = 0;
+            NewsItem item;
+            while (count < batch.length && (item = decodedItems.poll()) != null) {
+                batch[count++] = item;
+            }
+            if (count == 0) {
+                break;
+            }
             try {
-                if (clientSocket != null && !clientSocket.isClosed()) {
-                    clientSocket.close();
-                    System.out.println("Closed connection for: " + getClientIdentifier());
+                analysisStage.submitAll(batch, count, this);
+            } finally {
+                Arrays.fill(batch, 0, count, null);
+            }
+        }
+        HeadlineFrame frame;
+        while (!finished.get() && (frame = pollFrame()) != null) {
+            try {
+                analysisStage.submit(frame, this);
+            } catch (InterruptedException e) {
+                frame.release();
+                onAnalyzed();
+                throw e;
+            }
+        }
+        if (!hasDecoded() && inbound.isEndOfStream()) {
+            if (frameBuffer.position() > 0) {
+                throw new IOException("Connection closed in the middle of a frame (" + frameBuffer.position() + " bytes pending)");
+            }
+            throw new EOFException();
+        }
+    }
+
+    private void processObjectStream() throws IOException, ClassNotFoundException, InterruptedException {
+        if (in == null) {
+            in = new ObjectInputStream(inbound);
+        }
+        Object receivedObject;
+        while (!finished.get() && hasWork()) {
+            long start = System.nanoTime();
+            receivedObject = in.readObject();
+            decodeLatency.record(System.nanoTime() - start);
+            if (receivedObject instanceof NewsItem) {
+                NewsItem item = (NewsItem) receivedObject;
+                if (admit(item.getPriority())) {
+                    processItem(item);
+                    if (isOverBudget()) {
+                        pauseReading();
+                    }
                 }
-            } catch (IOException e) {
-                System.err.println("Error closing client socket for " + getClientIdentifier() + ": " + e.getMessage());
+            } else {
+                AsyncLog.warn("Received unexpected object type from {}: {}", clientIdentifier,
+                        receivedObject != null ? receivedObject.getClass().getName() : "null");
             }
-            System.out.println("Handler thread finished for: " + getClientIdentifier());
         }
     }
 
-    private String getClientIdentifier() {
-        if (clientSocket == null) return "Unknown Client";
-        return clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort();
+    private void processItem(NewsItem receivedItem) throws InterruptedException {
+        try {
+            analysisStage.submit(receivedItem, this);
+        } catch (InterruptedException e) {
+            onAnalyzed();
+            throw e;
+        }
+    }
+
+    private void finish() {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        NewsItem abandoned;
+        while ((abandoned = decodedItems.poll()) != null) {
+            inFlight.decrementAndGet();
+            flowControl.release();
+        }
+        HeadlineFrame abandonedFrame;
+        while ((abandonedFrame = pollFrame()) != null) {
+            abandonedFrame.release();
+            inFlight.decrementAndGet();
+            flowControl.release();
+        }
+        if (readingPaused.compareAndSet(true, false)) {
+            flowControl.onResumed();
+        }
+        metrics.connectionClosed(this);
+        try {
+            if (clientChannel.isOpen()) {
+                clientChannel.close();
+                AsyncLog.info("Closed connection for: {}", clientIdentifier);
+            }
+        } catch (IOException e) {
+            AsyncLog.warn("Error closing client socket for {}: {}", clientIdentifier, e.getMessage());
+        }
+        AsyncLog.info("Handler finished for: {}", clientIdentifier);
     }
-}
\ No newline at end of file
+
+}
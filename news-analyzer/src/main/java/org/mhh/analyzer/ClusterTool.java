@@ -0,0 +1,270 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.AnalyzedNewsItem;
+import org.mhh.common.NewsItem;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations across the analyzers of a cluster fed by a routing feed ({@code feed.nodes}):
+ * <pre>
+ *   stats &lt;host:metricsPort&gt;...              scrape every node's /metrics and print per-node and summed figures
+ *   merge &lt;out.ncol&gt; &lt;walDir&gt;...             combine the nodes' write-ahead logs into one archive, ordered by time
+ * </pre>
+ * Counters and gauges are summed over the nodes and {@code _max} samples take the largest value;
+ * latency quantiles cannot be combined from per-node quantiles and are left out. {@code merge} must
+ * run while the nodes are stopped, since it takes each log's directory lock; export the archive with
+ * {@code ColumnarArchiveTool to-csv}. The logs are streamed, so only the compact archive being built is
+ * held in memory.
+ * <p>
+ * Usage: {@code java -cp news-analyzer.jar org.mhh.analyzer.ClusterTool <command> ...}
+ */
+public class ClusterTool {
+    private static final HeadlineAnalyzer.AnalysisResult[] RESULTS = HeadlineAnalyzer.AnalysisResult.values();
+    private static final int HTTP_TIMEOUT_MILLIS = 5000;
+    private static final long REORDER_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int REORDER_MAX_ITEMS = 1 << 18;
+    private static final int MERGE_QUEUE_ITEMS = 8192;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 2 && args[0].equals("stats")) {
+            stats(Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length >= 3 && args[0].equals("merge")) {
+            merge(Paths.get(args[1]), Arrays.copyOfRange(args, 2, args.length));
+        } else {
+            System.err.println("Usage: ClusterTool stats <host:metricsPort>... | merge <out.ncol> <walDir>...");
+        }
+    }
+
+    private static void stats(String[] nodes) {
+        Map<String, Double> totals = new LinkedHashMap<>();
+        int reachable = 0;
+        for (String node : nodes) {
+            Map<String, Double> samples;
+            try {
+                samples = scrape(node);
+            } catch (IOException e) {
+                System.out.printf("%-22s unreachable: %s%n", node, e.getMessage());
+                continue;
+            }
+            reachable++;
+            System.out.printf("%-22s %s%n", node, summary(samples));
+            for (Map.Entry<String, Double> sample : samples.entrySet()) {
+                String name = sample.getKey();
+                int brace = name.indexOf('{');
+                boolean isMax = (brace < 0 ? name : name.substring(0, brace)).endsWith("_max");
+                totals.merge(name, sample.getValue(), isMax ? Math::max : Double::sum);
+            }
+        }
+        System.out.printf("%-22s %s%n", "cluster (" + reachable + "/" + nodes.length + ")", summary(totals));
+        System.out.println();
+        for (Map.Entry<String, Double> total : totals.entrySet()) {
+            double value = total.getValue();
+            System.out.println(total.getKey() + " " + (value == Math.rint(value) && Math.abs(value) < 1e15
+                    ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.9f", value)));
+        }
+    }
+
+    private static String summary(Map<String, Double> samples) {
+        long total = 0;
+        StringBuilder perResult = new StringBuilder();
+        for (HeadlineAnalyzer.AnalysisResult result : RESULTS) {
+            long count = samples.getOrDefault("analyzer_analyzed_items_total{result=\"" + result + "\"}", 0.0).longValue();
+            total += count;
+            perResult.append(String.format(", %s %,d", result, count));
+        }
+        return String.format("analyzed %,d%s", total, perResult);
+    }
+
+    private static Map<String, Double> scrape(String node) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://" + node + "/metrics").openConnection();
+        connection.setConnectTimeout(HTTP_TIMEOUT_MILLIS);
+        connection.setReadTimeout(HTTP_TIMEOUT_MILLIS);
+        Map<String, Double> samples = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.lastIndexOf(' ');
+                if (line.isEmpty() || line.startsWith("#") || space < 0 || line.contains("quantile=")) {
+                    continue;
+                }
+                try {
+                    samples.put(line.substring(0, space), Double.parseDouble(line.substring(space + 1)));
+                } catch (NumberFormatException e) {
+                    // not a sample line
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+        return samples;
+    }
+
+    // Each node's log is in time order except where a worker appended a batch after others that were
+    // analyzed later, typically tens of milliseconds late, so each log is read through a reorder window
+    // and the logs are merged k ways.
+    private static void merge(Path out, String[] walDirs) throws IOException {
+        long start = System.nanoTime();
+        List<NodeLog> logs = new ArrayList<>(walDirs.length);
+        // Ties go to the log named first, so the archive matches a stable sort of the logs in order.
+        PriorityQueue<NodeLog> heads = new PriorityQueue<>(walDirs.length,
+                Comparator.<NodeLog>comparingLong(log -> log.head.nanos).thenComparingInt(log -> log.index));
+        ColumnarSegmentWriter writer = new ColumnarSegmentWriter();
+        try {
+            for (String dir : walDirs) {
+                NodeLog log = new NodeLog(dir, logs.size());
+                logs.add(log);
+                log.reader.start();
+            }
+            for (NodeLog log : logs) {
+                if (log.advance()) {
+                    heads.add(log);
+                }
+            }
+            while (!heads.isEmpty()) {
+                NodeLog log = heads.poll();
+                writer.add(log.head.item);
+                if (log.advance()) {
+                    heads.add(log);
+                }
+            }
+        } finally {
+            for (NodeLog log : logs) {
+                log.stop();
+            }
+        }
+        for (NodeLog log : logs) {
+            System.out.printf("%-22s %,d items (POSITIVE %,d, NEGATIVE %,d, NEUTRAL %,d)%n",
+                    log.dir, log.recovered, log.perResult[0], log.perResult[1], log.perResult[2]);
+        }
+        writer.writeTo(out);
+        System.out.printf("Merged %,d items from %d logs into %s: %,d bytes in %,d ms%n", writer.getRowCount(), walDirs.length,
+                out, Files.size(out), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * One node's write-ahead log, replayed on its own thread into a bounded queue and read back in time
+     * order: an item is handed out once the log has been read {@link #REORDER_SLACK_NANOS} past it, or
+     * when {@link #REORDER_MAX_ITEMS} are waiting. Items with the same timestamp keep their log order.
+     */
+    private static final class NodeLog {
+        private static final AnalyzedNewsItem END =
+                new AnalyzedNewsItem(new NewsItem("end", 0), HeadlineAnalyzer.AnalysisResult.NEUTRAL, Instant.EPOCH);
+
+        final String dir;
+        final int index;
+        final Thread reader;
+        final long[] perResult = new long[RESULTS.length];
+        private final BlockingQueue<AnalyzedNewsItem> queue = new ArrayBlockingQueue<>(MERGE_QUEUE_ITEMS);
+        private final PriorityQueue<Pending> window =
+                new PriorityQueue<>(Comparator.<Pending>comparingLong(pending -> pending.nanos).thenComparingLong(pending -> pending.sequence));
+        private volatile boolean stopped;
+        private Throwable failure; // both written by the reader before it queues END
+        long recovered;
+        Pending head;
+        private boolean drained;
+        private long taken;
+        private long newestNanos = Long.MIN_VALUE;
+
+        NodeLog(String dir, int index) {
+            this.dir = dir;
+            this.index = index;
+            this.reader = new Thread(this::read, "merge-" + dir);
+            this.reader.setDaemon(true);
+        }
+
+        private void read() {
+            WriteAheadLog wal = new WriteAheadLog(Paths.get(dir), 64L * 1024 * 1024, WriteAheadLog.FsyncPolicy.NEVER, 0, 0, 1);
+            try {
+                recovered = wal.replay(this::put);
+            } catch (IOException | RuntimeException | Error e) {
+                failure = e;
+            } finally {
+                wal.close();
+                put(END);
+            }
+        }
+
+        private void put(AnalyzedNewsItem item) {
+            if (stopped) {
+                return;
+            }
+            try {
+                queue.put(item);
+            } catch (InterruptedException e) {
+                stopped = true;
+            }
+        }
+
+        /**
+         * Moves {@link #head} to the next item in time order; returns false once the log is exhausted.
+         */
+        boolean advance() throws IOException {
+            while (!drained && window.size() < REORDER_MAX_ITEMS
+                    && (window.isEmpty() || newestNanos - window.peek().nanos < REORDER_SLACK_NANOS)) {
+                AnalyzedNewsItem item;
+                try {
+                    item = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while merging " + dir);
+                }
+                if (item == END) {
+                    drained = true;
+                    if (failure != null) {
+                        throw new IOException("Could not read " + dir + ": " + failure, failure);
+                    }
+                } else {
+                    Pending pending = new Pending(item, taken++);
+                    window.add(pending);
+                    newestNanos = Math.max(newestNanos, pending.nanos);
+                    perResult[item.getResult().ordinal()]++;
+                }
+            }
+            head = window.poll();
+            return head != null;
+        }
+
+        void stop() {
+            stopped = true;
+            reader.interrupt();
+        }
+    }
+
+    private static final class Pending {
+        final AnalyzedNewsItem item;
+        final long nanos;
+        final long sequence;
+
+        Pending(AnalyzedNewsItem item, long sequence) {
+            this.item = item;
+            this.nanos = ColumnarSegmentWriter.epochNanos(item.getAnalysisTimestamp());
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.AnalyzedNewsItem;
+import org.mhh.common.NewsItem;
+import org.mhh.feed.NewsGenerator;
+import org.mhh.feed.ReplayFeed;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Locale;
+
+/**
+ * Command line access to columnar archives:
+ * <pre>
+ *   from-wal &lt;walDir&gt; &lt;out.ncol&gt;                 convert write-ahead log segments to one archive
+ *   to-csv &lt;in.ncol&gt; &lt;out.csv&gt; [filters]         export (matching) rows in the shutdown CSV layout
+ *   scan &lt;in.ncol&gt; [filters]                     count matching rows per result
+ *   replay &lt;in.ncol&gt; [filters]                   send matching rows to the analyzer with their recorded timing
+ *   compare [items]                              size and speed of columnar vs CSV on generated items
+ * </pre>
+ * Filters: {@code --from <ISO instant>}, {@code --to <ISO instant>}, {@code --priority 0,1,2},
+ * {@code --result POSITIVE,NEGATIVE}. Replay is configured with the feed's {@code feed.*} properties, see
+ * {@link ReplayFeed#fromProperties()}.
+ * <p>
+ * Usage: {@code java -cp news-analyzer.jar org.mhh.analyzer.ColumnarArchiveTool <command> ...}
+ */
+public class ColumnarArchiveTool {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        switch (args[0]) {
+            case "from-wal":
+                requireArgs(args, 3);
+                fromWal(Paths.get(args[1]), Paths.get(args[2]));
+                break;
+            case "to-csv":
+                requireArgs(args, 3);
+                toCsv(Paths.get(args[1]), Paths.get(args[2]), parseFilter(args, 3));
+                break;
+            case "scan":
+                requireArgs(args, 2);
+                scan(Paths.get(args[1]), parseFilter(args, 2));
+                break;
+            case "replay":
+                requireArgs(args, 2);
+                replay(Paths.get(args[1]), parseFilter(args, 2));
+                break;
+            case "compare":
+                compare(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+                break;
+            default:
+                usage();
+        }
+    }
+
+    private static void fromWal(Path walDir, Path out) throws IOException {
+        long start = System.nanoTime();
+        ColumnarSegmentWriter writer = new ColumnarSegmentWriter();
+        WriteAheadLog wal = new WriteAheadLog(walDir, 64L * 1024 * 1024, WriteAheadLog.FsyncPolicy.NEVER, 0, 0, 1);
+        wal.replay(writer::add);
+        writer.writeTo(out);
+        System.out.printf("Converted %,d items from %s to %s: %,d bytes (%.1f bytes/item), %,d dictionary words, %,d ms%n",
+                writer.getRowCount(), walDir, out, Files.size(out), (double) Files.size(out) / Math.max(1, writer.getRowCount()),
+                writer.getDictionarySize(), millisSince(start));
+    }
+
+    private static void toCsv(Path in, Path out, ScanFilter filter) throws IOException {
+        long start = System.nanoTime();
+        long rows = new ColumnarSegmentReader(in).exportCsv(filter, out);
+        System.out.printf("Exported %,d rows to %s (%,d bytes) in %,d ms%n", rows, out, Files.size(out), millisSince(start));
+    }
+
+    private static void scan(Path in, ScanFilter filter) throws IOException {
+        ColumnarSegmentReader reader = new ColumnarSegmentReader(in);
+        for (int round = 1; round <= 3; round++) {
+            long start = System.nanoTime();
+            long[] perResult = new long[HeadlineAnalyzer.AnalysisResult.values().length];
+            long matches = reader.scan(filter, row -> perResult[row.getResult().ordinal()]++);
+            long nanos = System.nanoTime() - start;
+            System.out.printf("Round %d: %,d of %,d rows match (POSITIVE %,d, NEGATIVE %,d, NEUTRAL %,d) in %,d us, %.1f ns/row%n",
+                    round, matches, reader.getRowCount(), perResult[0], perResult[1], perResult[2],
+                    nanos / 1000, (double) nanos / Math.max(1, reader.getRowCount()));
+        }
+    }
+
+    private static void replay(Path in, ScanFilter filter) throws IOException {
+        ColumnarSegmentReader reader = new ColumnarSegmentReader(in);
+        ReplayFeed.fromProperties().run(new ColumnarReplaySource(reader, filter),
+                String.format("%s (%,d rows)", in, reader.getRowCount()));
+    }
+
+    private static void compare(int items) throws IOException {
+        NewsGenerator generator = new NewsGenerator();
+        HeadlineAnalyzer analyzer = new HeadlineAnalyzer();
+        Instant time = Instant.now();
+        ColumnarSegmentWriter writer = new ColumnarSegmentWriter();
+        AnalyzedNewsItem[] corpus = new AnalyzedNewsItem[items];
+        for (int i = 0; i < items; i++) {
+            NewsItem item = generator.generateNewsItem();
+            time = time.plusNanos(1_000 + (i % 7) * 137_000);
+            corpus[i] = new AnalyzedNewsItem(item, analyzer.analyze(item.getHeadline()), time);
+        }
+        Path columnar = Files.createTempFile("compare", ".ncol");
+        Path csv = Files.createTempFile("compare", ".csv");
+        try {
+            long start = System.nanoTime();
+            for (AnalyzedNewsItem item : corpus) {
+                writer.add(item);
+            }
+            writer.writeTo(columnar);
+            long columnarWriteMs = millisSince(start);
+
+            start = System.nanoTime();
+            try (Writer out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+                StringBuilder row = new StringBuilder(256);
+                out.write(AnalyzedItemCsv.HEADER + System.lineSeparator());
+                for (AnalyzedNewsItem item : corpus) {
+                    row.setLength(0);
+                    AnalyzedItemCsv.appendRow(row, item.getAnalysisTimestamp(), item.getOriginalItem().getHeadline(),
+                            item.getOriginalItem().getPriority(), item.getResult());
+                    out.append(row);
+                }
+            }
+            long csvWriteMs = millisSince(start);
+
+            Instant from = corpus[items / 4].getAnalysisTimestamp();
+            Instant to = corpus[items / 2].getAnalysisTimestamp();
+            ScanFilter filter = ScanFilter.all().withTimeRange(from, to).withPriorities(0, 1)
+                    .withResults(HeadlineAnalyzer.AnalysisResult.POSITIVE);
+            ColumnarSegmentReader reader = new ColumnarSegmentReader(columnar);
+            for (int round = 1; round <= 3; round++) {
+                start = System.nanoTime();
+                long columnarMatches = reader.count(filter);
+                long columnarScanMs = millisSince(start);
+                start = System.nanoTime();
+                long csvMatches = countCsv(csv, from, to);
+                long csvScanMs = millisSince(start);
+                System.out.printf("Round %d: filtered scan columnar %,d rows in %,d ms, CSV %,d rows in %,d ms%n",
+                        round, columnarMatches, columnarScanMs, csvMatches, csvScanMs);
+                if (columnarMatches != csvMatches) {
+                    throw new IllegalStateException("Columnar and CSV scans disagree");
+                }
+            }
+
+            Path exported = Files.createTempFile("compare-export", ".csv");
+            try {
+                reader.exportCsv(ScanFilter.all(), exported);
+                if (!Files.readAllLines(exported).equals(Files.readAllLines(csv))) {
+                    throw new IllegalStateException("CSV exported from the columnar archive differs from the direct CSV");
+                }
+            } finally {
+                Files.deleteIfExists(exported);
+            }
+            System.out.printf("%,d items: columnar %,d bytes (%.1f B/item, written in %,d ms), CSV %,d bytes (%.1f B/item, written in %,d ms); CSV export round-trips exactly%n",
+                    items, Files.size(columnar), (double) Files.size(columnar) / items, columnarWriteMs,
+                    Files.size(csv), (double) Files.size(csv) / items, csvWriteMs);
+        } finally {
+            Files.deleteIfExists(columnar);
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    // What a downstream job has to do with the CSV: parse every row to filter it.
+    private static long countCsv(Path csv, Instant from, Instant to) throws IOException {
+        long matches = 0;
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int timestampEnd = line.indexOf('"', 1);
+                int resultStart = line.lastIndexOf(',');
+                int priorityStart = line.lastIndexOf(',', resultStart - 1);
+                Instant timestamp = OffsetDateTime.parse(line.substring(1, timestampEnd)).toInstant();
+                int priority = Integer.parseInt(line.substring(priorityStart + 1, resultStart));
+                HeadlineAnalyzer.AnalysisResult result = HeadlineAnalyzer.AnalysisResult.valueOf(line.substring(resultStart + 1));
+                if (!timestamp.isBefore(from) && timestamp.isBefore(to) && priority <= 1
+                        && result == HeadlineAnalyzer.AnalysisResult.POSITIVE) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static ScanFilter parseFilter(String[] args, int first) {
+        ScanFilter filter = ScanFilter.all();
+        Instant from = null;
+        Instant to = null;
+        for (int i = first; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--from":
+                    from = Instant.parse(value);
+                    break;
+                case "--to":
+                    to = Instant.parse(value);
+                    break;
+                case "--priority":
+                    String[] parts = value.split(",");
+                    int[] priorities = new int[parts.length];
+                    for (int p = 0; p < parts.length; p++) {
+                        priorities[p] = Integer.parseInt(parts[p].trim());
+                    }
+                    filter = filter.withPriorities(priorities);
+                    break;
+                case "--result":
+                    String[] names = value.split(",");
+                    HeadlineAnalyzer.AnalysisResult[] results = new HeadlineAnalyzer.AnalysisResult[names.length];
+                    for (int r = 0; r < names.length; r++) {
+                        results[r] = HeadlineAnalyzer.AnalysisResult.valueOf(names[r].trim().toUpperCase(Locale.ROOT));
+                    }
+                    filter = filter.withResults(results);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown filter option: " + args[i]);
+            }
+        }
+        return filter.withTimeRange(from, to);
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static void requireArgs(String[] args, int count) {
+        if (args.length < count) {
+            usage();
+            throw new IllegalArgumentException("Missing arguments for " + args[0]);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: ColumnarArchiveTool from-wal <walDir> <out.ncol>");
+        System.err.println("       ColumnarArchiveTool to-csv <in.ncol> <out.csv> [--from ISO] [--to ISO] [--priority 0,1] [--result POSITIVE]");
+        System.err.println("       ColumnarArchiveTool scan <in.ncol> [--from ISO] [--to ISO] [--priority 0,1] [--result POSITIVE]");
+        System.err.println("       ColumnarArchiveTool replay <in.ncol> [--from ISO] [--to ISO] [--priority 0,1] [--result POSITIVE]");
+        System.err.println("       ColumnarArchiveTool compare [items]");
+    }
+}
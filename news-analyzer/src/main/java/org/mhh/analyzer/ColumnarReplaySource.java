@@ -0,0 +1,61 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.NewsItem;
+import org.mhh.feed.ReplaySource;
+
+/**
+ * The matching rows of a columnar archive as a {@link ReplaySource}. The archive is memory-mapped and
+ * scanned in row order, so only the pages being replayed need to be resident; a filter limits the replay
+ * to, say, the minutes around an incident. Rows a {@link NewsItem} would reject are skipped and counted.
+ */
+public class ColumnarReplaySource implements ReplaySource {
+    private final ColumnarSegmentReader reader;
+    private final ScanFilter filter;
+    private long skipped;
+
+    // Carries an interruption out of the scan's visitor, which cannot throw checked exceptions.
+    private static final class Interrupted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Interrupted(InterruptedException cause) {
+            super(cause);
+        }
+    }
+
+    public ColumnarReplaySource(ColumnarSegmentReader reader, ScanFilter filter) {
+        this.reader = reader;
+        this.filter = filter;
+    }
+
+    @Override
+    public void forEach(Sink sink) throws InterruptedException {
+        skipped = 0;
+        try {
+            reader.scan(filter, row -> {
+                NewsItem item;
+                try {
+                    item = new NewsItem(row.getHeadline(), row.getPriority());
+                } catch (IllegalArgumentException e) {
+                    skipped++;
+                    return;
+                }
+                try {
+                    sink.accept(row.getTimestampNanos(), item);
+                } catch (InterruptedException e) {
+                    throw new Interrupted(e);
+                }
+            });
+        } catch (Interrupted e) {
+            throw (InterruptedException) e.getCause();
+        }
+    }
+
+    @Override
+    public long getSkippedCount() {
+        return skipped;
+    }
+}
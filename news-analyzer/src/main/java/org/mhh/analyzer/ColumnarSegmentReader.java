@@ -0,0 +1,261 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Memory-mapped reader for segments written by {@link ColumnarSegmentWriter}. {@link #scan} walks the
+ * columns with primitive cursors and hands each matching row to a {@link RowVisitor} as a reusable
+ * {@link Row} view: nothing is allocated per row unless the visitor asks for the headline text.
+ * Blocks whose index entry cannot match the {@link ScanFilter} are skipped without being decoded.
+ * <p>
+ * A reader may be shared between threads; each scan uses its own buffer views.
+ */
+public class ColumnarSegmentReader {
+    private static final HeadlineAnalyzer.AnalysisResult[] RESULTS = HeadlineAnalyzer.AnalysisResult.values();
+
+    private final Path file;
+    private final ByteBuffer data;
+    private final int rowCount;
+    private final int blockRows;
+    private final int blockCount;
+    private final int[] wordOffsets;
+    private final int[] wordLengths;
+    private final String[] words; // decoded lazily, racy but idempotent
+    private final int blockIndexOffset;
+    private final int timestampOffset;
+    private final int flagOffset;
+    private final int headlineOffset;
+
+    public ColumnarSegmentReader(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < ColumnarSegmentWriter.HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a columnar segment (size " + channel.size() + "): " + file);
+            }
+            this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ColumnarSegmentWriter.BYTE_ORDER);
+        }
+        ByteBuffer header = data.duplicate().order(ColumnarSegmentWriter.BYTE_ORDER);
+        if (header.getInt() != ColumnarSegmentWriter.MAGIC || header.getInt() != ColumnarSegmentWriter.FORMAT_VERSION) {
+            throw new IOException("Not a columnar segment of version " + ColumnarSegmentWriter.FORMAT_VERSION + ": " + file);
+        }
+        this.rowCount = header.getInt();
+        this.blockRows = header.getInt();
+        this.blockCount = header.getInt();
+        int dictionarySize = header.getInt();
+        int dictionaryOffset = (int) header.getLong();
+        this.blockIndexOffset = (int) header.getLong();
+        this.timestampOffset = (int) header.getLong();
+        this.flagOffset = (int) header.getLong();
+        this.headlineOffset = (int) header.getLong();
+
+        this.wordOffsets = new int[dictionarySize];
+        this.wordLengths = new int[dictionarySize];
+        this.words = new String[dictionarySize];
+        ByteBuffer dictionary = data.duplicate();
+        dictionary.position(dictionaryOffset);
+        for (int i = 0; i < dictionarySize; i++) {
+            wordLengths[i] = ColumnarSegmentWriter.readVarInt(dictionary);
+            wordOffsets[i] = dictionary.position();
+            dictionary.position(dictionary.position() + wordLengths[i]);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getDictionarySize() {
+        return words.length;
+    }
+
+    public long getSizeBytes() {
+        return data.capacity();
+    }
+
+    public interface RowVisitor {
+        void visit(Row row);
+    }
+
+    /**
+     * View of the row being visited; valid only inside {@link RowVisitor#visit(Row)}.
+     */
+    public final class Row {
+        private final ByteBuffer headlineColumn = data.duplicate();
+        private int index;
+        private long timestampNanos;
+        private int priority;
+        private int resultCode;
+        private int headlinePosition;
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public Instant getTimestamp() {
+            return Instant.ofEpochSecond(Math.floorDiv(timestampNanos, 1_000_000_000L), Math.floorMod(timestampNanos, 1_000_000_000L));
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public HeadlineAnalyzer.AnalysisResult getResult() {
+            return RESULTS[resultCode];
+        }
+
+        public StringBuilder appendHeadline(StringBuilder out) {
+            headlineColumn.position(headlinePosition);
+            int tokens = ColumnarSegmentWriter.readVarInt(headlineColumn);
+            for (int i = 0; i < tokens; i++) {
+                if (i > 0) {
+                    out.append(' ');
+                }
+                out.append(word(ColumnarSegmentWriter.readVarInt(headlineColumn)));
+            }
+            return out;
+        }
+
+        public String getHeadline() {
+            return appendHeadline(new StringBuilder(64)).toString();
+        }
+    }
+
+    private String word(int id) {
+        String word = words[id];
+        if (word == null) {
+            byte[] bytes = new byte[wordLengths[id]];
+            ByteBuffer source = data.duplicate();
+            source.position(wordOffsets[id]);
+            source.get(bytes);
+            word = new String(bytes, StandardCharsets.UTF_8);
+            words[id] = word;
+        }
+        return word;
+    }
+
+    public long count(ScanFilter filter) {
+        return scan(filter, null);
+    }
+
+    /**
+     * Visits every row matching {@code filter} in file order.
+     *
+     * @param visitor receives each match; may be null to only count
+     * @return the number of matching rows
+     */
+    public long scan(ScanFilter filter, RowVisitor visitor) {
+        ByteBuffer index = data.duplicate().order(ColumnarSegmentWriter.BYTE_ORDER);
+        ByteBuffer timestamps = data.duplicate();
+        ByteBuffer headlines = data.duplicate();
+        Row row = new Row();
+        long matches = 0;
+        for (int block = 0; block < blockCount; block++) {
+            int entry = blockIndexOffset + block * ColumnarSegmentWriter.BLOCK_INDEX_ENTRY_BYTES;
+            long firstNanos = index.getLong(entry);
+            long minNanos = index.getLong(entry + 8);
+            long maxNanos = index.getLong(entry + 16);
+            int priorityMask = index.getShort(entry + 32) & 0xFFFF;
+            int resultMask = index.get(entry + 34);
+            if (!filter.mayMatchBlock(minNanos, maxNanos, priorityMask, resultMask)) {
+                continue;
+            }
+            timestamps.position(timestampOffset + index.getInt(entry + 24));
+            headlines.position(headlineOffset + index.getInt(entry + 28));
+            int firstRow = block * blockRows;
+            int endRow = Math.min(rowCount, firstRow + blockRows);
+            long nanos = firstNanos;
+            for (int r = firstRow; r < endRow; r++) {
+                nanos += ColumnarSegmentWriter.unZigZag(ColumnarSegmentWriter.readVarLong(timestamps));
+                int flags = data.get(flagOffset + r);
+                int priority = flags >>> 2;
+                int resultCode = flags & 0x3;
+                if (visitor == null) {
+                    if (filter.matches(nanos, priority, resultCode)) {
+                        matches++;
+                    }
+                    continue;
+                }
+                int headlinePosition = headlines.position();
+                skipHeadline(headlines);
+                if (filter.matches(nanos, priority, resultCode)) {
+                    matches++;
+                    row.index = r;
+                    row.timestampNanos = nanos;
+                    row.priority = priority;
+                    row.resultCode = resultCode;
+                    row.headlinePosition = headlinePosition;
+                    visitor.visit(row);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static void skipHeadline(ByteBuffer headlines) {
+        int tokens = ColumnarSegmentWriter.readVarInt(headlines);
+        for (int i = 0; i < tokens; i++) {
+            while (headlines.get() < 0) {
+                // continuation bytes of the word id varint
+            }
+        }
+    }
+
+    /**
+     * Writes the matching rows as CSV in the same layout as the server's shutdown dump.
+     *
+     * @return the number of rows written
+     */
+    public long exportCsv(ScanFilter filter, Path csvFile) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(256);
+            line.append(AnalyzedItemCsv.HEADER).append(System.lineSeparator());
+            IOException[] failure = new IOException[1];
+            long rows = scan(filter, row -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                AnalyzedItemCsv.appendRow(line, row.getTimestamp(), row.getHeadline(), row.getPriority(), row.getResult());
+                if (line.length() >= 1 << 15) {
+                    failure[0] = flush(line, writer);
+                }
+            });
+            if (failure[0] == null) {
+                failure[0] = flush(line, writer);
+            }
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            return rows;
+        }
+    }
+
+    private static IOException flush(StringBuilder line, Writer writer) {
+        try {
+            writer.append(line);
+            line.setLength(0);
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+}
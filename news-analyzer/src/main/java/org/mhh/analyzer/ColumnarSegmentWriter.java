@@ -0,0 +1,285 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.AnalyzedNewsItem;
+import org.mhh.common.NewsItem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds a columnar segment of analyzed items in memory and writes it in one pass. Rows are split
+ * into separate columns so each compresses on its own terms:
+ * <ul>
+ *     <li>timestamps: epoch nanoseconds, zig-zag varint delta from the previous row;</li>
+ *     <li>flags: one byte per row, the priority nibble shifted left by two over the 2-bit result code;</li>
+ *     <li>headlines: varint token count plus varint ids into a shared dictionary of the space-separated
+ *     tokens, which reproduces the headline exactly;</li>
+ * </ul>
+ * and every {@link #BLOCK_ROWS} rows are summarised in a block index (time bounds, priority and result
+ * masks, column offsets) that lets {@link ColumnarSegmentReader} skip whole blocks during a scan.
+ * <p>
+ * File layout (little-endian): a {@value #HEADER_BYTES}-byte header, the dictionary, the block
+ * index, then the timestamp, flag and headline columns.
+ */
+public class ColumnarSegmentWriter {
+    static final int MAGIC = 0x4C4F434E; // "NCOL" read little-endian
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int BLOCK_ROWS = 4096;
+    static final int BLOCK_INDEX_ENTRY_BYTES = 36;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final Column timestamps = new Column(1 << 16);
+    private final Column flags = new Column(1 << 14);
+    private final Column headlines = new Column(1 << 16);
+    private final Column blockIndex = new Column(1 << 10);
+    private final Column dictionaryBytes = new Column(1 << 12);
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private int rowCount;
+    private boolean written;
+
+    private long previousNanos;
+    private long blockFirstNanos; // the first row of a block is written as a zero delta from this
+    private long blockMinNanos;
+    private long blockMaxNanos;
+    private int blockPriorityMask;
+    private int blockResultMask;
+    private int blockTimestampOffset;
+    private int blockHeadlineOffset;
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getDictionarySize() {
+        return dictionary.size();
+    }
+
+    public void add(AnalyzedNewsItem item) {
+        NewsItem original = item.getOriginalItem();
+        add(epochNanos(item.getAnalysisTimestamp()), original.getHeadline(), original.getPriority(), item.getResult());
+    }
+
+    public void add(long timestampNanos, String headline, int priority, HeadlineAnalyzer.AnalysisResult result) {
+        if (written) {
+            throw new IllegalStateException("Segment has already been written");
+        }
+        if (priority < 0 || priority > 15) {
+            throw new IllegalArgumentException("Priority does not fit in a nibble: " + priority);
+        }
+        if (rowCount % BLOCK_ROWS == 0) {
+            if (rowCount > 0) {
+                closeBlock();
+            }
+            openBlock(timestampNanos);
+        }
+        timestamps.putVarLong(zigZag(timestampNanos - previousNanos));
+        previousNanos = timestampNanos;
+        flags.put((byte) (priority << 2 | result.ordinal()));
+        appendHeadline(headline);
+
+        blockMinNanos = Math.min(blockMinNanos, timestampNanos);
+        blockMaxNanos = Math.max(blockMaxNanos, timestampNanos);
+        blockPriorityMask |= 1 << priority;
+        blockResultMask |= 1 << result.ordinal();
+        rowCount++;
+    }
+
+    private void appendHeadline(String headline) {
+        int tokens = 1;
+        for (int i = 0; i < headline.length(); i++) {
+            if (headline.charAt(i) == ' ') {
+                tokens++;
+            }
+        }
+        headlines.putVarInt(tokens);
+        int start = 0;
+        for (int i = 0; i <= headline.length(); i++) {
+            if (i == headline.length() || headline.charAt(i) == ' ') {
+                headlines.putVarInt(wordId(headline.substring(start, i)));
+                start = i + 1;
+            }
+        }
+    }
+
+    private int wordId(String word) {
+        Integer id = dictionary.get(word);
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.put(word, id);
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            dictionaryBytes.putVarInt(bytes.length);
+            dictionaryBytes.put(bytes);
+        }
+        return id;
+    }
+
+    private void openBlock(long firstNanos) {
+        blockFirstNanos = firstNanos;
+        previousNanos = firstNanos;
+        blockMinNanos = Long.MAX_VALUE;
+        blockMaxNanos = Long.MIN_VALUE;
+        blockPriorityMask = 0;
+        blockResultMask = 0;
+        blockTimestampOffset = timestamps.position();
+        blockHeadlineOffset = headlines.position();
+    }
+
+    private void closeBlock() {
+        ByteBuffer entry = blockIndex.reserve(BLOCK_INDEX_ENTRY_BYTES);
+        entry.putLong(blockFirstNanos);
+        entry.putLong(blockMinNanos);
+        entry.putLong(blockMaxNanos);
+        entry.putInt(blockTimestampOffset);
+        entry.putInt(blockHeadlineOffset);
+        entry.putShort((short) blockPriorityMask);
+        entry.put((byte) blockResultMask);
+        entry.put((byte) 0);
+    }
+
+    /**
+     * Writes the segment; the writer cannot be used afterwards.
+     */
+    public void writeTo(Path file) throws IOException {
+        if (written) {
+            throw new IllegalStateException("Segment has already been written");
+        }
+        written = true;
+        if (rowCount > 0) {
+            closeBlock();
+        }
+        int blockCount = (rowCount + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        long dictionaryOffset = HEADER_BYTES;
+        long blockIndexOffset = dictionaryOffset + dictionaryBytes.position();
+        long timestampOffset = blockIndexOffset + blockIndex.position();
+        long flagOffset = timestampOffset + timestamps.position();
+        long headlineOffset = flagOffset + flags.position();
+        long fileSize = headlineOffset + headlines.position();
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Columnar segment would exceed 2 GiB (" + fileSize + " bytes); write smaller segments");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(BYTE_ORDER);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(rowCount).putInt(BLOCK_ROWS)
+                .putInt(blockCount).putInt(dictionary.size())
+                .putLong(dictionaryOffset).putLong(blockIndexOffset).putLong(timestampOffset)
+                .putLong(flagOffset).putLong(headlineOffset);
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] sections = {header, dictionaryBytes.flipped(), blockIndex.flipped(), timestamps.flipped(),
+                    flags.flipped(), headlines.flipped()};
+            long remaining = fileSize;
+            while (remaining > 0) {
+                remaining -= channel.write(sections);
+            }
+            channel.force(false);
+        }
+    }
+
+    static long epochNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static final class Column {
+        private ByteBuffer buffer;
+
+        Column(int initialCapacity) {
+            this.buffer = ByteBuffer.allocate(initialCapacity).order(BYTE_ORDER);
+        }
+
+        int position() {
+            return buffer.position();
+        }
+
+        ByteBuffer reserve(int bytes) {
+            if (buffer.remaining() < bytes) {
+                long needed = (long) buffer.position() + bytes;
+                int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, (long) buffer.capacity() * 2));
+                if (capacity < needed) {
+                    throw new IllegalStateException("Column exceeds 2 GiB");
+                }
+                ByteBuffer grown = ByteBuffer.allocate(capacity).order(BYTE_ORDER);
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+            return buffer;
+        }
+
+        void put(byte value) {
+            reserve(1).put(value);
+        }
+
+        void put(byte[] bytes) {
+            reserve(bytes.length).put(bytes);
+        }
+
+        void putVarInt(int value) {
+            ByteBuffer out = reserve(5);
+            while ((value & ~0x7F) != 0) {
+                out.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.put((byte) value);
+        }
+
+        void putVarLong(long value) {
+            ByteBuffer out = reserve(10);
+            while ((value & ~0x7FL) != 0) {
+                out.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.put((byte) value);
+        }
+
+        ByteBuffer flipped() {
+            ByteBuffer view = buffer.duplicate();
+            view.flip();
+            return view;
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Re-scores files in the {@link AnalyzedItemCsv} layout, such as {@code analyzed_news_items.csv} or a
+ * columnar archive export, with the built-in or a given lexicon, without replaying them through the server:
+ * <pre>
+ *   &lt;in.csv&gt; &lt;out.csv&gt; [--lexicon file] [--threads n] [--chunk-mb n]
+ * </pre>
+ * The input is memory-mapped in chunks of about {@code --chunk-mb} (default 8) cut at row boundaries,
+ * and the chunks are analyzed in parallel on a pool of {@code --threads} (default: all cores). A quoted
+ * headline may span lines, as in {@link org.mhh.feed.CsvReplaySource}; a row only ends at a line break
+ * outside quotes.
+ * Every row is copied byte for byte except its AnalysisResult column, so re-running a file with the lexicon
+ * that produced it reproduces it exactly. Chunks are written in input order, with at most two per thread
+ * held in memory. Rows that cannot be parsed are copied unchanged and counted.
+ * <p>
+ * Prints how many rows changed sentiment, old result against new, and the first few changed headlines.
+ * <p>
+ * Usage: {@code java -cp news-analyzer.jar org.mhh.analyzer.CsvReanalysisTool <in.csv> <out.csv> ...}
+ */
+public class CsvReanalysisTool {
+    private static final HeadlineAnalyzer.AnalysisResult[] RESULTS = HeadlineAnalyzer.AnalysisResult.values();
+    private static final byte[][] RESULT_NAMES = new byte[RESULTS.length][];
+    private static final int MAX_EXAMPLES = 10;
+    private static final int IN_FLIGHT_CHUNKS_PER_THREAD = 2;
+    // How far past a chunk's nominal end to look for a row end before settling for a line end, and how
+    // many bytes before a line break are enough to recognize the end of a row.
+    private static final int MAX_ROW_BYTES = 1024 * 1024;
+    private static final int ROW_END_LOOKBACK = 64;
+
+    static {
+        for (HeadlineAnalyzer.AnalysisResult result : RESULTS) {
+            RESULT_NAMES[result.ordinal()] = result.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        Path in = Paths.get(args[0]);
+        Path out = Paths.get(args[1]);
+        Lexicon lexicon = Lexicon.defaults();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunkMegabytes = 8;
+        for (int i = 2; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                usage();
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "--lexicon":
+                    lexicon = Lexicon.load(Paths.get(args[i + 1]), 1);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--chunk-mb":
+                    chunkMegabytes = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    usage();
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (threads < 1 || chunkMegabytes < 1 || chunkMegabytes > 1024) {
+            throw new IllegalArgumentException("--threads must be positive and --chunk-mb between 1 and 1024");
+        }
+        if (in.toAbsolutePath().normalize().equals(out.toAbsolutePath().normalize())) {
+            throw new IllegalArgumentException("The output must not overwrite the input: " + in);
+        }
+
+        long start = System.nanoTime();
+        Summary summary = reanalyze(in, out, lexicon, threads, chunkMegabytes * 1024L * 1024);
+        long nanos = System.nanoTime() - start;
+        summary.print(in, out, lexicon, threads, nanos);
+    }
+
+    static Summary reanalyze(Path in, Path out, Lexicon lexicon, int threads, long chunkBytes)
+            throws IOException, InterruptedException {
+        Summary summary = new Summary();
+        try (FileChannel input = FileChannel.open(in, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.WRITE)) {
+            long size = input.size();
+            long position = headerEnd(input);
+            for (long copied = 0; copied < position; ) {
+                copied += input.transferTo(copied, position - copied, output);
+            }
+            summary.bytes = size;
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+                while (position < size || !pending.isEmpty()) {
+                    while (position < size && pending.size() < threads * IN_FLIGHT_CHUNKS_PER_THREAD) {
+                        long end = rowBoundaryAfter(input, Math.min(size, position + chunkBytes));
+                        pending.add(pool.submit(new ChunkTask(input, position, end, lexicon)));
+                        position = end;
+                    }
+                    Chunk chunk = result(pending.poll());
+                    ByteBuffer bytes = ByteBuffer.wrap(chunk.output, 0, chunk.size);
+                    while (bytes.hasRemaining()) {
+                        output.write(bytes);
+                    }
+                    summary.add(chunk);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        return summary;
+    }
+
+    private static Chunk result(Future<Chunk> task) throws IOException, InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // End of the header line if the file starts with one, else 0.
+    private static long headerEnd(FileChannel channel) throws IOException {
+        byte[] header = AnalyzedItemCsv.HEADER.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer start = ByteBuffer.allocate(header.length);
+        while (start.hasRemaining() && channel.read(start, start.position()) > 0) {
+            // keep reading until the header length is covered or the file ends
+        }
+        if (start.position() < header.length) {
+            return 0;
+        }
+        for (int i = 0; i < header.length; i++) {
+            if (start.get(i) != header[i]) {
+                return 0;
+            }
+        }
+        return lineBoundaryAfter(channel, header.length);
+    }
+
+    // The first line start at or after position.
+    private static long lineBoundaryAfter(FileChannel channel, long position) throws IOException {
+        long size = channel.size();
+        if (position >= size) {
+            return size;
+        }
+        ByteBuffer window = ByteBuffer.allocate(8192);
+        long from = position - 1;
+        while (from < size) {
+            window.clear();
+            int read = channel.read(window, from);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return from + i + 1;
+                }
+            }
+            from += read;
+        }
+        return size;
+    }
+
+    // The first row start at or after position: a line start right after a line that ends like a row.
+    // Falls back to the first line start if no row ends within MAX_ROW_BYTES.
+    private static long rowBoundaryAfter(FileChannel channel, long position) throws IOException {
+        long size = channel.size();
+        if (position >= size) {
+            return size;
+        }
+        long lineStart = lineBoundaryAfter(channel, position);
+        long candidate = lineStart;
+        while (candidate < size && candidate - position <= MAX_ROW_BYTES) {
+            if (candidate == 0 || endsRow(channel, candidate - 1)) {
+                return candidate;
+            }
+            candidate = lineBoundaryAfter(channel, candidate + 1);
+        }
+        return candidate < size ? lineStart : size;
+    }
+
+    /**
+     * Whether the line break at {@code newline} ends a row, judged from the bytes just before it:
+     * {@code ",priority,RESULT} with an odd run of quotes, which inside a headline only the closing
+     * quote can make since embedded quotes come in pairs. Runs that reach back to a comma could also
+     * be a headline's opening quote and are not trusted.
+     */
+    private static boolean endsRow(FileChannel channel, long newline) throws IOException {
+        int span = (int) Math.min(newline, ROW_END_LOOKBACK);
+        ByteBuffer tail = ByteBuffer.allocate(span);
+        while (tail.hasRemaining() && channel.read(tail, newline - span + tail.position()) > 0) {
+            // keep reading until the lookback is filled
+        }
+        int i = tail.position() - 1;
+        if (i < span - 1) {
+            return false;
+        }
+        if (i >= 0 && tail.get(i) == '\r') {
+            i--;
+        }
+        int resultStart = -1;
+        for (byte[] name : RESULT_NAMES) {
+            int from = i + 1 - name.length;
+            if (from >= 0 && ChunkTask.resultOf(tail, from, i + 1) >= 0) {
+                resultStart = from;
+                break;
+            }
+        }
+        i = resultStart - 1;
+        if (i < 0 || tail.get(i) != ',') {
+            return false;
+        }
+        int priorityEnd = i;
+        do {
+            i--;
+        } while (i >= 0 && tail.get(i) >= '0' && tail.get(i) <= '9');
+        if (i >= 0 && tail.get(i) == '-') {
+            i--;
+        }
+        if (i < 0 || tail.get(i) != ',' || !ChunkTask.isNumber(tail, i + 1, priorityEnd)) {
+            return false;
+        }
+        int quotes = 0;
+        while (--i >= 0 && tail.get(i) == '"') {
+            quotes++;
+        }
+        return quotes % 2 == 1 && i >= 0 && tail.get(i) != ',';
+    }
+
+    static final class Chunk {
+        byte[] output;
+        int size;
+        long rows;
+        long malformed;
+        final long[] transitions = new long[RESULTS.length * RESULTS.length];
+        final List<String> examples = new ArrayList<>();
+
+        Chunk(int capacity) {
+            this.output = new byte[capacity];
+        }
+
+        void append(ByteBuffer source, int from, int to) {
+            int length = to - from;
+            ensureCapacity(length);
+            source.position(from);
+            source.get(output, size, length);
+            size += length;
+        }
+
+        void append(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, output, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > output.length) {
+                byte[] grown = new byte[Math.max(size + extra, output.length + (output.length >> 1))];
+                System.arraycopy(output, 0, grown, 0, size);
+                output = grown;
+            }
+        }
+    }
+
+    /**
+     * Parses, re-analyzes and re-encodes the rows of one row-aligned region of the input.
+     */
+    private static final class ChunkTask implements Callable<Chunk> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final Lexicon lexicon;
+        private final HeadlineChars headline = new HeadlineChars();
+
+        ChunkTask(FileChannel channel, long start, long end, Lexicon lexicon) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.lexicon = lexicon;
+        }
+
+        @Override
+        public Chunk call() throws IOException {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            int length = data.limit();
+            // NEUTRAL is one byte shorter than the other results, so a few rows may grow by one byte.
+            Chunk chunk = new Chunk(length + length / 64 + 16);
+            int rowStart = 0;
+            while (rowStart < length) {
+                int rowEnd = rowEnd(data, rowStart, length);
+                int next = rowEnd < length ? rowEnd + 1 : length;
+                int contentEnd = rowEnd > rowStart && data.get(rowEnd - 1) == '\r' ? rowEnd - 1 : rowEnd;
+                if (contentEnd > rowStart) {
+                    reanalyzeRow(data, rowStart, contentEnd, next, chunk);
+                } else {
+                    chunk.append(data, rowStart, next);
+                }
+                rowStart = next;
+            }
+            return chunk;
+        }
+
+        // The first line break at or after from that is outside quotes, or to.
+        private static int rowEnd(ByteBuffer data, int from, int to) {
+            boolean quoted = false;
+            for (int i = from; i < to; i++) {
+                byte b = data.get(i);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    return i;
+                }
+            }
+            return to;
+        }
+
+        // Row layout: "timestamp","headline with "" for each quote",priority,RESULT
+        private void reanalyzeRow(ByteBuffer data, int rowStart, int contentEnd, int next, Chunk chunk) {
+            int resultComma = lastComma(data, rowStart, contentEnd);
+            int priorityComma = lastComma(data, rowStart, resultComma);
+            int oldResult = resultComma < 0 ? -1 : resultOf(data, resultComma + 1, contentEnd);
+            int timestampEnd = data.get(rowStart) == '"' ? indexOfQuote(data, rowStart + 1, contentEnd) : -1;
+            int headlineStart = timestampEnd + 3;
+            int headlineEnd = priorityComma - 1;
+            if (oldResult < 0 || priorityComma < 0 || timestampEnd < 0 || headlineStart > headlineEnd
+                    || data.get(timestampEnd + 1) != ',' || data.get(timestampEnd + 2) != '"' || data.get(headlineEnd) != '"'
+                    || !isNumber(data, priorityComma + 1, resultComma)) {
+                chunk.malformed++;
+                chunk.append(data, rowStart, next);
+                return;
+            }
+
+            CharSequence text = headline.decode(data, headlineStart, headlineEnd);
+            int newResult = HeadlineAnalyzer.analyze(lexicon, text).ordinal();
+            chunk.rows++;
+            chunk.transitions[oldResult * RESULTS.length + newResult]++;
+            if (oldResult != newResult && chunk.examples.size() < MAX_EXAMPLES) {
+                chunk.examples.add(RESULTS[oldResult] + " -> " + RESULTS[newResult] + ": " + text);
+            }
+            chunk.append(data, rowStart, resultComma + 1);
+            chunk.append(RESULT_NAMES[newResult]);
+            chunk.append(data, contentEnd, next);
+        }
+
+        private static int lastComma(ByteBuffer data, int from, int to) {
+            for (int i = to - 1; i >= from; i--) {
+                if (data.get(i) == ',') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int indexOfQuote(ByteBuffer data, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (data.get(i) == '"') {
+                    return i < to - 2 ? i : -1;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean isNumber(ByteBuffer data, int from, int to) {
+            if (from >= to) {
+                return false;
+            }
+            for (int i = from; i < to; i++) {
+                byte b = data.get(i);
+                if ((b < '0' || b > '9') && !(b == '-' && i == from && to - from > 1)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int resultOf(ByteBuffer data, int from, int to) {
+            for (int r = 0; r < RESULT_NAMES.length; r++) {
+                byte[] name = RESULT_NAMES[r];
+                if (name.length == to - from) {
+                    int i = 0;
+                    while (i < name.length && data.get(from + i) == name[i]) {
+                        i++;
+                    }
+                    if (i == name.length) {
+                        return r;
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Reusable unescaped view of a quoted CSV field. ASCII is widened in place; a field with other
+     * bytes is decoded as UTF-8 once.
+     */
+    private static final class HeadlineChars implements CharSequence {
+        private char[] chars = new char[256];
+        private int length;
+
+        CharSequence decode(ByteBuffer data, int from, int to) {
+            if (chars.length < to - from) {
+                chars = new char[to - from];
+            }
+            length = 0;
+            for (int i = from; i < to; i++) {
+                byte b = data.get(i);
+                if (b < 0) {
+                    return decodeUtf8(data, from, to);
+                }
+                chars[length++] = (char) b;
+                if (b == '"' && i + 1 < to && data.get(i + 1) == '"') {
+                    i++;
+                }
+            }
+            return this;
+        }
+
+        private CharSequence decodeUtf8(ByteBuffer data, int from, int to) {
+            byte[] bytes = new byte[to - from];
+            data.position(from);
+            data.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8).replace("\"\"", "\"");
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+
+    static final class Summary {
+        long bytes;
+        long rows;
+        long malformed;
+        final long[] transitions = new long[RESULTS.length * RESULTS.length];
+        final List<String> examples = new ArrayList<>();
+
+        void add(Chunk chunk) {
+            rows += chunk.rows;
+            malformed += chunk.malformed;
+            for (int i = 0; i < transitions.length; i++) {
+                transitions[i] += chunk.transitions[i];
+            }
+            for (String example : chunk.examples) {
+                if (examples.size() < MAX_EXAMPLES) {
+                    examples.add(example);
+                }
+            }
+        }
+
+        long getChangedCount() {
+            long changed = 0;
+            for (int from = 0; from < RESULTS.length; from++) {
+                for (int to = 0; to < RESULTS.length; to++) {
+                    if (from != to) {
+                        changed += transitions[from * RESULTS.length + to];
+                    }
+                }
+            }
+            return changed;
+        }
+
+        void print(Path in, Path out, Lexicon lexicon, int threads, long nanos) {
+            double seconds = nanos / 1e9;
+            System.out.printf("Re-analyzed %,d rows of %s into %s with %s on %d threads in %,d ms (%.1f MB/s, %,.0f rows/s)%n",
+                    rows, in, out, lexicon, threads, nanos / 1_000_000, bytes / seconds / (1024 * 1024), rows / seconds);
+            long changed = getChangedCount();
+            System.out.printf("Sentiment changed for %,d rows (%.2f%%); %,d malformed rows copied unchanged%n",
+                    changed, rows > 0 ? 100.0 * changed / rows : 0.0, malformed);
+            System.out.printf("  %-10s", "old\\new");
+            for (HeadlineAnalyzer.AnalysisResult result : RESULTS) {
+                System.out.printf("%12s", result);
+            }
+            System.out.println();
+            for (HeadlineAnalyzer.AnalysisResult from : RESULTS) {
+                System.out.printf("  %-10s", from);
+                for (HeadlineAnalyzer.AnalysisResult to : RESULTS) {
+                    System.out.printf("%,12d", transitions[from.ordinal() * RESULTS.length + to.ordinal()]);
+                }
+                System.out.println();
+            }
+            if (!examples.isEmpty()) {
+                System.out.println("First changed rows:");
+                for (String example : examples) {
+                    System.out.println("  " + example);
+                }
+            }
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: CsvReanalysisTool <in.csv> <out.csv> [--lexicon file] [--threads n] [--chunk-mb n]");
+    }
+}
@@ -0,0 +1,32 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.time.Instant;
+
+/**
+ * Wall-clock time in epoch nanoseconds as a primitive, for recording items without an {@link Instant}
+ * each. It is {@link System#nanoTime()} plus an offset taken from the wall clock; {@link #recalibrate()}
+ * refreshes the offset so the two do not drift apart over a long run.
+ */
+final class EpochNanoClock {
+    private static volatile long offsetNanos = offset();
+
+    private EpochNanoClock() {
+    }
+
+    static long now() {
+        return System.nanoTime() + offsetNanos;
+    }
+
+    static void recalibrate() {
+        offsetNanos = offset();
+    }
+
+    private static long offset() {
+        Instant wall = Instant.now();
+        return wall.getEpochSecond() * 1_000_000_000L + wall.getNano() - System.nanoTime();
+    }
+}
@@ -0,0 +1,146 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server-wide in-flight budget shared by all connections. An item is in flight from the moment it
+ * is decoded until its analysis has been recorded. When a connection finds the global budget (or its
+ * own) exhausted it stops reading from its socket, so the kernel buffers fill up and TCP pushes back
+ * on the feed; connections waiting on the global budget are resumed once it has drained to half.
+ * <p>
+ * With {@link ShedPolicy#DROP_LOW_PRIORITY}, decoded items are dropped before they enter the queue
+ * once the global in-flight count passes a threshold that rises with priority: priority 0 is shed from
+ * half the budget on, priority 8 only near the full budget, and the top priority is never shed.
+ */
+public class FlowControl {
+
+    public enum ShedPolicy {
+        NONE, DROP_LOW_PRIORITY;
+
+        public static ShedPolicy fromProperty(String value) {
+            if (value == null) {
+                return NONE;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid analyzer.shed.policy: " + value + ". Using none (expected none or drop-low-priority)");
+                return NONE;
+            }
+        }
+    }
+
+    private final int globalLimit;
+    private final int connectionLimit;
+    private final ShedPolicy shedPolicy;
+    private final int[] shedThresholds = new int[AnalysisStage.PRIORITY_LEVELS];
+    private final AtomicInteger globalInFlight = new AtomicInteger();
+    private final AtomicInteger pausedConnections = new AtomicInteger();
+    private final LongAdder pauses = new LongAdder();
+    private final LongAdder[] dropped = new LongAdder[AnalysisStage.PRIORITY_LEVELS];
+    private final Queue<ClientHandler> waitingForBudget = new ConcurrentLinkedQueue<>();
+
+    public FlowControl(int globalLimit, int connectionLimit, ShedPolicy shedPolicy) {
+        if (globalLimit < 1 || connectionLimit < 1) {
+            throw new IllegalArgumentException("In-flight limits must be positive");
+        }
+        this.globalLimit = globalLimit;
+        this.connectionLimit = connectionLimit;
+        this.shedPolicy = shedPolicy;
+        int top = AnalysisStage.PRIORITY_LEVELS - 1;
+        for (int priority = 0; priority < AnalysisStage.PRIORITY_LEVELS; priority++) {
+            shedThresholds[priority] = priority == top ? Integer.MAX_VALUE : globalLimit / 2 + (int) ((long) globalLimit * priority / (2 * top));
+            dropped[priority] = new LongAdder();
+        }
+    }
+
+    public int getGlobalLimit() {
+        return globalLimit;
+    }
+
+    public int getConnectionLimit() {
+        return connectionLimit;
+    }
+
+    public ShedPolicy getShedPolicy() {
+        return shedPolicy;
+    }
+
+    public int getGlobalInFlight() {
+        return globalInFlight.get();
+    }
+
+    public int getPausedConnections() {
+        return pausedConnections.get();
+    }
+
+    public long getPauseCount() {
+        return pauses.sum();
+    }
+
+    public long getDropped(int priority) {
+        return dropped[priority].sum();
+    }
+
+    /**
+     * Decides whether a freshly decoded item is admitted. Returns false (and counts the drop) when the
+     * shedding policy rejects it; otherwise the item is counted as in flight until {@link #release()}.
+     */
+    boolean admit(int priority) {
+        if (shedPolicy == ShedPolicy.DROP_LOW_PRIORITY && globalInFlight.get() >= shedThresholds[priority]) {
+            dropped[priority].increment();
+            return false;
+        }
+        globalInFlight.incrementAndGet();
+        return true;
+    }
+
+    void release() {
+        if (globalInFlight.decrementAndGet() <= globalLimit / 2 && !waitingForBudget.isEmpty()) {
+            ClientHandler handler;
+            // Resumed connections refill the budget; whoever is still waiting then stays queued.
+            while (hasGlobalHeadroom() && (handler = waitingForBudget.poll()) != null) {
+                handler.waitingForBudget.set(false);
+                handler.maybeResumeReading();
+            }
+        }
+    }
+
+    boolean isGlobalExhausted() {
+        return globalInFlight.get() >= globalLimit;
+    }
+
+    boolean hasGlobalHeadroom() {
+        return globalInFlight.get() <= globalLimit / 2;
+    }
+
+    void onPaused() {
+        pauses.increment();
+        pausedConnections.incrementAndGet();
+    }
+
+    void onResumed() {
+        pausedConnections.decrementAndGet();
+    }
+
+    /**
+     * Parks a paused connection until the global budget has drained to half. Checked again after
+     * queueing so that a release racing with this call cannot leave the connection paused forever.
+     */
+    void awaitBudget(ClientHandler handler) {
+        if (handler.waitingForBudget.compareAndSet(false, true)) {
+            waitingForBudget.add(handler);
+        }
+        if (hasGlobalHeadroom() && handler.waitingForBudget.compareAndSet(true, false)) {
+            handler.maybeResumeReading(); // a stale queue entry may remain; resuming twice is harmless
+        }
+    }
+}
@@ -1,58 +1,60 @@
 package org.mhh.analyzer;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * @auther:MHEsfandiari
  */
 
 public class HeadlineAnalyzer {
-    private final Set<String> positiveKeywords;
-    private final Set<String> negativeKeywords;
+    // Swapped as a whole on reload; analyze() reads it once, so in-flight calls never see a half-built lexicon.
+    private volatile Lexicon lexicon;
 
     public HeadlineAnalyzer() {
-        this.positiveKeywords = new HashSet<>(Arrays.asList(
-                "good", "great", "excellent", "positive", "success", "improvement", "advancement", "benefit", "win", "happy"
-        ));
-        this.negativeKeywords = new HashSet<>(Arrays.asList(
-                "bad", "terrible", "poor", "negative", "failure", "problem", "loss", "decline", "lose", "sad", "crisis"));
+        this(Lexicon.defaults());
     }
 
-    public AnalysisResult analyze(String headline) {
-        if (headline == null || headline.trim().isEmpty()) {
-            return AnalysisResult.NEUTRAL;
-        }
+    public HeadlineAnalyzer(Lexicon lexicon) {
+        this.lexicon = lexicon;
+    }
 
-        String lowerCaseHeadline = headline.toLowerCase();
-        boolean foundPositive = false;
-        boolean foundNegative = false;
+    public Lexicon getLexicon() {
+        return lexicon;
+    }
 
-        for (String keyword : positiveKeywords) {
-            if (lowerCaseHeadline.contains(keyword)) {
-                foundPositive = true;
-                break;
-            }
+    public void setLexicon(Lexicon lexicon) {
+        this.lexicon = lexicon;
+    }
+
+    public AnalysisResult analyze(String headline) {
+        return analyze(this.lexicon, headline);
+    }
+
+    /**
+     * Analyzes {@code headlines[0..count)} into {@code results}, all against the same lexicon.
+     */
+    public void analyzeBatch(String[] headlines, int count, AnalysisResult[] results) {
+        Lexicon current = this.lexicon;
+        for (int i = 0; i < count; i++) {
+            results[i] = analyze(current, headlines[i]);
         }
+    }
 
-        for (String keyword : negativeKeywords) {
-            if (lowerCaseHeadline.contains(keyword)) {
-                foundNegative = true;
-                break;
-            }
+    static AnalysisResult analyze(Lexicon lexicon, CharSequence headline) {
+        if (headline == null || isBlank(headline)) {
+            return AnalysisResult.NEUTRAL;
         }
+        return lexicon.classify(lexicon.score(headline));
+    }
 
-        if (foundPositive && !foundNegative) {
-            return AnalysisResult.POSITIVE;
-        } else if (foundNegative && !foundPositive) {
-            return AnalysisResult.NEGATIVE;
-        } else {
-            return AnalysisResult.NEUTRAL; // Includes cases where both or neither are found
+    private static boolean isBlank(CharSequence headline) {
+        for (int i = 0; i < headline.length(); i++) {
+            if (headline.charAt(i) > ' ') {
+                return false;
+            }
         }
+        return true;
     }
 
     public enum AnalysisResult {
         POSITIVE, NEGATIVE, NEUTRAL
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,210 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.Hashing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recognizes headlines already seen within a time window, so repeats can skip analysis and storage.
+ * <p>
+ * Every headline is reduced to a 64-bit hash and looked up in a Bloom filter cut into {@link #SLICES}
+ * time slices of {@code window / SLICES} each: inserts go to the current slice, lookups check all of
+ * them, and the oldest slice is cleared when time moves on, so memory stays fixed and a headline is
+ * remembered for between three quarters of and one full window after it was last seen. Most new
+ * headlines are rejected by the filter alone. A filter hit is confirmed against a small exact LRU of
+ * recent headlines (striped to keep workers apart), which rules out both false positives and hash
+ * collisions; a hit the LRU cannot confirm counts as new.
+ */
+public class HeadlineDeduplicator {
+    static final int SLICES = 4;
+    private static final int LRU_STRIPES = 16;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final long windowMillis;
+    private final long sliceMillis;
+    private final AtomicLongArray[] slices = new AtomicLongArray[SLICES];
+    private final int bitMask;
+    private final int hashCount;
+    private final AtomicLong currentEpoch = new AtomicLong();
+    private final Stripe[] stripes = new Stripe[LRU_STRIPES];
+    private final LongAdder checked = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder filterHits = new LongAdder();
+
+    private static final class Seen {
+        final String headline;
+        long lastSeenMillis;
+
+        Seen(String headline, long lastSeenMillis) {
+            this.headline = headline;
+            this.lastSeenMillis = lastSeenMillis;
+        }
+    }
+
+    private static final class Stripe extends LinkedHashMap<Long, Seen> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Stripe(int capacity) {
+            super(capacity * 4 / 3 + 1, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Seen> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    /**
+     * @param windowMillis  how long a headline is remembered after it was last seen
+     * @param expectedItems distinct headlines expected per window; sizes the filter for a ~1% false positive rate
+     * @param lruCapacity   recent headlines kept exactly to confirm filter hits
+     */
+    public HeadlineDeduplicator(long windowMillis, int expectedItems, int lruCapacity) {
+        if (windowMillis < SLICES || expectedItems < 1 || lruCapacity < LRU_STRIPES) {
+            throw new IllegalArgumentException("Dedup window, expected items and LRU capacity are too small");
+        }
+        this.windowMillis = windowMillis;
+        this.sliceMillis = windowMillis / SLICES;
+        // Each slice holds a quarter of the window's items and gets a quarter of the error budget.
+        double itemsPerSlice = Math.max(1.0, (double) expectedItems / SLICES);
+        double bitsPerItem = -Math.log(FALSE_POSITIVE_RATE / SLICES) / (Math.log(2) * Math.log(2));
+        long bits = Long.highestOneBit((long) Math.ceil(itemsPerSlice * bitsPerItem) - 1) << 1;
+        bits = Math.max(64, Math.min(bits, 1L << 31));
+        this.bitMask = (int) (bits - 1);
+        this.hashCount = Math.max(1, (int) Math.round(bitsPerItem * Math.log(2)));
+        for (int i = 0; i < SLICES; i++) {
+            slices[i] = new AtomicLongArray((int) (bits >>> 6));
+        }
+        for (int i = 0; i < LRU_STRIPES; i++) {
+            stripes[i] = new Stripe(lruCapacity / LRU_STRIPES);
+        }
+        currentEpoch.set(System.currentTimeMillis() / sliceMillis);
+    }
+
+    /**
+     * Records {@code headline} as seen now and returns true if it was already seen within the window.
+     * A headline not seen before is copied into the exact LRU as a {@code String}.
+     */
+    public boolean isDuplicate(CharSequence headline) {
+        long now = System.currentTimeMillis();
+        AtomicLongArray current = rotate(now);
+        long hash = Hashing.hash64(headline);
+        checked.increment();
+        boolean maybeSeen = filterContains(hash);
+        filterAdd(current, hash);
+
+        Stripe stripe = stripes[(int) (hash >>> 60)];
+        synchronized (stripe) {
+            Seen seen = maybeSeen ? stripe.get(hash) : null;
+            if (seen != null && now - seen.lastSeenMillis <= windowMillis && seen.headline.contentEquals(headline)) {
+                seen.lastSeenMillis = now;
+                filterHits.increment();
+                duplicates.increment();
+                return true;
+            }
+            stripe.put(hash, new Seen(headline.toString(), now));
+        }
+        if (maybeSeen) {
+            filterHits.increment();
+        }
+        return false;
+    }
+
+    private AtomicLongArray rotate(long now) {
+        long epoch = now / sliceMillis;
+        long previous = currentEpoch.get();
+        if (epoch > previous && currentEpoch.compareAndSet(previous, epoch)) {
+            // Slices that have not been written since a full window ago are reused for the new epochs.
+            for (long stale = Math.max(previous + 1, epoch - SLICES + 1); stale <= epoch; stale++) {
+                AtomicLongArray slice = slices[(int) (stale % SLICES)];
+                for (int i = 0; i < slice.length(); i++) {
+                    slice.set(i, 0);
+                }
+            }
+        }
+        return slices[(int) (Math.max(epoch, currentEpoch.get()) % SLICES)];
+    }
+
+    private boolean filterContains(long hash) {
+        for (AtomicLongArray slice : slices) {
+            if (sliceContains(slice, hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean sliceContains(AtomicLongArray slice, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (h1 + i * h2) & bitMask;
+            if ((slice.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void filterAdd(AtomicLongArray slice, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = (h1 + i * h2) & bitMask;
+            long mask = 1L << bit;
+            int word = bit >>> 6;
+            long bits;
+            while (((bits = slice.get(word)) & mask) == 0 && !slice.compareAndSet(word, bits, bits | mask)) {
+                // another worker set a bit in the same word; retry
+            }
+        }
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public long getCheckedCount() {
+        return checked.sum();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Filter hits the LRU could not confirm: false positives, or headlines already evicted from the LRU.
+     */
+    public long getUnconfirmedCount() {
+        return filterHits.sum() - duplicates.sum();
+    }
+
+    public long getFilterBytes() {
+        return (long) SLICES * slices[0].length() * Long.BYTES;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    public int getLruSize() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,136 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A decoded binary frame in the flyweight ingest mode, taking the place of a {@code NewsItem}: the
+ * headline's UTF-8 bytes stay in a slice of the {@link HeadlineFramePool}'s direct memory and the frame
+ * itself is the headline as a {@link CharSequence}, so decoding, analyzing and recording an item
+ * creates no objects. ASCII headlines are read byte for byte; any other headline is decoded into a
+ * {@code String} once, since a UTF-8 decoder that replaces malformed input exactly like
+ * {@code new String(bytes, UTF_8)} would be a second implementation to keep in step.
+ * <p>
+ * A frame belongs to one item from decoding until it is released back to its pool after recording;
+ * nothing may keep a reference to it, or to it as a {@code CharSequence}, beyond that.
+ */
+public final class HeadlineFrame implements CharSequence {
+    final HeadlineFramePool pool; // null for a frame allocated because the pool could not supply one
+    final int index;
+    private final ByteBuffer bytes;
+    private int length;
+    private int priority;
+    private String decoded; // non-ASCII headlines only
+    AnalysisStage.Origin origin;
+    long enqueuedNanos;
+    HeadlineFrame next; // link in the owning connection's queue of decoded frames
+
+    HeadlineFrame(HeadlineFramePool pool, int index, ByteBuffer bytes) {
+        this.pool = pool;
+        this.index = index;
+        this.bytes = bytes.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Called by the pool with the frame's headline bytes already in place.
+    void set(int length, int priority, boolean ascii) {
+        this.length = length;
+        this.priority = priority;
+        if (!ascii) {
+            byte[] copy = new byte[length];
+            for (int i = 0; i < length; i++) {
+                copy[i] = bytes.get(i);
+            }
+            decoded = new String(copy, StandardCharsets.UTF_8);
+        }
+    }
+
+    void clear() {
+        decoded = null;
+        origin = null;
+        next = null;
+    }
+
+    ByteBuffer buffer() {
+        return bytes;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Length of the headline in UTF-8 bytes.
+     */
+    public int getByteLength() {
+        return length;
+    }
+
+    /**
+     * UTF-8 byte {@code i} of the headline.
+     */
+    public byte getByte(int i) {
+        return bytes.get(i);
+    }
+
+    /**
+     * Headline bytes {@code i..i+7} as a little-endian long; {@code i + 8} must not exceed the frame's capacity.
+     */
+    long getLong(int i) {
+        return bytes.getLong(i);
+    }
+
+    int getCapacity() {
+        return bytes.capacity();
+    }
+
+    /**
+     * Returns this frame to its pool. The frame must not be used afterwards.
+     */
+    public void release() {
+        clear();
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
+
+    @Override
+    public int length() {
+        return decoded != null ? decoded.length() : length;
+    }
+
+    @Override
+    public char charAt(int i) {
+        if (decoded != null) {
+            return decoded.charAt(i);
+        }
+        if (i >= length) {
+            throw new IndexOutOfBoundsException("Index " + i + " is outside a headline of length " + length);
+        }
+        return (char) bytes.get(i);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    /**
+     * The headline as a new {@code String}; allocates, so only for logging and other cold paths.
+     */
+    @Override
+    public String toString() {
+        if (decoded != null) {
+            return decoded;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) bytes.get(i);
+        }
+        return new String(chars);
+    }
+}
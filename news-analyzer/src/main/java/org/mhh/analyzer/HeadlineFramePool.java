@@ -0,0 +1,154 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.NewsItemCodec;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed set of {@link HeadlineFrame}s over one block of direct memory, each with room for
+ * {@code frameBytes} of headline. I/O threads take frames while decoding and analysis workers give
+ * them back, through a lock-free free list whose head carries a version so a frame taken and returned
+ * in between cannot corrupt it.
+ * <p>
+ * Flow control bounds the items in flight, so a pool sized to the global in-flight limit plus a little
+ * slack never runs dry. Should it anyway, or should a headline not fit, the frame is allocated on the
+ * heap instead and counted, so the pipeline never waits for a frame.
+ */
+public class HeadlineFramePool {
+    private final HeadlineFrame[] frames;
+    private final int[] nextFree;
+    private final int frameBytes;
+    private final AtomicLong freeHead = new AtomicLong(); // version << 32 | index of the first free frame, -1 when none
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final LongAdder exhausted = new LongAdder();
+    private final LongAdder oversized = new LongAdder();
+
+    /**
+     * @param frameCount frames to preallocate
+     * @param frameBytes headline bytes each frame holds, rounded up to a multiple of 8
+     */
+    public HeadlineFramePool(int frameCount, int frameBytes) {
+        if (frameCount < 1 || frameBytes < 8 || (long) frameCount * frameBytes > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Invalid frame pool size: " + frameCount + " frames of " + frameBytes + " bytes");
+        }
+        this.frameBytes = (frameBytes + 7) & ~7;
+        this.frames = new HeadlineFrame[frameCount];
+        this.nextFree = new int[frameCount];
+        ByteBuffer slab = ByteBuffer.allocateDirect(frameCount * this.frameBytes);
+        for (int i = 0; i < frameCount; i++) {
+            slab.limit((i + 1) * this.frameBytes).position(i * this.frameBytes);
+            frames[i] = new HeadlineFrame(this, i, slab.slice());
+            nextFree[i] = i + 1 < frameCount ? i + 1 : -1;
+        }
+        freeHead.set(0);
+    }
+
+    /**
+     * Decodes the binary frame at {@code in}'s position into a frame of this pool, or returns null and
+     * leaves the position untouched when the buffer does not yet hold a complete frame.
+     */
+    public HeadlineFrame decode(ByteBuffer in) throws StreamCorruptedException {
+        int length = NewsItemCodec.readHeadlineLength(in);
+        if (length < 0) {
+            return null;
+        }
+        HeadlineFrame frame = acquire(length);
+        ByteBuffer target = frame.buffer();
+        int start = in.position();
+        boolean ascii = true;
+        boolean blank = true;
+        if (in.hasArray()) {
+            byte[] array = in.array();
+            int offset = in.arrayOffset() + start;
+            target.clear();
+            target.put(array, offset, length);
+            for (int i = offset; i < offset + length; i++) {
+                ascii &= array[i] >= 0;
+                blank &= (array[i] & 0xFF) <= ' ';
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                byte b = in.get(start + i);
+                target.put(i, b);
+                ascii &= b >= 0;
+                blank &= (b & 0xFF) <= ' ';
+            }
+        }
+        int priority = in.get(start + length);
+        in.position(start + length + 1);
+        // The same checks NewsItem's constructor makes, since no NewsItem is created here.
+        if (blank || priority < 0 || priority > 9) {
+            frame.release();
+            throw new StreamCorruptedException("Invalid news item frame: "
+                    + (blank ? "Headline cannot be null or empty." : "Priority must be between 0 and 9."));
+        }
+        frame.set(length, priority, ascii);
+        return frame;
+    }
+
+    HeadlineFrame acquire(int headlineBytes) {
+        if (headlineBytes > frameBytes) {
+            oversized.increment();
+            return new HeadlineFrame(null, -1, ByteBuffer.allocate((headlineBytes + 7) & ~7));
+        }
+        while (true) {
+            long head = freeHead.get();
+            int top = (int) head;
+            if (top < 0) {
+                exhausted.increment();
+                return new HeadlineFrame(null, -1, ByteBuffer.allocate(frameBytes));
+            }
+            long next = (((head >>> 32) + 1) << 32) | (nextFree[top] & 0xFFFFFFFFL);
+            if (freeHead.compareAndSet(head, next)) {
+                inUse.incrementAndGet();
+                return frames[top];
+            }
+        }
+    }
+
+    void release(HeadlineFrame frame) {
+        int index = frame.index;
+        while (true) {
+            long head = freeHead.get();
+            nextFree[index] = (int) head;
+            if (freeHead.compareAndSet(head, (((head >>> 32) + 1) << 32) | index)) {
+                inUse.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    public int getFrameBytes() {
+        return frameBytes;
+    }
+
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    /**
+     * Frames allocated on the heap because every pooled frame was in use.
+     */
+    public long getExhaustedCount() {
+        return exhausted.sum();
+    }
+
+    /**
+     * Frames allocated on the heap because the headline was longer than {@link #getFrameBytes()}.
+     */
+    public long getOversizedCount() {
+        return oversized.sum();
+    }
+}
@@ -0,0 +1,122 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes read by a {@link SelectorLoop} for one connection, exposed as an {@link InputStream} to the
+ * worker that decodes them. A read only waits when an object is split across TCP segments, and
+ * gives up after {@code stallTimeoutMillis} so a half-sent object cannot pin a worker forever. The
+ * stall clock does not run while the server itself has paused reading from the connection.
+ */
+public class InboundByteStream extends InputStream {
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private final long stallTimeoutMillis;
+    private int headOffset;
+    private int available;
+    private boolean endOfStream;
+    private boolean paused;
+
+    public InboundByteStream(long stallTimeoutMillis) {
+        this.stallTimeoutMillis = stallTimeoutMillis;
+    }
+
+    public synchronized void append(ByteBuffer src) {
+        if (!src.hasRemaining()) {
+            return;
+        }
+        byte[] chunk = new byte[src.remaining()];
+        src.get(chunk);
+        chunks.addLast(chunk);
+        available += chunk.length;
+        notifyAll();
+    }
+
+    public synchronized void markEndOfStream() {
+        endOfStream = true;
+        notifyAll();
+    }
+
+    public synchronized void setPaused(boolean paused) {
+        this.paused = paused;
+        notifyAll();
+    }
+
+    public synchronized boolean isEndOfStream() {
+        return endOfStream;
+    }
+
+    @Override
+    public synchronized int available() {
+        return available;
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+        awaitData();
+        if (available == 0) {
+            return -1;
+        }
+        byte[] head = chunks.peekFirst();
+        int value = head[headOffset++] & 0xFF;
+        consumed(1, head);
+        return value;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        awaitData();
+        if (available == 0) {
+            return -1;
+        }
+        int copied = 0;
+        while (copied < len && available > 0) {
+            byte[] head = chunks.peekFirst();
+            int n = Math.min(len - copied, head.length - headOffset);
+            System.arraycopy(head, headOffset, b, off + copied, n);
+            headOffset += n;
+            copied += n;
+            consumed(n, head);
+        }
+        return copied;
+    }
+
+    private void consumed(int n, byte[] head) {
+        available -= n;
+        if (headOffset == head.length) {
+            chunks.pollFirst();
+            headOffset = 0;
+        }
+    }
+
+    private void awaitData() throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(stallTimeoutMillis);
+        while (available == 0 && !endOfStream) {
+            long remaining = paused ? Long.MAX_VALUE : deadline - System.nanoTime();
+            if (paused) {
+                deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(stallTimeoutMillis);
+            }
+            if (remaining <= 0) {
+                throw new SocketTimeoutException("Peer stalled mid-object for more than " + stallTimeoutMillis + " ms");
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for client data");
+            }
+        }
+    }
+}
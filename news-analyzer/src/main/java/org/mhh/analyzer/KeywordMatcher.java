@@ -0,0 +1,244 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Aho–Corasick automaton over a fixed keyword list, compiled into a dense transition table so that
+ * scanning a headline is a single pass over its characters with no allocation.
+ * <p>
+ * Text is case-folded on the fly exactly like {@code String.toLowerCase(Locale.ROOT)} for every
+ * character with a one-to-one lowercase mapping, including supplementary code points and the
+ * {@code U+0130 -> "i\u0307"} expansion. The one context-sensitive rule, final sigma, is folded to
+ * {@code σ}. Keywords themselves are matched as given, just like {@code lowerCaseHeadline.contains(keyword)}.
+ */
+public final class KeywordMatcher {
+    private static final int ROOT = 0;
+    private static final int ASCII_LIMIT = 128;
+
+    private final List<String> keywords;
+    private final int[] asciiClasses = new int[ASCII_LIMIT];
+    private final char[] otherChars;
+    private final int[] otherClasses;
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final long[] stateValues;
+    private final int[] outputOffsets;
+    private final int[] outputs;
+
+    /**
+     * @param keywords non-empty keywords; the id of a keyword is its index in this list
+     * @param values   per-keyword value summed by {@link #sumOfMatches(CharSequence)}
+     */
+    public KeywordMatcher(List<String> keywords, long[] values) {
+        if (keywords.size() != values.length) {
+            throw new IllegalArgumentException("Expected one value per keyword");
+        }
+        this.keywords = new ArrayList<>(keywords);
+
+        TreeSet<Character> alphabet = new TreeSet<>();
+        for (String keyword : keywords) {
+            if (keyword == null || keyword.isEmpty()) {
+                throw new IllegalArgumentException("Keywords must be non-empty");
+            }
+            for (int i = 0; i < keyword.length(); i++) {
+                alphabet.add(keyword.charAt(i));
+            }
+        }
+        int nextClass = 1; // class 0 is every character that appears in no keyword
+        List<Character> nonAscii = new ArrayList<>();
+        for (char c : alphabet) {
+            if (c < ASCII_LIMIT) {
+                asciiClasses[c] = nextClass++;
+            } else {
+                nonAscii.add(c);
+            }
+        }
+        this.otherChars = new char[nonAscii.size()];
+        this.otherClasses = new int[nonAscii.size()];
+        for (int i = 0; i < otherChars.length; i++) {
+            otherChars[i] = nonAscii.get(i);
+            otherClasses[i] = nextClass++;
+        }
+        this.alphabetSize = nextClass;
+
+        // Trie: a transition of 0 means "no child" while building, since no edge ever leads back to the root.
+        int maxStates = 1;
+        for (String keyword : keywords) {
+            maxStates += keyword.length();
+        }
+        int[] trie = new int[maxStates * alphabetSize];
+        List<List<Integer>> ownOutputs = new ArrayList<>();
+        ownOutputs.add(new ArrayList<>());
+        int stateCount = 1;
+        for (int id = 0; id < keywords.size(); id++) {
+            String keyword = keywords.get(id);
+            int state = ROOT;
+            for (int i = 0; i < keyword.length(); i++) {
+                int edge = state * alphabetSize + classOf(keyword.charAt(i));
+                if (trie[edge] == 0) {
+                    trie[edge] = stateCount++;
+                    ownOutputs.add(new ArrayList<>());
+                }
+                state = trie[edge];
+            }
+            ownOutputs.get(state).add(id);
+        }
+
+        // Breadth-first pass: failure links, DFA completion and flattened outputs.
+        this.transitions = Arrays.copyOf(trie, stateCount * alphabetSize);
+        int[] failure = new int[stateCount];
+        List<List<Integer>> allOutputs = new ArrayList<>(stateCount);
+        for (int s = 0; s < stateCount; s++) {
+            allOutputs.add(null);
+        }
+        allOutputs.set(ROOT, ownOutputs.get(ROOT));
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 1; c < alphabetSize; c++) {
+            int child = transitions[c];
+            if (child != 0) {
+                failure[child] = ROOT;
+                allOutputs.set(child, ownOutputs.get(child));
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int fail = failure[state];
+            for (int c = 1; c < alphabetSize; c++) {
+                int edge = state * alphabetSize + c;
+                int child = transitions[edge];
+                if (child != 0) {
+                    failure[child] = transitions[fail * alphabetSize + c];
+                    List<Integer> merged = new ArrayList<>(ownOutputs.get(child));
+                    merged.addAll(allOutputs.get(failure[child]));
+                    allOutputs.set(child, merged);
+                    queue.add(child);
+                } else {
+                    transitions[edge] = transitions[fail * alphabetSize + c];
+                }
+            }
+        }
+
+        this.stateValues = new long[stateCount];
+        this.outputOffsets = new int[stateCount + 1];
+        int totalOutputs = 0;
+        for (List<Integer> stateOutputs : allOutputs) {
+            totalOutputs += stateOutputs.size();
+        }
+        this.outputs = new int[totalOutputs];
+        int offset = 0;
+        for (int s = 0; s < stateCount; s++) {
+            outputOffsets[s] = offset;
+            for (int id : allOutputs.get(s)) {
+                outputs[offset++] = id;
+                stateValues[s] += values[id];
+            }
+        }
+        outputOffsets[stateCount] = offset;
+    }
+
+    public int getKeywordCount() {
+        return keywords.size();
+    }
+
+    public String getKeyword(int id) {
+        return keywords.get(id);
+    }
+
+    public int getStateCount() {
+        return stateValues.length;
+    }
+
+    /**
+     * Sum of the values of every keyword occurrence in the case-folded text, overlapping
+     * occurrences included.
+     */
+    public long sumOfMatches(CharSequence text) {
+        long sum = 0;
+        int state = ROOT;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < ASCII_LIMIT) {
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+                state = transitions[state * alphabetSize + asciiClasses[c]];
+                sum += stateValues[state];
+            } else if (c == '\u0130') {
+                state = step(state, 'i');
+                sum += stateValues[state];
+                state = step(state, '\u0307');
+                sum += stateValues[state];
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int lower = Character.toLowerCase(Character.toCodePoint(c, text.charAt(++i)));
+                if (Character.isSupplementaryCodePoint(lower)) {
+                    state = step(state, Character.highSurrogate(lower));
+                    sum += stateValues[state];
+                    state = step(state, Character.lowSurrogate(lower));
+                } else {
+                    state = step(state, (char) lower);
+                }
+                sum += stateValues[state];
+            } else {
+                state = step(state, Character.toLowerCase(c));
+                sum += stateValues[state];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Reports the id of every keyword occurrence in the case-folded text, in the order the
+     * occurrences end.
+     */
+    public void forEachMatch(CharSequence text, IntConsumer keywordIdSink) {
+        int state = ROOT;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c == '\u0130') {
+                state = step(state, 'i');
+                emit(state, keywordIdSink);
+                state = step(state, '\u0307');
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int lower = Character.toLowerCase(Character.toCodePoint(c, text.charAt(++i)));
+                if (Character.isSupplementaryCodePoint(lower)) {
+                    state = step(state, Character.highSurrogate(lower));
+                    emit(state, keywordIdSink);
+                    state = step(state, Character.lowSurrogate(lower));
+                } else {
+                    state = step(state, (char) lower);
+                }
+            } else {
+                state = step(state, Character.toLowerCase(c));
+            }
+            emit(state, keywordIdSink);
+        }
+    }
+
+    private void emit(int state, IntConsumer keywordIdSink) {
+        for (int o = outputOffsets[state]; o < outputOffsets[state + 1]; o++) {
+            keywordIdSink.accept(outputs[o]);
+        }
+    }
+
+    private int step(int state, char foldedChar) {
+        return transitions[state * alphabetSize + classOf(foldedChar)];
+    }
+
+    private int classOf(char c) {
+        if (c < ASCII_LIMIT) {
+            return asciiClasses[c];
+        }
+        int index = Arrays.binarySearch(otherChars, c);
+        return index >= 0 ? otherClasses[index] : 0;
+    }
+}
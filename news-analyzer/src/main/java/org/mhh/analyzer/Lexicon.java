@@ -0,0 +1,172 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable weighted keyword lexicon compiled into a {@link KeywordMatcher}. A headline's score is
+ * the sum of the weights of every keyword occurrence; it is POSITIVE at or above the positive
+ * threshold, NEGATIVE at or below the negative threshold and NEUTRAL in between.
+ * <p>
+ * The text format is one {@code keyword = weight} entry per line, plus the two reserved keys
+ * {@code threshold.positive} and {@code threshold.negative}. Blank lines and lines starting with
+ * {@code #} are ignored; keywords are lower-cased and may contain spaces.
+ */
+public final class Lexicon {
+    public static final String POSITIVE_THRESHOLD_KEY = "threshold.positive";
+    public static final String NEGATIVE_THRESHOLD_KEY = "threshold.negative";
+    private static final String DEFAULT_RESOURCE = "/default-lexicon.txt";
+
+    private final String source;
+    private final long version;
+    private final Map<String, Integer> weights;
+    private final int positiveThreshold;
+    private final int negativeThreshold;
+    private final KeywordMatcher matcher;
+    private final long compileNanos;
+
+    public Lexicon(String source, long version, Map<String, Integer> weights, int positiveThreshold, int negativeThreshold) {
+        if (negativeThreshold >= positiveThreshold) {
+            throw new IllegalArgumentException("Negative threshold " + negativeThreshold
+                    + " must be below positive threshold " + positiveThreshold);
+        }
+        long start = System.nanoTime();
+        this.source = source;
+        this.version = version;
+        this.weights = Collections.unmodifiableMap(new LinkedHashMap<>(weights));
+        this.positiveThreshold = positiveThreshold;
+        this.negativeThreshold = negativeThreshold;
+        List<String> keywords = new ArrayList<>(weights.keySet());
+        long[] values = new long[keywords.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = weights.get(keywords.get(i));
+        }
+        this.matcher = new KeywordMatcher(keywords, values);
+        this.compileNanos = System.nanoTime() - start;
+    }
+
+    public static Lexicon defaults() {
+        try (InputStream in = Lexicon.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing built-in lexicon " + DEFAULT_RESOURCE);
+            }
+            return parse(new InputStreamReader(in, StandardCharsets.UTF_8), "built-in", 0);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read built-in lexicon: " + e.getMessage(), e);
+        }
+    }
+
+    public static Lexicon load(Path file, long version) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(reader, file.toString(), version);
+        }
+    }
+
+    static Lexicon parse(Reader reader, String source, long version) throws IOException {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        Integer positiveThreshold = null;
+        Integer negativeThreshold = null;
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IOException(source + ":" + lineNumber + ": expected 'keyword = weight' but found '" + line + "'");
+            }
+            String key = line.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+            int value;
+            try {
+                value = Integer.parseInt(line.substring(separator + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IOException(source + ":" + lineNumber + ": weight is not an integer in '" + line + "'");
+            }
+            if (key.isEmpty()) {
+                throw new IOException(source + ":" + lineNumber + ": empty keyword");
+            } else if (key.equals(POSITIVE_THRESHOLD_KEY)) {
+                positiveThreshold = value;
+            } else if (key.equals(NEGATIVE_THRESHOLD_KEY)) {
+                negativeThreshold = value;
+            } else if (weights.put(key, value) != null) {
+                throw new IOException(source + ":" + lineNumber + ": duplicate keyword '" + key + "'");
+            }
+        }
+        if (positiveThreshold == null || negativeThreshold == null) {
+            throw new IOException(source + ": both " + POSITIVE_THRESHOLD_KEY + " and " + NEGATIVE_THRESHOLD_KEY + " must be set");
+        }
+        try {
+            return new Lexicon(source, version, weights, positiveThreshold, negativeThreshold);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(source + ": " + e.getMessage());
+        }
+    }
+
+    public int score(CharSequence headline) {
+        long sum = matcher.sumOfMatches(headline);
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, sum));
+    }
+
+    public HeadlineAnalyzer.AnalysisResult classify(int score) {
+        if (score >= positiveThreshold) {
+            return HeadlineAnalyzer.AnalysisResult.POSITIVE;
+        } else if (score <= negativeThreshold) {
+            return HeadlineAnalyzer.AnalysisResult.NEGATIVE;
+        }
+        return HeadlineAnalyzer.AnalysisResult.NEUTRAL;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Map<String, Integer> getWeights() {
+        return weights;
+    }
+
+    public int getPositiveThreshold() {
+        return positiveThreshold;
+    }
+
+    public int getNegativeThreshold() {
+        return negativeThreshold;
+    }
+
+    public KeywordMatcher getMatcher() {
+        return matcher;
+    }
+
+    public long getCompileNanos() {
+        return compileNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "Lexicon[" + source + " v" + version + ": " + weights.size() + " keywords, thresholds "
+                + negativeThreshold + "/" + positiveThreshold + "]";
+    }
+}
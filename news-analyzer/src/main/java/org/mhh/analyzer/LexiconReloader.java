@@ -0,0 +1,64 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls a lexicon file and, when its modification time or size changes, compiles the new version
+ * off the hot path and swaps it into the {@link HeadlineAnalyzer} in one volatile write. A file that
+ * fails to parse is reported and the previous lexicon stays active.
+ */
+public class LexiconReloader implements Runnable {
+    private final Path file;
+    private final HeadlineAnalyzer analyzer;
+    private long lastModifiedMillis = Long.MIN_VALUE;
+    private long lastSize = -1;
+
+    public LexiconReloader(Path file, HeadlineAnalyzer analyzer) {
+        this.file = file;
+        this.analyzer = analyzer;
+    }
+
+    @Override
+    public void run() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (modified == lastModifiedMillis && attributes.size() == lastSize) {
+                return;
+            }
+            lastModifiedMillis = modified;
+            lastSize = attributes.size();
+            reload();
+        } catch (IOException e) {
+            System.err.println("Could not check lexicon file " + file + ": " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the periodic reload task.
+            System.err.println("Unexpected error reloading lexicon " + file + ": " + e);
+        }
+    }
+
+    private void reload() {
+        Lexicon previous = analyzer.getLexicon();
+        long start = System.nanoTime();
+        Lexicon loaded;
+        try {
+            loaded = Lexicon.load(file, previous.getVersion() + 1);
+        } catch (IOException e) {
+            System.err.println("Keeping " + previous + " because the new lexicon is invalid: " + e.getMessage());
+            return;
+        }
+        analyzer.setLexicon(loaded);
+        long totalMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        System.out.printf("[LEXICON] Loaded %s in %,d us (automaton compile %,d us, %,d states)%n",
+                loaded, totalMicros, TimeUnit.NANOSECONDS.toMicros(loaded.getCompileNanos()),
+                loaded.getMatcher().getStateCount());
+    }
+}
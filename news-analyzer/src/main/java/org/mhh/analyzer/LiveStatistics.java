@@ -0,0 +1,129 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals per analysis result and per priority, plus sliding-window rates, all readable in
+ * constant time however many items have been recorded. {@link #record} only bumps two striped
+ * {@link LongAdder}s, so analysis workers never contend on a shared counter. Once a second
+ * {@link #tick()} snapshots the cumulative result counts into a ring; a window rate is the difference
+ * between the newest snapshot and the one a window's length ago.
+ */
+public class LiveStatistics {
+    public static final int[] WINDOW_SECONDS = {60, 5 * 60, 15 * 60};
+    private static final int PRIORITY_SLOTS = 16;
+    private static final int RESULT_COUNT = HeadlineAnalyzer.AnalysisResult.values().length;
+    private static final int RING_SIZE = 15 * 60 + 1;
+
+    private final LongAdder[] resultCounts = newAdders(RESULT_COUNT);
+    private final LongAdder[] priorityCounts = newAdders(PRIORITY_SLOTS);
+
+    // Snapshot ring, touched only under this object's monitor by the stats thread.
+    private final long[][] snapshotCounts = new long[RING_SIZE][RESULT_COUNT];
+    private final long[] snapshotNanos = new long[RING_SIZE];
+    private long ticks;
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    public void record(int priority, HeadlineAnalyzer.AnalysisResult result) {
+        resultCounts[result.ordinal()].increment();
+        priorityCounts[priority & (PRIORITY_SLOTS - 1)].increment();
+    }
+
+    public long getCount(HeadlineAnalyzer.AnalysisResult result) {
+        return resultCounts[result.ordinal()].sum();
+    }
+
+    public long getPriorityCount(int priority) {
+        return priorityCounts[priority & (PRIORITY_SLOTS - 1)].sum();
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (LongAdder count : resultCounts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Takes the per-second snapshot the window rates are computed from. Call it at a fixed rate of
+     * once per second, and once right after any bulk load (such as a replay) so that the load is not
+     * reported as a burst.
+     */
+    public synchronized void tick() {
+        int slot = (int) (ticks % RING_SIZE);
+        for (int r = 0; r < RESULT_COUNT; r++) {
+            snapshotCounts[slot][r] = resultCounts[r].sum();
+        }
+        snapshotNanos[slot] = System.nanoTime();
+        ticks++;
+    }
+
+    /**
+     * Items per second and sentiment mix over (up to) the last {@code seconds} seconds, or null when
+     * fewer than two snapshots have been taken.
+     */
+    public synchronized Window window(int seconds) {
+        if (ticks < 2) {
+            return null;
+        }
+        long newest = ticks - 1;
+        long oldest = Math.max(0, Math.max(newest - seconds, ticks - RING_SIZE));
+        int newestSlot = (int) (newest % RING_SIZE);
+        int oldestSlot = (int) (oldest % RING_SIZE);
+        long[] counts = new long[RESULT_COUNT];
+        for (int r = 0; r < RESULT_COUNT; r++) {
+            counts[r] = snapshotCounts[newestSlot][r] - snapshotCounts[oldestSlot][r];
+        }
+        return new Window(seconds, snapshotNanos[newestSlot] - snapshotNanos[oldestSlot], counts);
+    }
+
+    public static final class Window {
+        private final int seconds;
+        private final long elapsedNanos;
+        private final long[] counts;
+
+        Window(int seconds, long elapsedNanos, long[] counts) {
+            this.seconds = seconds;
+            this.elapsedNanos = elapsedNanos;
+            this.counts = counts;
+        }
+
+        public int getSeconds() {
+            return seconds;
+        }
+
+        public long getCount(HeadlineAnalyzer.AnalysisResult result) {
+            return counts[result.ordinal()];
+        }
+
+        public long getTotal() {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        public double getItemsPerSecond() {
+            return elapsedNanos > 0 ? getTotal() / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1)) : 0.0;
+        }
+
+        public double getPercentage(HeadlineAnalyzer.AnalysisResult result) {
+            long total = getTotal();
+            return total > 0 ? (double) counts[result.ordinal()] / total * 100 : 0.0;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry behind the metrics endpoint. Pipeline stages record into per-stage {@link LatencyHistogram}s
+ * (nanoseconds, never reset); everything else is registered once at startup as a counter or gauge read
+ * on demand, so the hot path only pays for the histogram and counter updates. Open connections are
+ * tracked here as well, with their byte and item counters.
+ * <p>
+ * {@link #render(StringBuilder)} writes the Prometheus text exposition format. Metric names may carry a
+ * label set ({@code name{label="value"}}); samples that share a base name share one HELP/TYPE header.
+ */
+public class Metrics {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final Map<String, Sample> samples = new LinkedHashMap<>();
+    private final Set<ClientHandler> connections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder itemsReceived = new LongAdder();
+    private final LongAdder connectionsAccepted = new LongAdder();
+
+    private static final class Sample {
+        final String help;
+        final String type;
+        final LongSupplier value;
+
+        Sample(String help, String type, LongSupplier value) {
+            this.help = help;
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    public Metrics() {
+        registerCounter("analyzer_received_bytes_total", "Bytes read from feed connections", bytesReceived::sum);
+        registerCounter("analyzer_received_items_total", "Items decoded from feed connections", itemsReceived::sum);
+        registerCounter("analyzer_connections_accepted_total", "Feed connections accepted", connectionsAccepted::sum);
+        registerGauge("analyzer_active_connections", "Feed connections currently open", connections::size);
+    }
+
+    /**
+     * The latency histogram of {@code stage}, created on first use. Call during startup only.
+     */
+    public synchronized LatencyHistogram latency(String stage) {
+        return latencies.computeIfAbsent(stage, s -> new LatencyHistogram());
+    }
+
+    public synchronized void registerLatency(String stage, LatencyHistogram histogram) {
+        latencies.put(stage, histogram);
+    }
+
+    public synchronized void registerCounter(String name, String help, LongSupplier value) {
+        samples.put(name, new Sample(help, "counter", value));
+    }
+
+    public synchronized void registerGauge(String name, String help, LongSupplier value) {
+        samples.put(name, new Sample(help, "gauge", value));
+    }
+
+    void connectionOpened(ClientHandler handler) {
+        connectionsAccepted.increment();
+        connections.add(handler);
+    }
+
+    void connectionClosed(ClientHandler handler) {
+        connections.remove(handler);
+    }
+
+    void bytesReceived(int count) {
+        bytesReceived.add(count);
+    }
+
+    void itemReceived() {
+        itemsReceived.increment();
+    }
+
+    public int getActiveConnections() {
+        return connections.size();
+    }
+
+    public synchronized void render(StringBuilder out) {
+        String previousBase = null;
+        for (Map.Entry<String, Sample> entry : samples.entrySet()) {
+            String name = entry.getKey();
+            Sample sample = entry.getValue();
+            int labels = name.indexOf('{');
+            String base = labels < 0 ? name : name.substring(0, labels);
+            if (!base.equals(previousBase)) {
+                out.append("# HELP ").append(base).append(' ').append(sample.help).append('\n');
+                out.append("# TYPE ").append(base).append(' ').append(sample.type).append('\n');
+                previousBase = base;
+            }
+            out.append(name).append(' ').append(sample.value.getAsLong()).append('\n');
+        }
+
+        out.append("# HELP analyzer_stage_latency_seconds Time spent per item in each pipeline stage (persist: per group commit)\n");
+        out.append("# TYPE analyzer_stage_latency_seconds summary\n");
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            String stage = entry.getKey();
+            for (double quantile : QUANTILES) {
+                out.append("analyzer_stage_latency_seconds{stage=\"").append(stage).append("\",quantile=\"").append(quantile).append("\"} ")
+                        .append(seconds(histogram.getValueAtPercentile(quantile * 100))).append('\n');
+            }
+            out.append("analyzer_stage_latency_seconds_max{stage=\"").append(stage).append("\"} ").append(seconds(histogram.getMax())).append('\n');
+            out.append("analyzer_stage_latency_seconds_sum{stage=\"").append(stage).append("\"} ")
+                    .append(seconds(histogram.getMean()) * histogram.getCount()).append('\n');
+            out.append("analyzer_stage_latency_seconds_count{stage=\"").append(stage).append("\"} ").append(histogram.getCount()).append('\n');
+        }
+
+        out.append("# HELP analyzer_connection_received_bytes Bytes read from each open connection\n");
+        out.append("# TYPE analyzer_connection_received_bytes gauge\n");
+        for (ClientHandler connection : connections) {
+            out.append("analyzer_connection_received_bytes{client=\"").append(connection.getSourceName()).append("\"} ")
+                    .append(connection.getBytesReceived()).append('\n');
+        }
+        out.append("# HELP analyzer_connection_received_items Items decoded from each open connection\n");
+        out.append("# TYPE analyzer_connection_received_items gauge\n");
+        for (ClientHandler connection : connections) {
+            out.append("analyzer_connection_received_items{client=\"").append(connection.getSourceName()).append("\"} ")
+                    .append(connection.getItemsReceived()).append('\n');
+        }
+    }
+
+    private static double seconds(double nanos) {
+        return nanos / TimeUnit.SECONDS.toNanos(1);
+    }
+}
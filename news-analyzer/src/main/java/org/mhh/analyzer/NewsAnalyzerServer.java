@@ -5,69 +5,326 @@ package org.mhh.analyzer;
  */
 
 import org.mhh.common.AnalyzedNewsItem;
+import org.mhh.common.LatencyHistogram;
 import org.mhh.common.NewsItem;
+import org.mhh.common.SocketProfile;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
-import java.util.Map;
+import java.util.Formatter;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
 
 public class NewsAnalyzerServer {
 
     private static final int DEFAULT_PORT = 9090;
-    private static final int MAX_THREADS = 10;
+    private static final int DEFAULT_WORKER_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_IO_THREADS = 2;
+    private static final long DEFAULT_DECODE_STALL_MILLIS = 5000;
+    private static final int DEFAULT_DECODE_THREADS = 2;
+    private static final int DEFAULT_ANALYSIS_QUEUE_CAPACITY = 16 * 1024;
+    private static final int DEFAULT_CONNECTION_IN_FLIGHT = 4 * 1024;
+    private static final int DEFAULT_BATCH_SIZE = 16;
+    private static final int METRICS_PORT_OFFSET = 1000;
+    private static final int DEFAULT_DEDUP_EXPECTED_ITEMS = 1_000_000;
+    private static final int DEFAULT_DEDUP_LRU_SIZE = 64 * 1024;
+    private static final int DEFAULT_QUERY_RETENTION_MINUTES = 24 * 60;
     private static final String CSV_FILE_NAME = "analyzed_news_items.csv";
-    private static final DateTimeFormatter CSV_TIMESTAMP_FORMATTER = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+    private static final String COLUMNAR_FILE_PREFIX = "analyzed_news_items-";
     private static final long STATS_UPDATE_INTERVAL_SECONDS = 10; // هر 10 ثانیه آمار را نمایش بده
+    private static final long DEFAULT_LEXICON_RELOAD_SECONDS = 5;
+    private static final int DEFAULT_STORE_MAX_ITEMS = 256 * 1024;
+    private static final String DEFAULT_WAL_DIR = "analyzer-wal";
+    private static final long DEFAULT_WAL_SEGMENT_MEGABYTES = 64;
+    private static final long DEFAULT_WAL_FSYNC_INTERVAL_MILLIS = 1000;
+    private static final int DEFAULT_WAL_MAX_SEGMENTS = 16;
+    private static final int DEFAULT_WAL_QUEUE_CAPACITY = 64 * 1024;
+    private static final int DEFAULT_FLYWEIGHT_HEADLINE_BYTES = 128;
+    private static final int FRAME_POOL_SLACK = 64;
 
     private final int port;
-    private final ExecutorService clientExecutor;
+    private final int workerThreads;
+    private final int ioThreads;
+    private final int decodeThreads;
+    private final long decodeStallMillis;
+    private final SocketProfile socketProfile;
+    private final ExecutorService clientExecutor; // decode stage; holds at most one pending task per connection
+    private final AnalysisStage analysisStage;
+    private final FlowControl flowControl;
+    private final HeadlineDeduplicator deduplicator; // null when deduplication is off
+    private final SentimentIndex sentimentIndex; // null when the query index is off
+    private final Metrics metrics = new Metrics();
+    private final int metricsPort; // -1 when the endpoint is disabled
+    private MetricsEndpoint metricsEndpoint;
+    private final SelectorLoop[] ioLoops;
+    private int nextIoLoop;
     private final ScheduledExecutorService statsExecutor; // برای نمایش آمار
     private final HeadlineAnalyzer headlineAnalyzer;
-    private final List<AnalyzedNewsItem> analyzedItemsStore;
+    private final AnalyzedItemStore analyzedItemsStore;
+    private final HeadlineFramePool framePool; // null unless the flyweight ingest mode is on
+    private final PackedItemStore packedStore; // the store, in the flyweight ingest mode
+    private final LiveStatistics statistics = new LiveStatistics();
+    private final WriteAheadLog writeAheadLog; // null when persistence is disabled
+    private final boolean csvOnShutdown;
+    private final boolean columnarOnShutdown;
+    private final RecordSinks liveSinks;
+    private Warmup warmup; // null unless a warm-up is still to run
+    private final boolean exitAfterWarmup;
+    private volatile long readyMillis = -1;
+    private volatile ServerSocketChannel listeningChannel;
+
+    // Where recorded items go: the live store, statistics, index and log, or throwaway ones for the warm-up.
+    private static final class RecordSinks {
+        final AnalyzedItemStore store;
+        final PackedItemStore packedStore; // the store, in the flyweight ingest mode
+        final LiveStatistics statistics;
+        final SentimentIndex sentimentIndex; // null when the query index is off
+        final WriteAheadLog writeAheadLog; // null when persistence is disabled
+
+        RecordSinks(AnalyzedItemStore store, PackedItemStore packedStore, LiveStatistics statistics, SentimentIndex sentimentIndex,
+                    WriteAheadLog writeAheadLog) {
+            this.store = store;
+            this.packedStore = packedStore;
+            this.statistics = statistics;
+            this.sentimentIndex = sentimentIndex;
+            this.writeAheadLog = writeAheadLog;
+        }
+    }
 
     public NewsAnalyzerServer(int port, int maxThreads) {
         this.port = port;
-        this.clientExecutor = Executors.newFixedThreadPool(maxThreads);
+        this.workerThreads = maxThreads;
+        this.ioThreads = Integer.getInteger("analyzer.io.threads", DEFAULT_IO_THREADS);
+        this.decodeThreads = Integer.getInteger("analyzer.decode.threads", DEFAULT_DECODE_THREADS);
+        this.decodeStallMillis = Long.getLong("analyzer.decode.stallMillis", DEFAULT_DECODE_STALL_MILLIS);
+        this.socketProfile = SocketProfile.fromProperties("analyzer.socket", SelectorLoop.DEFAULT_READ_BUFFER_SIZE);
+        this.clientExecutor = Executors.newFixedThreadPool(decodeThreads);
+        this.ioLoops = new SelectorLoop[ioThreads];
         this.statsExecutor = Executors.newSingleThreadScheduledExecutor(); // یک نخ برای نمایش آمار کافی است
-        this.headlineAnalyzer = new HeadlineAnalyzer();
-        this.analyzedItemsStore = new CopyOnWriteArrayList<>();
+        int cacheSize = Integer.getInteger("analyzer.cache.size", 0);
+        this.headlineAnalyzer = cacheSize > 0 ? new CachingHeadlineAnalyzer(Lexicon.defaults(), cacheSize) : new HeadlineAnalyzer();
+        long dedupWindowSeconds = Long.getLong("analyzer.dedup.windowSeconds", 0L);
+        int dedupExpectedItems = Integer.getInteger("analyzer.dedup.expectedItems", DEFAULT_DEDUP_EXPECTED_ITEMS);
+        int dedupLruSize = Integer.getInteger("analyzer.dedup.lruSize", DEFAULT_DEDUP_LRU_SIZE);
+        this.deduplicator = dedupWindowSeconds > 0
+                ? new HeadlineDeduplicator(TimeUnit.SECONDS.toMillis(dedupWindowSeconds), dedupExpectedItems, dedupLruSize) : null;
+        int queryRetentionMinutes = Integer.getInteger("analyzer.query.retentionMinutes", DEFAULT_QUERY_RETENTION_MINUTES);
+        boolean queryKeywords = Boolean.parseBoolean(System.getProperty("analyzer.query.keywords", "false"));
+        this.sentimentIndex = queryRetentionMinutes > 0 ? new SentimentIndex(queryRetentionMinutes, queryKeywords) : null;
+        String weights = System.getProperty("analyzer.priority.weights");
+        int[] priorityWeights = weights != null ? AnalysisStage.parseWeights(weights) : AnalysisStage.linearWeights();
+        int queueCapacity = Integer.getInteger("analyzer.queue.capacity", DEFAULT_ANALYSIS_QUEUE_CAPACITY);
+        int batchSize = Integer.getInteger("analyzer.batch.size", DEFAULT_BATCH_SIZE);
+        this.analysisStage = new AnalysisStage(headlineAnalyzer, this::recordBatch, batchSize, maxThreads, queueCapacity,
+                priorityWeights, metrics, Integer.getInteger("analyzer.log.sampleEvery", 0), deduplicator, this::recordFrame);
+        int globalInFlight = Integer.getInteger("analyzer.inflight.global", queueCapacity);
+        this.flowControl = new FlowControl(
+                globalInFlight,
+                Integer.getInteger("analyzer.inflight.perConnection", DEFAULT_CONNECTION_IN_FLIGHT),
+                FlowControl.ShedPolicy.fromProperty(System.getProperty("analyzer.shed.policy", "none")));
+        int storeMaxItems = Integer.getInteger("analyzer.store.maxItems", DEFAULT_STORE_MAX_ITEMS);
+        long storeMaxAgeMillis = TimeUnit.SECONDS.toMillis(Long.getLong("analyzer.store.maxAgeSeconds", 0L));
+        int headlineBytes = Integer.getInteger("analyzer.ingest.headlineBytes", DEFAULT_FLYWEIGHT_HEADLINE_BYTES);
+        int storeShards = Integer.getInteger("analyzer.store.shards", maxThreads);
+        if (Boolean.getBoolean("analyzer.ingest.flyweight")) {
+            this.framePool = new HeadlineFramePool(globalInFlight + FRAME_POOL_SLACK, headlineBytes);
+            this.packedStore = new PackedItemStore(storeMaxItems, storeMaxAgeMillis, headlineBytes);
+            this.analyzedItemsStore = packedStore;
+        } else {
+            this.framePool = null;
+            this.packedStore = null;
+            this.analyzedItemsStore = createStore(storeShards, storeMaxItems, storeMaxAgeMillis);
+        }
+        boolean walEnabled = Boolean.parseBoolean(System.getProperty("analyzer.wal.enabled", "true"));
+        this.writeAheadLog = walEnabled ? new WriteAheadLog(
+                Paths.get(System.getProperty("analyzer.wal.dir", DEFAULT_WAL_DIR)),
+                Long.getLong("analyzer.wal.segmentMegabytes", DEFAULT_WAL_SEGMENT_MEGABYTES) * 1024 * 1024,
+                WriteAheadLog.FsyncPolicy.fromProperty(System.getProperty("analyzer.wal.fsync", "always")),
+                Long.getLong("analyzer.wal.fsyncIntervalMillis", DEFAULT_WAL_FSYNC_INTERVAL_MILLIS),
+                Integer.getInteger("analyzer.wal.maxSegments", DEFAULT_WAL_MAX_SEGMENTS),
+                Integer.getInteger("analyzer.wal.queueCapacity", DEFAULT_WAL_QUEUE_CAPACITY)) : null;
+        if (writeAheadLog != null && packedStore != null) {
+            writeAheadLog.tail(packedStore);
+        }
+        this.csvOnShutdown = Boolean.parseBoolean(System.getProperty("analyzer.csv.onShutdown", String.valueOf(!walEnabled)));
+        this.columnarOnShutdown = Boolean.getBoolean("analyzer.columnar.onShutdown");
+        this.metricsPort = Integer.getInteger("analyzer.metrics.port", port == 0 ? 0 : port + METRICS_PORT_OFFSET);
+        this.liveSinks = new RecordSinks(analyzedItemsStore, packedStore, statistics, sentimentIndex, writeAheadLog);
+
+        long warmupItems = Long.getLong("analyzer.warmup.items", 0L);
+        this.exitAfterWarmup = Boolean.getBoolean("analyzer.warmup.exit");
+        if (warmupItems > 0) {
+            this.warmup = new Warmup(warmupItems, (scratchItems, scratchQueueCapacity) -> {
+                int scratchCapacity = Math.min(storeMaxItems, scratchItems);
+                PackedItemStore scratchPacked = framePool != null ? new PackedItemStore(scratchCapacity, 0, headlineBytes) : null;
+                RecordSinks scratch = new RecordSinks(
+                        scratchPacked != null ? scratchPacked : createStore(storeShards, scratchCapacity, 0),
+                        scratchPacked, new LiveStatistics(),
+                        sentimentIndex != null ? new SentimentIndex(queryRetentionMinutes, queryKeywords) : null, null);
+                return new AnalysisStage(
+                        cacheSize > 0 ? new CachingHeadlineAnalyzer(Lexicon.defaults(), cacheSize) : headlineAnalyzer,
+                        (items, results, count, failures) -> recordBatch(items, results, count, failures, scratch),
+                        batchSize, maxThreads,
+                        scratchQueueCapacity, priorityWeights, new Metrics(), 0,
+                        deduplicator != null ? new HeadlineDeduplicator(deduplicator.getWindowMillis(), dedupExpectedItems, dedupLruSize) : null,
+                        (frame, result) -> recordFrame(frame, result, scratch));
+            }, framePool != null ? headlineBytes : 0);
+        }
+        registerMetrics();
+    }
+
+    private static AnalyzedItemStore createStore(int shards, int maxItems, long maxAgeMillis) {
+        return shards > 1 && maxItems > 1
+                ? new ShardedItemStore(Math.min(shards, maxItems), maxItems, maxAgeMillis)
+                : new SegmentedRingStore(maxItems, maxAgeMillis);
+    }
+
+    private void registerMetrics() {
+        for (HeadlineAnalyzer.AnalysisResult result : HeadlineAnalyzer.AnalysisResult.values()) {
+            metrics.registerCounter("analyzer_analyzed_items_total{result=\"" + result + "\"}",
+                    "Items analyzed, by result", () -> statistics.getCount(result));
+        }
+        for (int priority = 0; priority < AnalysisStage.PRIORITY_LEVELS; priority++) {
+            int p = priority;
+            metrics.registerCounter("analyzer_shed_items_total{priority=\"" + p + "\"}",
+                    "Items dropped by the load-shedding policy, by priority", () -> flowControl.getDropped(p));
+        }
+        int[] depths = new int[AnalysisStage.PRIORITY_LEVELS];
+        for (int priority = 0; priority < AnalysisStage.PRIORITY_LEVELS; priority++) {
+            int p = priority;
+            metrics.registerGauge("analyzer_queue_depth{priority=\"" + p + "\"}", "Items waiting for analysis, by priority", () -> {
+                synchronized (depths) {
+                    analysisStage.getQueueDepths(depths);
+                    return depths[p];
+                }
+            });
+        }
+        metrics.registerGauge("analyzer_in_flight_items", "Items decoded but not yet analyzed", flowControl::getGlobalInFlight);
+        metrics.registerGauge("analyzer_paused_connections", "Connections not being read because of flow control", flowControl::getPausedConnections);
+        metrics.registerCounter("analyzer_read_pauses_total", "Times a connection was paused by flow control", flowControl::getPauseCount);
+        metrics.registerGauge("analyzer_ready_millis", "Milliseconds from JVM start until connections were accepted; -1 before that",
+                () -> readyMillis);
+        metrics.registerCounter("analyzer_log_written_entries_total", "Log entries written by the async logger", AsyncLog::getWrittenCount);
+        metrics.registerCounter("analyzer_log_dropped_entries_total", "Log entries dropped because the log buffer was full", AsyncLog::getDroppedCount);
+        metrics.registerGauge("analyzer_stored_items", "Analyzed items retained in memory", analyzedItemsStore::size);
+        metrics.registerCounter("analyzer_evicted_items_total", "Analyzed items evicted from memory", analyzedItemsStore::getEvictedCount);
+        if (headlineAnalyzer instanceof CachingHeadlineAnalyzer) {
+            CachingHeadlineAnalyzer cache = (CachingHeadlineAnalyzer) headlineAnalyzer;
+            metrics.registerCounter("analyzer_result_cache_hits_total", "Analyses answered from the result cache", cache::getHitCount);
+            metrics.registerCounter("analyzer_result_cache_misses_total", "Analyses the result cache had to compute", cache::getMissCount);
+            metrics.registerCounter("analyzer_result_cache_evictions_total", "Entries evicted from the result cache", cache::getEvictionCount);
+            metrics.registerCounter("analyzer_result_cache_rejections_total", "New entries refused by the frequency sketch", cache::getRejectionCount);
+            metrics.registerCounter("analyzer_result_cache_invalidations_total", "Cache stripes cleared by a lexicon change", cache::getInvalidationCount);
+            metrics.registerGauge("analyzer_result_cache_entries", "Entries in the result cache", cache::size);
+        }
+        if (deduplicator != null) {
+            metrics.registerCounter("analyzer_dedup_checked_total", "Headlines checked for duplicates", deduplicator::getCheckedCount);
+            metrics.registerCounter("analyzer_dedup_duplicates_total", "Headlines skipped as duplicates within the window", deduplicator::getDuplicateCount);
+            metrics.registerCounter("analyzer_dedup_unconfirmed_total", "Filter hits the exact LRU could not confirm", deduplicator::getUnconfirmedCount);
+            metrics.registerGauge("analyzer_dedup_filter_bytes", "Memory of the dedup Bloom filter slices", deduplicator::getFilterBytes);
+            metrics.registerGauge("analyzer_dedup_lru_entries", "Headlines held by the dedup LRU", deduplicator::getLruSize);
+        }
+        if (sentimentIndex != null) {
+            metrics.registerCounter("analyzer_query_index_expired_items_total", "Items too old for the query index", sentimentIndex::getExpiredCount);
+        }
+        if (framePool != null) {
+            metrics.registerGauge("analyzer_flyweight_frames_in_use", "Pooled headline frames holding an item", framePool::getInUse);
+            metrics.registerCounter("analyzer_flyweight_fallback_frames_total{reason=\"exhausted\"}",
+                    "Frames allocated on the heap, by reason", framePool::getExhaustedCount);
+            metrics.registerCounter("analyzer_flyweight_fallback_frames_total{reason=\"oversized\"}",
+                    "Frames allocated on the heap, by reason", framePool::getOversizedCount);
+            metrics.registerCounter("analyzer_store_tail_waits_total", "Times a store append waited for the write-ahead log", packedStore::getTailWaitCount);
+        }
+        if (writeAheadLog != null) {
+            metrics.registerLatency("persist", writeAheadLog.getCommitLatency());
+            metrics.registerGauge("analyzer_wal_queue_depth", "Analyzed items waiting for the write-ahead log", writeAheadLog::getQueueDepth);
+            metrics.registerCounter("analyzer_wal_written_items_total", "Items written to the write-ahead log", writeAheadLog::getWrittenItems);
+            metrics.registerCounter("analyzer_wal_fsyncs_total", "Write-ahead log fsyncs", writeAheadLog::getSyncCount);
+            metrics.registerCounter("analyzer_wal_dropped_items_total", "Items the write-ahead log failed to persist", writeAheadLog::getDroppedItems);
+        }
     }
 
     public void startServer() {
+        if (!recoverWriteAheadLog()) {
+            return;
+        }
+        if (warmup != null) {
+            runWarmup();
+            if (exitAfterWarmup) {
+                System.out.println("Exiting after the warm-up (analyzer.warmup.exit).");
+                shutdownExecutors();
+                return;
+            }
+        }
         // شروع نمایش دوره‌ای آمار
         statsExecutor.scheduleAtFixedRate(this::printLiveStatistics,
                 STATS_UPDATE_INTERVAL_SECONDS,
                 STATS_UPDATE_INTERVAL_SECONDS,
                 TimeUnit.SECONDS);
+        statsExecutor.scheduleAtFixedRate(statistics::tick, 1, 1, TimeUnit.SECONDS);
+        statsExecutor.scheduleWithFixedDelay(analyzedItemsStore::evictExpired, 1, 1, TimeUnit.SECONDS);
+        if (packedStore != null) {
+            statsExecutor.scheduleAtFixedRate(EpochNanoClock::recalibrate, 1, 1, TimeUnit.SECONDS);
+        }
+        if (sentimentIndex != null) {
+            sentimentIndex.rollOver();
+            statsExecutor.scheduleAtFixedRate(sentimentIndex::rollOver, 1, 1, TimeUnit.SECONDS);
+        }
+        startLexiconReloader();
+        startMetricsEndpoint();
 
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("News Analyzer Server started on port " + port + ". Max concurrent clients: " + MAX_THREADS);
-            System.out.println("Results will be saved to " + CSV_FILE_NAME + " upon shutdown.");
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            socketProfile.apply(serverChannel.socket());
+            serverChannel.bind(new InetSocketAddress(port), socketProfile.getBacklog());
+            listeningChannel = serverChannel;
+            analysisStage.start();
+            startIoLoops();
+            System.out.println("News Analyzer Server started on port " + port + ". I/O threads: " + ioThreads
+                    + ", decode threads: " + decodeThreads + ", analysis workers: " + workerThreads);
+            System.out.println("Socket profile: " + socketProfile);
+            readyMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+            System.out.println("Ready for connections " + readyMillis + " ms after JVM start.");
+            if (writeAheadLog != null) {
+                System.out.println("Results are persisted continuously to " + writeAheadLog.getDirectory() + " (fsync " + writeAheadLog.getFsyncPolicy().name().toLowerCase(java.util.Locale.ROOT) + ").");
+            }
+            if (framePool != null) {
+                System.out.printf("Flyweight ingest: %,d pooled frames of %d headline bytes; binary-protocol items are recorded without allocating.%n",
+                        framePool.getFrameCount(), framePool.getFrameBytes());
+            }
+            if (csvOnShutdown) {
+                System.out.println("Results will be saved to " + CSV_FILE_NAME + " upon shutdown.");
+            }
             System.out.println("Live statistics will be updated every " + STATS_UPDATE_INTERVAL_SECONDS + " seconds.");
             System.out.println("Waiting for connections...");
 
             while (!Thread.currentThread().isInterrupted()) {
                 try {
-                    Socket clientSocket = serverSocket.accept();
-                    System.out.println("\nClient connected: " + clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort());
+                    SocketChannel clientChannel = serverChannel.accept();
+                    clientChannel.configureBlocking(false);
+                    socketProfile.apply(clientChannel.socket());
+                    AsyncLog.info("\nClient connected: {}:{}", clientChannel.socket().getInetAddress().getHostAddress(), clientChannel.socket().getPort());
 
-                    ClientHandler handlerTask = new ClientHandler(clientSocket, this.headlineAnalyzer, this::recordAnalysis);
-                    clientExecutor.submit(handlerTask);
+                    ClientHandler handler = new ClientHandler(clientChannel, analysisStage, clientExecutor, flowControl, metrics, decodeStallMillis,
+                            framePool);
+                    ioLoops[nextIoLoop].register(handler);
+                    nextIoLoop = (nextIoLoop + 1) % ioLoops.length;
 
                 } catch (IOException e) {
-                    if (serverSocket.isClosed()) {
+                    if (!serverChannel.isOpen()) {
                         System.out.println("Server socket closed, stopping listening.");
                         break;
                     }
-                    System.err.println("Error accepting client connection: " + e.getMessage());
+                    AsyncLog.warn("Error accepting client connection: {}", e.getMessage());
                 }
             }
         } catch (IOException ioEx) {
@@ -76,38 +333,303 @@ public class NewsAnalyzerServer {
             System.err.println("Invalid port specified: " + port + ". " + illegalArgEx.getMessage());
         } finally {
             shutdownExecutors();
+            AsyncLog.flush(1000);
             System.out.println("News Analyzer Server process finished.");
         }
     }
 
-    public synchronized void recordAnalysis(NewsItem item, HeadlineAnalyzer.AnalysisResult result) {
+    /**
+     * Stops accepting connections; {@link #startServer()} then closes the open ones, shuts the
+     * executors down and returns.
+     */
+    public void stop() {
+        ServerSocketChannel channel = listeningChannel;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing server socket: " + e.getMessage());
+            }
+        }
+    }
+
+    public long getAnalyzedCount() {
+        return statistics.getTotal();
+    }
+
+    private void runWarmup() {
+        try {
+            long nanos = warmup.run();
+            System.out.printf("Warm-up: %,d synthetic items decoded, analyzed and recorded in %d ms.%n",
+                    warmup.getSubmitted(), TimeUnit.NANOSECONDS.toMillis(nanos));
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Warm-up failed, starting cold: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        warmup = null;
+    }
+
+    private boolean recoverWriteAheadLog() {
+        if (writeAheadLog == null) {
+            System.out.println("Write-ahead log disabled; analyzed items are kept in memory only.");
+            statistics.tick();
+            return true;
+        }
+        try {
+            long start = System.nanoTime();
+            long recovered = writeAheadLog.replay(item -> {
+                analyzedItemsStore.append(item);
+                statistics.record(item.getOriginalItem().getPriority(), item.getResult());
+                indexForQueries(item);
+            });
+            System.out.printf("Recovered %,d analyzed items from %s in %,d ms.%n",
+                    recovered, writeAheadLog.getDirectory(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            statistics.tick(); // baseline, so the recovered items do not show up as a burst in the rates
+            writeAheadLog.start();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not recover the write-ahead log in " + writeAheadLog.getDirectory() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void closeWriteAheadLog() {
+        if (writeAheadLog == null) {
+            return;
+        }
+        writeAheadLog.close();
+        System.out.printf("Write-ahead log closed: %,d items written with %,d fsyncs, %,d dropped.%n",
+                writeAheadLog.getWrittenItems(), writeAheadLog.getSyncCount(), writeAheadLog.getDroppedItems());
+    }
+
+    private void startLexiconReloader() {
+        String lexiconFile = System.getProperty("analyzer.lexicon.file");
+        if (lexiconFile == null) {
+            System.out.println("Using " + headlineAnalyzer.getLexicon() + ". Set analyzer.lexicon.file to load a custom lexicon.");
+            return;
+        }
+        long reloadSeconds = Long.getLong("analyzer.lexicon.reloadSeconds", DEFAULT_LEXICON_RELOAD_SECONDS);
+        LexiconReloader reloader = new LexiconReloader(Paths.get(lexiconFile), headlineAnalyzer);
+        reloader.run(); // initial load before accepting connections
+        statsExecutor.scheduleWithFixedDelay(reloader, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+        System.out.println("Watching lexicon " + lexiconFile + " for changes every " + reloadSeconds + " seconds.");
+    }
+
+    private void startMetricsEndpoint() {
+        if (metricsPort < 0) {
+            return;
+        }
+        try {
+            metricsEndpoint = new MetricsEndpoint(metrics, metricsPort);
+            if (sentimentIndex != null) {
+                metricsEndpoint.addContext("/query/", new SentimentQueryHandler(sentimentIndex));
+            }
+            metricsEndpoint.start();
+            System.out.println("Metrics are served at http://localhost:" + metricsEndpoint.getPort() + "/metrics");
+            if (sentimentIndex != null) {
+                System.out.println("Queries over the last " + sentimentIndex.getRetentionMinutes() + " minutes are served at http://localhost:"
+                        + metricsEndpoint.getPort() + "/query/sentiment, /query/timeline and /query/keywords");
+            }
+        } catch (IOException e) {
+            System.err.println("Could not start the metrics endpoint on port " + metricsPort + ": " + e.getMessage());
+        }
+    }
+
+    private void startIoLoops() throws IOException {
+        for (int i = 0; i < ioLoops.length; i++) {
+            ioLoops[i] = new SelectorLoop("analyzer-io-" + i,
+                    socketProfile.getBufferBytes() > 0 ? socketProfile.getBufferBytes() : SelectorLoop.DEFAULT_READ_BUFFER_SIZE);
+            Thread ioThread = new Thread(ioLoops[i], ioLoops[i].getName());
+            ioThread.setDaemon(true);
+            ioThread.start();
+        }
+    }
+
+    public void recordAnalysis(NewsItem item, HeadlineAnalyzer.AnalysisResult result) {
         AnalyzedNewsItem analyzedItem = new AnalyzedNewsItem(item, result);
-        this.analyzedItemsStore.add(analyzedItem);
-        System.out.println("SERVER_STORAGE: Recorded item. Total stored: " + this.analyzedItemsStore.size());
+        this.analyzedItemsStore.append(analyzedItem);
+        this.statistics.record(item.getPriority(), result);
+        indexForQueries(analyzedItem);
+        if (this.writeAheadLog != null && !this.writeAheadLog.isTailing()) {
+            this.writeAheadLog.append(analyzedItem); // a tailing log picks the item up from the store
+        }
+    }
+
+    /**
+     * Records {@code items[0..count)} with one timestamp, and with one claim of store room per batch.
+     */
+    public void recordBatch(NewsItem[] items, HeadlineAnalyzer.AnalysisResult[] results, int count) {
+        recordBatch(items, results, count, (index, error) -> {
+            throw error;
+        });
+    }
+
+    /**
+     * Like {@link #recordBatch(NewsItem[], HeadlineAnalyzer.AnalysisResult[], int)}, passing an item whose
+     * statistics or query index update fails to {@code failures} and going on with the next one.
+     */
+    public void recordBatch(NewsItem[] items, HeadlineAnalyzer.AnalysisResult[] results, int count,
+                            AnalysisStage.RecordFailures failures) {
+        recordBatch(items, results, count, failures, liveSinks);
+    }
+
+    private void recordBatch(NewsItem[] items, HeadlineAnalyzer.AnalysisResult[] results, int count,
+                             AnalysisStage.RecordFailures failures, RecordSinks sinks) {
+        Instant now = Instant.now();
+        AnalyzedNewsItem[] analyzed = new AnalyzedNewsItem[count];
+        for (int i = 0; i < count; i++) {
+            analyzed[i] = new AnalyzedNewsItem(items[i], results[i], now);
+        }
+        sinks.store.appendAll(analyzed, count);
+        for (int i = 0; i < count; i++) {
+            try {
+                sinks.statistics.record(items[i].getPriority(), results[i]);
+                indexForQueries(sinks.sentimentIndex, analyzed[i]);
+            } catch (RuntimeException e) {
+                failures.onFailure(i, e);
+            }
+        }
+        if (sinks.writeAheadLog != null && !sinks.writeAheadLog.isTailing()) {
+            sinks.writeAheadLog.appendAll(analyzed, count);
+        }
+    }
+
+    private void recordFrame(HeadlineFrame frame, HeadlineAnalyzer.AnalysisResult result) {
+        recordFrame(frame, result, liveSinks);
+    }
+
+    private void recordFrame(HeadlineFrame frame, HeadlineAnalyzer.AnalysisResult result, RecordSinks sinks) {
+        long epochNanos = EpochNanoClock.now();
+        sinks.packedStore.append(epochNanos, frame, result);
+        sinks.statistics.record(frame.getPriority(), result);
+        if (sinks.sentimentIndex != null) {
+            sinks.sentimentIndex.record(epochNanos / 1_000_000, frame.getPriority(), result, frame, headlineAnalyzer.getLexicon());
+        }
+    }
+
+    private void indexForQueries(AnalyzedNewsItem item) {
+        indexForQueries(sentimentIndex, item);
+    }
+
+    private void indexForQueries(SentimentIndex index, AnalyzedNewsItem item) {
+        if (index != null) {
+            index.record(item.getAnalysisTimestamp().toEpochMilli(), item.getOriginalItem().getPriority(), item.getResult(),
+                    item.getOriginalItem().getHeadline(), headlineAnalyzer.getLexicon());
+        }
     }
 
     private void printLiveStatistics() {
-        if (analyzedItemsStore.isEmpty()) {
-            System.out.println("\n[STATS] No items analyzed yet in this session.");
+        long total = statistics.getTotal();
+        if (total == 0) {
+            AsyncLog.info("\n[STATS] No items analyzed yet in this session.");
             return;
         }
 
-        Map<HeadlineAnalyzer.AnalysisResult, Long> counts = analyzedItemsStore.stream()
-                .collect(Collectors.groupingBy(AnalyzedNewsItem::getResult, Collectors.counting()));
+        long positive = statistics.getCount(HeadlineAnalyzer.AnalysisResult.POSITIVE);
+        long negative = statistics.getCount(HeadlineAnalyzer.AnalysisResult.NEGATIVE);
+        long neutral = statistics.getCount(HeadlineAnalyzer.AnalysisResult.NEUTRAL);
+        Formatter report = new Formatter(new StringBuilder(2048));
+
+        report.format("%n[STATS @ %s]%n", java.time.LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")));
+        report.format("  Total Analyzed: %d (retained %d, evicted %d)%n",
+                total, analyzedItemsStore.size(), analyzedItemsStore.getEvictedCount());
+        report.format("  Positive: %d (%.1f%%)%n", positive, (double) positive / total * 100);
+        report.format("  Negative: %d (%.1f%%)%n", negative, (double) negative / total * 100);
+        report.format("  Neutral:  %d (%.1f%%)%n", neutral, (double) neutral / total * 100);
 
-        long total = analyzedItemsStore.size();
-        long positive = counts.getOrDefault(HeadlineAnalyzer.AnalysisResult.POSITIVE, 0L);
-        long negative = counts.getOrDefault(HeadlineAnalyzer.AnalysisResult.NEGATIVE, 0L);
-        long neutral = counts.getOrDefault(HeadlineAnalyzer.AnalysisResult.NEUTRAL, 0L);
+        StringBuilder byPriority = new StringBuilder("  By priority:");
+        for (int priority = 0; priority <= 9; priority++) {
+            byPriority.append(" P").append(priority).append('=').append(statistics.getPriorityCount(priority));
+        }
+        report.format("%s%n", byPriority);
 
-        System.out.printf("%n[STATS @ %s]%n", java.time.LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")));
-        System.out.printf("  Total Analyzed: %d%n", total);
-        System.out.printf("  Positive: %d (%.1f%%)%n", positive, (total > 0 ? (double) positive / total * 100 : 0.0));
-        System.out.printf("  Negative: %d (%.1f%%)%n", negative, (total > 0 ? (double) negative / total * 100 : 0.0));
-        System.out.printf("  Neutral:  %d (%.1f%%)%n", neutral, (total > 0 ? (double) neutral / total * 100 : 0.0));
+        for (int seconds : LiveStatistics.WINDOW_SECONDS) {
+            LiveStatistics.Window window = statistics.window(seconds);
+            if (window == null) {
+                break;
+            }
+            report.format("  Last %2dm: %,.1f items/s (positive %.1f%%, negative %.1f%%, neutral %.1f%%)%n",
+                    seconds / 60, window.getItemsPerSecond(),
+                    window.getPercentage(HeadlineAnalyzer.AnalysisResult.POSITIVE),
+                    window.getPercentage(HeadlineAnalyzer.AnalysisResult.NEGATIVE),
+                    window.getPercentage(HeadlineAnalyzer.AnalysisResult.NEUTRAL));
+        }
+        printQueueStatistics(report);
+        printFlowControlStatistics(report);
+        printDedupStatistics(report);
+        printCacheStatistics(report);
+        long droppedLogEntries = AsyncLog.getDroppedCount();
+        if (droppedLogEntries > 0) {
+            report.format("  Log entries dropped: %,d%n", droppedLogEntries);
+        }
+        AsyncLog.info("\n{}", report.toString().trim()); // one entry, so connection logs cannot interleave with it
+    }
+
+    private void printQueueStatistics(Formatter report) {
+        int[] depths = new int[AnalysisStage.PRIORITY_LEVELS];
+        analysisStage.getQueueDepths(depths);
+        StringBuilder line = new StringBuilder("  Analysis queue depth: ").append(analysisStage.getQueueDepth()).append(" (");
+        for (int priority = AnalysisStage.PRIORITY_LEVELS - 1; priority >= 0; priority--) {
+            line.append('P').append(priority).append('=').append(depths[priority]).append(priority > 0 ? " " : ")");
+        }
+        report.format("%s%n", line);
+        report.format("%s%n", "  Queue wait since last report (us):");
+        for (int priority = AnalysisStage.PRIORITY_LEVELS - 1; priority >= 0; priority--) {
+            LatencyHistogram wait = analysisStage.getQueueWait(priority);
+            if (wait.getCount() > 0) {
+                report.format("    P%d: n=%,d p50=%,d p99=%,d max=%,d%n", priority, wait.getCount(),
+                        wait.getValueAtPercentile(50), wait.getValueAtPercentile(99), wait.getMax());
+            }
+        }
+        analysisStage.resetQueueWait();
+    }
+
+    private void printFlowControlStatistics(Formatter report) {
+        report.format("  In flight: %,d/%,d, paused connections: %d, pauses: %,d%n", flowControl.getGlobalInFlight(),
+                flowControl.getGlobalLimit(), flowControl.getPausedConnections(), flowControl.getPauseCount());
+        if (flowControl.getShedPolicy() != FlowControl.ShedPolicy.NONE) {
+            StringBuilder line = new StringBuilder("  Shed (").append(flowControl.getShedPolicy()).append("):");
+            for (int priority = 0; priority < AnalysisStage.PRIORITY_LEVELS; priority++) {
+                line.append(" P").append(priority).append('=').append(flowControl.getDropped(priority));
+            }
+            report.format("%s%n", line);
+        }
+    }
+
+    private void printDedupStatistics(Formatter report) {
+        if (deduplicator == null) {
+            return;
+        }
+        long checked = deduplicator.getCheckedCount();
+        long duplicates = deduplicator.getDuplicateCount();
+        report.format("  Dedup (%ds window): %,d of %,d duplicates (%.1f%%), %,d unconfirmed filter hits; filter %,d KiB (%d hashes), LRU %,d entries%n",
+                TimeUnit.MILLISECONDS.toSeconds(deduplicator.getWindowMillis()), duplicates, checked,
+                checked > 0 ? (double) duplicates / checked * 100 : 0.0, deduplicator.getUnconfirmedCount(),
+                deduplicator.getFilterBytes() / 1024, deduplicator.getHashCount(), deduplicator.getLruSize());
+    }
+
+    private void printCacheStatistics(Formatter report) {
+        if (!(headlineAnalyzer instanceof CachingHeadlineAnalyzer)) {
+            return;
+        }
+        CachingHeadlineAnalyzer cache = (CachingHeadlineAnalyzer) headlineAnalyzer;
+        long hits = cache.getHitCount();
+        long lookups = hits + cache.getMissCount();
+        report.format("  Result cache: %,d/%,d entries, hit ratio %.1f%% (%,d of %,d), %,d evictions (%,d rejected by frequency), %,d invalidations%n",
+                cache.size(), cache.getCapacity(), lookups > 0 ? (double) hits / lookups * 100 : 0.0, hits, lookups,
+                cache.getEvictionCount(), cache.getRejectionCount(), cache.getInvalidationCount());
     }
 
     private void shutdownExecutors() {
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
+        for (SelectorLoop ioLoop : ioLoops) {
+            if (ioLoop != null) {
+                ioLoop.shutdown();
+            }
+        }
         System.out.println("Attempting to shut down client handler executor...");
         clientExecutor.shutdown();
         System.out.println("Attempting to shut down stats executor...");
@@ -119,6 +641,8 @@ public class NewsAnalyzerServer {
                     System.err.println("Client executor did not terminate.");
                 }
             }
+            System.out.println("Attempting to shut down analysis workers...");
+            analysisStage.shutdown(5000);
             if (!statsExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
                 statsExecutor.shutdownNow();
                 if (!statsExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -148,19 +672,18 @@ public class NewsAnalyzerServer {
         try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(CSV_FILE_NAME, true)))) { // true for append mode
             boolean fileIsEmpty = new java.io.File(CSV_FILE_NAME).length() == 0;
             if (fileIsEmpty) {
-                writer.println("AnalysisTimestamp,Headline,Priority,AnalysisResult"); // CSV Header
+                writer.println(AnalyzedItemCsv.HEADER); // CSV Header
             }
-            for (AnalyzedNewsItem item : this.analyzedItemsStore) {
+            StringBuilder row = new StringBuilder(256);
+            this.analyzedItemsStore.forEach(item -> {
                 NewsItem original = item.getOriginalItem();
-                String headline = (original != null && original.getHeadline() != null) ? original.getHeadline().replace("\"", "\"\"") : ""; // Escape quotes for CSV
-                int priority = (original != null) ? original.getPriority() : -1;
-
-                writer.printf("\"%s\",\"%s\",%d,%s%n",
-                        item.getAnalysisTimestamp().atZone(java.time.ZoneId.systemDefault()).format(CSV_TIMESTAMP_FORMATTER),
-                        headline,
-                        priority,
-                        item.getResult().name());
-            }
+                row.setLength(0);
+                AnalyzedItemCsv.appendRow(row, item.getAnalysisTimestamp(),
+                        original != null ? original.getHeadline() : null,
+                        original != null ? original.getPriority() : -1,
+                        item.getResult());
+                writer.append(row);
+            });
             System.out.println("Successfully saved " + this.analyzedItemsStore.size() + " analyzed items to " + CSV_FILE_NAME);
 
         } catch (IOException e) {
@@ -169,6 +692,23 @@ public class NewsAnalyzerServer {
         System.out.println("--- End of Analyzed Items Processing ---");
     }
 
+    private void saveColumnarArchive() {
+        if (this.analyzedItemsStore.isEmpty()) {
+            return;
+        }
+        Path file = Paths.get(COLUMNAR_FILE_PREFIX + System.currentTimeMillis() + ".ncol");
+        long start = System.nanoTime();
+        ColumnarSegmentWriter writer = new ColumnarSegmentWriter();
+        this.analyzedItemsStore.forEach(writer::add);
+        try {
+            writer.writeTo(file);
+            System.out.printf("Saved %,d analyzed items to columnar archive %s (%,d bytes, %,d dictionary words) in %,d ms%n",
+                    writer.getRowCount(), file, Files.size(file), writer.getDictionarySize(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            System.err.println("Error writing columnar archive " + file + ": " + e.getMessage());
+        }
+    }
 
     public static void main(String[] args) {
         int portArg = DEFAULT_PORT;
@@ -184,10 +724,11 @@ public class NewsAnalyzerServer {
             }
         }
 
-        NewsAnalyzerServer server = new NewsAnalyzerServer(portArg, MAX_THREADS);
+        NewsAnalyzerServer server = new NewsAnalyzerServer(portArg, Integer.getInteger("analyzer.workers", DEFAULT_WORKER_THREADS));
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            System.out.println("Shutdown hook triggered. Stopping live stats and saving analyzed items...");
+            AsyncLog.flush(1000);
+            System.out.println("Shutdown hook triggered. Stopping live stats and flushing analyzed items...");
             if (!server.statsExecutor.isShutdown()) { // Ensure stats executor is stopped first
                 server.statsExecutor.shutdownNow();
                 try {
@@ -196,8 +737,14 @@ public class NewsAnalyzerServer {
                     Thread.currentThread().interrupt();
                 }
             }
-            server.saveAndPrintAnalyzedItems();
-            // clientExecutor is shut down in the main server's finally block
+            server.closeWriteAheadLog();
+            if (server.csvOnShutdown) {
+                server.saveAndPrintAnalyzedItems();
+            }
+            if (server.columnarOnShutdown) {
+                server.saveColumnarArchive();
+            }
+            // clientExecutor and the analysis workers are shut down in the main server's finally block
         }));
         server.startServer();
     }
@@ -0,0 +1,396 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.AnalyzedNewsItem;
+import org.mhh.common.NewsItem;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * The store of the flyweight ingest mode: the same fixed-capacity ring and seqlock-style publication as
+ * {@link SegmentedRingStore}, but every slot is a run of primitive words instead of a reference to an
+ * {@link AnalyzedNewsItem}. A slot holds the analysis time in epoch nanoseconds, a word packing headline
+ * length, priority and result, and up to {@code headlineBytes} of UTF-8 headline, eight bytes per word;
+ * a longer headline is kept as a {@code String} beside its slot. Recording a {@link HeadlineFrame} thus
+ * copies its bytes into memory allocated once per segment, and items only become objects again when
+ * the store is iterated, which happens on shutdown exports. All slot words are atomic, so a reader that
+ * finds the slot's sequence unchanged after copying it has an untorn item.
+ * <p>
+ * The write-ahead log can tail the store ({@link #startTailing()}): it reads new items straight from
+ * their slots, and an append that would overwrite an item the log has not read yet waits instead,
+ * which gives the same backpressure as the log's own queue.
+ */
+public class PackedItemStore implements AnalyzedItemStore {
+    private static final int SEGMENT_BITS = 12;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final long UNPUBLISHED = -1;
+    private static final int HEADER_WORDS = 2;
+    private static final int SPILLED = 0xFFFFFF; // length field of a headline kept as a String
+    private static final long TAIL_WAIT_NANOS = 50_000;
+    private static final HeadlineAnalyzer.AnalysisResult[] RESULTS = HeadlineAnalyzer.AnalysisResult.values();
+    private static final AtomicReferenceFieldUpdater<PackedItemStore, Thread> TAIL_WAITER =
+            AtomicReferenceFieldUpdater.newUpdater(PackedItemStore.class, Thread.class, "tailWaiter");
+
+    private final int capacity;
+    private final long mask;
+    private final long maxAgeMillis;
+    private final int headlineBytes;
+    private final int slotWords;
+    private final AtomicReferenceArray<Segment> segments;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong ageFloor = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong(); // items below this have been read by the tail reader
+    private final LongAdder tailWaits = new LongAdder();
+    private volatile boolean tailing;
+    private volatile Thread tailWaiter;
+
+    private static final class Segment {
+        final AtomicLongArray words;
+        final AtomicReferenceArray<String> spilled = new AtomicReferenceArray<>(SEGMENT_SIZE);
+        final AtomicLongArray sequences = new AtomicLongArray(SEGMENT_SIZE);
+
+        Segment(int slotWords) {
+            words = new AtomicLongArray(SEGMENT_SIZE * slotWords);
+            for (int i = 0; i < SEGMENT_SIZE; i++) {
+                sequences.set(i, UNPUBLISHED);
+            }
+        }
+    }
+
+    /**
+     * One item read back from the store; reused across reads.
+     */
+    public static final class Record {
+        private long epochNanos;
+        private int priority;
+        private HeadlineAnalyzer.AnalysisResult result;
+        private final byte[] headline;
+        private int headlineLength;
+        private String spilledHeadline;
+
+        Record(int headlineBytes) {
+            this.headline = new byte[headlineBytes];
+        }
+
+        public long getEpochNanos() {
+            return epochNanos;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public HeadlineAnalyzer.AnalysisResult getResult() {
+            return result;
+        }
+
+        /**
+         * The UTF-8 headline, valid for {@link #getHeadlineLength()} bytes; null when it is spilled.
+         */
+        public byte[] getHeadlineBytes() {
+            return spilledHeadline == null ? headline : null;
+        }
+
+        public int getHeadlineLength() {
+            return headlineLength;
+        }
+
+        /**
+         * The headline of an item too long for its slot, or null.
+         */
+        public String getSpilledHeadline() {
+            return spilledHeadline;
+        }
+
+        public String getHeadline() {
+            return spilledHeadline != null ? spilledHeadline : new String(headline, 0, headlineLength, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @param requestedCapacity maximum number of retained items, rounded up to a power of two of at least 4096
+     * @param maxAgeMillis      age after which {@link #evictExpired()} drops an item; 0 disables it
+     * @param headlineBytes     headline bytes kept inside a slot, rounded up to a multiple of 8
+     */
+    public PackedItemStore(int requestedCapacity, long maxAgeMillis, int headlineBytes) {
+        if (requestedCapacity < 1 || requestedCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("Store capacity must be between 1 and 2^30: " + requestedCapacity);
+        }
+        if (headlineBytes < 8 || headlineBytes > 4096) {
+            throw new IllegalArgumentException("Slot headline bytes must be between 8 and 4096: " + headlineBytes);
+        }
+        int rounded = Integer.highestOneBit(requestedCapacity);
+        this.capacity = Math.max(SEGMENT_SIZE, rounded == requestedCapacity ? rounded : rounded << 1);
+        this.mask = capacity - 1;
+        this.maxAgeMillis = maxAgeMillis;
+        this.headlineBytes = (headlineBytes + 7) & ~7;
+        this.slotWords = HEADER_WORDS + this.headlineBytes / 8;
+        this.segments = new AtomicReferenceArray<>(capacity >>> SEGMENT_BITS);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getHeadlineBytes() {
+        return headlineBytes;
+    }
+
+    public Record newRecord() {
+        return new Record(headlineBytes);
+    }
+
+    /**
+     * Records an analyzed frame without allocating, unless its headline is longer than a slot holds.
+     */
+    public void append(long epochNanos, HeadlineFrame frame, HeadlineAnalyzer.AnalysisResult result) {
+        long sequence = claim();
+        int slot = (int) (sequence & mask);
+        Segment segment = segment(slot >>> SEGMENT_BITS);
+        int offset = slot & (SEGMENT_SIZE - 1);
+        int base = offset * slotWords;
+        AtomicLongArray words = segment.words;
+        segment.sequences.set(offset, UNPUBLISHED);
+        words.lazySet(base, epochNanos);
+        int length = frame.getByteLength();
+        if (length <= headlineBytes) {
+            words.lazySet(base + 1, meta(length, frame.getPriority(), result));
+            int fullWords = length >>> 3;
+            for (int w = 0; w < fullWords; w++) {
+                words.lazySet(base + HEADER_WORDS + w, frame.getLong(w << 3));
+            }
+            if ((length & 7) != 0) {
+                words.lazySet(base + HEADER_WORDS + fullWords, frame.getLong(fullWords << 3) & ((1L << ((length & 7) << 3)) - 1));
+            }
+            segment.spilled.lazySet(offset, null);
+        } else {
+            words.lazySet(base + 1, meta(SPILLED, frame.getPriority(), result));
+            segment.spilled.lazySet(offset, frame.toString());
+        }
+        publish(segment, offset, sequence);
+    }
+
+    @Override
+    public void append(AnalyzedNewsItem item) {
+        NewsItem original = item.getOriginalItem();
+        byte[] bytes = original.getHeadline().getBytes(StandardCharsets.UTF_8);
+        Instant timestamp = item.getAnalysisTimestamp();
+        long sequence = claim();
+        int slot = (int) (sequence & mask);
+        Segment segment = segment(slot >>> SEGMENT_BITS);
+        int offset = slot & (SEGMENT_SIZE - 1);
+        int base = offset * slotWords;
+        AtomicLongArray words = segment.words;
+        segment.sequences.set(offset, UNPUBLISHED);
+        words.lazySet(base, timestamp.getEpochSecond() * 1_000_000_000L + timestamp.getNano());
+        if (bytes.length <= headlineBytes) {
+            words.lazySet(base + 1, meta(bytes.length, original.getPriority(), item.getResult()));
+            for (int w = 0; w << 3 < bytes.length; w++) {
+                long word = 0;
+                for (int b = Math.min(8, bytes.length - (w << 3)) - 1; b >= 0; b--) {
+                    word = (word << 8) | (bytes[(w << 3) + b] & 0xFF);
+                }
+                words.lazySet(base + HEADER_WORDS + w, word);
+            }
+            segment.spilled.lazySet(offset, null);
+        } else {
+            words.lazySet(base + 1, meta(SPILLED, original.getPriority(), item.getResult()));
+            segment.spilled.lazySet(offset, original.getHeadline());
+        }
+        publish(segment, offset, sequence);
+    }
+
+    private static long meta(int length, int priority, HeadlineAnalyzer.AnalysisResult result) {
+        return ((long) length << 8) | (priority << 2) | result.ordinal();
+    }
+
+    private long claim() {
+        long sequence = nextSequence.getAndIncrement();
+        while (tailing && sequence - tail.get() >= capacity) {
+            tailWaits.increment();
+            LockSupport.parkNanos(TAIL_WAIT_NANOS);
+        }
+        return sequence;
+    }
+
+    private void publish(Segment segment, int offset, long sequence) {
+        segment.sequences.set(offset, sequence);
+        Thread waiter = tailWaiter;
+        if (waiter != null && TAIL_WAITER.compareAndSet(this, waiter, null)) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    private Segment segment(int index) {
+        Segment segment = segments.get(index);
+        if (segment == null) {
+            Segment created = new Segment(slotWords);
+            segment = segments.compareAndSet(index, null, created) ? created : segments.get(index);
+        }
+        return segment;
+    }
+
+    /**
+     * Copies item {@code sequence} into {@code into}; false if it is not published yet or has been overwritten.
+     */
+    public boolean read(long sequence, Record into) {
+        int slot = (int) (sequence & mask);
+        Segment segment = segments.get(slot >>> SEGMENT_BITS);
+        if (segment == null) {
+            return false;
+        }
+        int offset = slot & (SEGMENT_SIZE - 1);
+        if (segment.sequences.get(offset) != sequence) {
+            return false;
+        }
+        int base = offset * slotWords;
+        AtomicLongArray words = segment.words;
+        into.epochNanos = words.get(base);
+        long meta = words.get(base + 1);
+        into.priority = (int) (meta >>> 2) & 0xF;
+        into.result = RESULTS[(int) meta & 3];
+        int length = (int) (meta >>> 8);
+        if (length == SPILLED) {
+            into.spilledHeadline = segment.spilled.get(offset);
+            into.headlineLength = -1;
+        } else if (length <= headlineBytes) {
+            into.spilledHeadline = null;
+            into.headlineLength = length;
+            for (int w = 0; w << 3 < length; w++) {
+                long word = words.get(base + HEADER_WORDS + w);
+                for (int b = 0; b < 8 && (w << 3) + b < length; b++) {
+                    into.headline[(w << 3) + b] = (byte) (word >>> (b << 3));
+                }
+            }
+        } else {
+            return false; // torn read of a slot being rewritten; the check below would fail as well
+        }
+        return segment.sequences.get(offset) == sequence;
+    }
+
+    private long floor(long head) {
+        return Math.max(ageFloor.get(), head - capacity);
+    }
+
+    @Override
+    public long size() {
+        long head = nextSequence.get();
+        return Math.max(0, head - floor(head));
+    }
+
+    @Override
+    public long getTotalAppended() {
+        return nextSequence.get();
+    }
+
+    @Override
+    public long getEvictedCount() {
+        return Math.max(0, floor(nextSequence.get()));
+    }
+
+    @Override
+    public void forEach(Consumer<? super AnalyzedNewsItem> action) {
+        Record record = newRecord();
+        long head = nextSequence.get();
+        for (long sequence = floor(head); sequence < head; sequence++) {
+            if (read(sequence, record)) {
+                long nanos = record.epochNanos;
+                action.accept(new AnalyzedNewsItem(new NewsItem(record.getHeadline(), record.priority), record.result,
+                        Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L))));
+            }
+        }
+    }
+
+    @Override
+    public void evictExpired() {
+        if (maxAgeMillis <= 0) {
+            return;
+        }
+        long cutoffNanos = (System.currentTimeMillis() - maxAgeMillis) * 1_000_000L;
+        long head = nextSequence.get();
+        long sequence = floor(head);
+        while (sequence < head) {
+            long timestamp = timestampOf(sequence);
+            if (timestamp == UNPUBLISHED) {
+                break; // claimed but not yet published; it is brand new, not expired
+            }
+            if (timestamp >= cutoffNanos) {
+                break;
+            }
+            sequence++;
+        }
+        ageFloor.accumulateAndGet(sequence, Math::max);
+    }
+
+    // The slot's time, Long.MIN_VALUE once the slot has been lapped, or UNPUBLISHED while it is being written.
+    private long timestampOf(long sequence) {
+        int slot = (int) (sequence & mask);
+        Segment segment = segments.get(slot >>> SEGMENT_BITS);
+        if (segment == null) {
+            return UNPUBLISHED;
+        }
+        int offset = slot & (SEGMENT_SIZE - 1);
+        long published = segment.sequences.get(offset);
+        if (published != sequence) {
+            return published > sequence ? Long.MIN_VALUE : UNPUBLISHED;
+        }
+        long timestamp = segment.words.get(offset * slotWords);
+        return segment.sequences.get(offset) == sequence ? timestamp : Long.MIN_VALUE;
+    }
+
+    /**
+     * Starts holding appends back from overwriting items the tail reader has not read; it starts reading
+     * at the sequence returned, which is everything appended from now on.
+     */
+    public long startTailing() {
+        tail.set(nextSequence.get());
+        tailing = true;
+        return tail.get();
+    }
+
+    public void stopTailing() {
+        tailing = false;
+    }
+
+    /**
+     * Tells the store the tail reader is done with every item below {@code sequence}.
+     */
+    public void advanceTail(long sequence) {
+        tail.set(sequence);
+    }
+
+    /**
+     * Waits up to {@code timeoutNanos} for item {@code sequence} to be published. Only the tail reader may call it.
+     */
+    public void awaitPublished(long sequence, long timeoutNanos) {
+        tailWaiter = Thread.currentThread();
+        if (!isPublished(sequence)) {
+            LockSupport.parkNanos(this, timeoutNanos);
+        }
+        tailWaiter = null;
+    }
+
+    public boolean isPublished(long sequence) {
+        int slot = (int) (sequence & mask);
+        Segment segment = segments.get(slot >>> SEGMENT_BITS);
+        return segment != null && segment.sequences.get(slot & (SEGMENT_SIZE - 1)) == sequence;
+    }
+
+    /**
+     * Times an append had to wait for the tail reader.
+     */
+    public long getTailWaitCount() {
+        return tailWaits.sum();
+    }
+}
@@ -0,0 +1,270 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded blocking queue with one FIFO lane per priority, drained by weighted round robin: each
+ * lane may hand out up to its weight in elements per round, highest lane first, and a new round
+ * starts once every non-empty lane has used its share. Under saturation a lane therefore gets a
+ * share of the consumers proportional to its weight, so high lanes stay fast while low lanes still
+ * make progress instead of starving.
+ * <p>
+ * There is no lock. Each lane is a ring in which producers and consumers claim slots with one atomic
+ * increment or compare-and-set, and a slot's sequence number tells whether it is filled (the
+ * multi-producer/multi-consumer ring of D. Vyukov, also the core of the LMAX Disruptor). The shared
+ * capacity is reserved with an atomic counter before a producer claims a slot, so a lane never
+ * overflows; each lane has room for the whole capacity, about 12 bytes per element per lane. Every
+ * consumer thread keeps its own round-robin credits, so the weights hold per consumer and therefore
+ * overall. A consumer that finds the queue empty yields a few times, then parks in a registry that
+ * producers check after each insert; a producer that finds the queue full parks briefly and retries.
+ */
+public class PriorityLaneQueue<E> {
+    private static final int EMPTY_YIELDS = 4;
+    private static final long FULL_WAIT_NANOS = 50_000;
+    private static final int SLEEPER_SLOTS = 64;
+    private static final long UNREGISTERED_PARK_NANOS = 1_000_000;
+
+    private final Lane<E>[] lanes;
+    private final int[] weights;
+    private final ThreadLocal<int[]> credits;
+    private final int capacity;
+    private final AtomicInteger size = new AtomicInteger(); // queued elements plus puts in progress
+    private final AtomicReferenceArray<Thread> sleepers = new AtomicReferenceArray<>(SLEEPER_SLOTS);
+    private final AtomicInteger sleeping = new AtomicInteger();
+
+    private static final class Lane<E> {
+        final AtomicReferenceArray<E> elements;
+        final AtomicLongArray sequences; // t + 1 once slot t is filled, t + length once it is free for the next lap
+        final int mask;
+        final AtomicLong head = new AtomicLong();
+        final AtomicLong tail = new AtomicLong();
+
+        Lane(int length) {
+            elements = new AtomicReferenceArray<>(length);
+            sequences = new AtomicLongArray(length);
+            mask = length - 1;
+            for (int i = 0; i < length; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        // The caller has reserved room, so the slot can only still be held by a consumer finishing its poll.
+        void add(E element) {
+            long t = tail.getAndIncrement();
+            int i = (int) (t & mask);
+            while (sequences.get(i) != t) {
+                Thread.yield();
+            }
+            elements.lazySet(i, element);
+            sequences.set(i, t + 1);
+        }
+
+        E poll() {
+            while (true) {
+                long h = head.get();
+                int i = (int) (h & mask);
+                long sequence = sequences.get(i);
+                if (sequence < h + 1) {
+                    return null; // empty, or the producer of slot h has not filled it yet
+                }
+                if (sequence == h + 1 && head.compareAndSet(h, h + 1)) {
+                    E element = elements.get(i);
+                    elements.lazySet(i, null);
+                    sequences.set(i, h + mask + 1);
+                    return element;
+                }
+            }
+        }
+
+        int size() {
+            return (int) Math.max(0, tail.get() - head.get());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public PriorityLaneQueue(int capacity, int[] weights) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+        this.capacity = capacity;
+        this.weights = weights.clone();
+        this.credits = ThreadLocal.withInitial(this.weights::clone);
+        this.lanes = (Lane<E>[]) new Lane<?>[weights.length];
+        int rounded = Integer.highestOneBit(capacity);
+        int laneLength = rounded == capacity ? rounded : rounded << 1;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 1) {
+                throw new IllegalArgumentException("Lane weights must be positive: lane " + i + " has " + weights[i]);
+            }
+            lanes[i] = new Lane<>(laneLength);
+        }
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Adds {@code element} to {@code lane}, waiting while the queue is full.
+     */
+    public void put(E element, int lane) throws InterruptedException {
+        Lane<E> target = lanes[lane];
+        while (!reserve()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            LockSupport.parkNanos(this, FULL_WAIT_NANOS);
+        }
+        target.add(element);
+        signal();
+    }
+
+    /**
+     * Adds {@code element} to {@code lane} unless the queue is full.
+     */
+    public boolean offer(E element, int lane) {
+        Lane<E> target = lanes[lane];
+        if (!reserve()) {
+            return false;
+        }
+        target.add(element);
+        signal();
+        return true;
+    }
+
+    private boolean reserve() {
+        if (size.getAndIncrement() >= capacity) {
+            size.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private void signal() {
+        if (sleeping.get() == 0) {
+            return;
+        }
+        for (int i = 0; i < SLEEPER_SLOTS; i++) {
+            Thread sleeper = sleepers.get(i);
+            if (sleeper != null && sleepers.compareAndSet(i, sleeper, null)) {
+                sleeping.decrementAndGet();
+                LockSupport.unpark(sleeper);
+                return;
+            }
+        }
+    }
+
+    public E take() throws InterruptedException {
+        E element;
+        while ((element = poll(1, TimeUnit.SECONDS)) == null) {
+            // keep waiting
+        }
+        return element;
+    }
+
+    /**
+     * Like {@link #take()}, but returns null if nothing arrives within the timeout.
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E element = next();
+        if (element != null || timeout <= 0) {
+            return element;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int i = 0; i < EMPTY_YIELDS; i++) {
+            Thread.yield();
+            if ((element = next()) != null) {
+                return element;
+            }
+        }
+        Thread current = Thread.currentThread();
+        int slot = -1;
+        try {
+            while (true) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                if (slot < 0) {
+                    slot = register(current);
+                }
+                // Registered before this check, so an insert it misses will find and wake us.
+                if ((element = next()) != null) {
+                    return element;
+                }
+                LockSupport.parkNanos(this, slot < 0 ? Math.min(remaining, UNREGISTERED_PARK_NANOS) : remaining);
+                if (slot >= 0 && sleepers.get(slot) != current) {
+                    slot = -1; // a producer took us out of the registry to wake us
+                }
+                if ((element = next()) != null) {
+                    return element;
+                }
+            }
+        } finally {
+            if (slot >= 0 && sleepers.compareAndSet(slot, current, null)) {
+                sleeping.decrementAndGet();
+            }
+        }
+    }
+
+    // Returns the registry slot taken, or -1 if all are taken, in which case the caller polls instead.
+    private int register(Thread current) {
+        for (int i = 0; i < SLEEPER_SLOTS; i++) {
+            if (sleepers.get(i) == null && sleepers.compareAndSet(i, null, current)) {
+                sleeping.incrementAndGet();
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private E next() {
+        if (size.get() == 0) {
+            return null;
+        }
+        int[] credits = this.credits.get();
+        for (int pass = 0; pass < 2; pass++) {
+            for (int lane = lanes.length - 1; lane >= 0; lane--) {
+                if (credits[lane] > 0) {
+                    E element = lanes[lane].poll();
+                    if (element != null) {
+                        credits[lane]--;
+                        size.decrementAndGet();
+                        return element;
+                    }
+                }
+            }
+            System.arraycopy(weights, 0, credits, 0, weights.length); // every waiting lane has had its share
+        }
+        return null;
+    }
+
+    public int size() {
+        return Math.min(capacity, size.get());
+    }
+
+    /**
+     * Copies the current depth of every lane into {@code depths}, which must hold one slot per lane.
+     */
+    public void laneSizes(int[] depths) {
+        for (int lane = 0; lane < lanes.length; lane++) {
+            depths[lane] = lanes[lane].size();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.time.Instant;
+
+/**
+ * Row predicate for {@link ColumnarSegmentReader#scan}: an analysis time range plus sets of accepted
+ * priorities and results, held as primitive bounds and bit masks so a row is tested without creating
+ * any objects. Instances are immutable; each {@code with...} method returns a narrowed copy.
+ */
+public final class ScanFilter {
+    private static final int ALL_PRIORITIES = 0xFFFF;
+    private static final int ALL_RESULTS = 0xF;
+    private static final ScanFilter ALL = new ScanFilter(Long.MIN_VALUE, Long.MAX_VALUE, ALL_PRIORITIES, ALL_RESULTS);
+
+    private final long fromNanos;
+    private final long toNanos;
+    private final int priorityMask;
+    private final int resultMask;
+
+    private ScanFilter(long fromNanos, long toNanos, int priorityMask, int resultMask) {
+        this.fromNanos = fromNanos;
+        this.toNanos = toNanos;
+        this.priorityMask = priorityMask;
+        this.resultMask = resultMask;
+    }
+
+    public static ScanFilter all() {
+        return ALL;
+    }
+
+    /**
+     * Keeps rows analyzed at or after {@code from} and before {@code to}; either bound may be null.
+     */
+    public ScanFilter withTimeRange(Instant from, Instant to) {
+        return new ScanFilter(from != null ? ColumnarSegmentWriter.epochNanos(from) : Long.MIN_VALUE,
+                to != null ? ColumnarSegmentWriter.epochNanos(to) : Long.MAX_VALUE, priorityMask, resultMask);
+    }
+
+    public ScanFilter withPriorities(int... priorities) {
+        int mask = 0;
+        for (int priority : priorities) {
+            if (priority < 0 || priority > 15) {
+                throw new IllegalArgumentException("Priority out of range: " + priority);
+            }
+            mask |= 1 << priority;
+        }
+        return new ScanFilter(fromNanos, toNanos, mask, resultMask);
+    }
+
+    public ScanFilter withResults(HeadlineAnalyzer.AnalysisResult... results) {
+        int mask = 0;
+        for (HeadlineAnalyzer.AnalysisResult result : results) {
+            mask |= 1 << result.ordinal();
+        }
+        return new ScanFilter(fromNanos, toNanos, priorityMask, mask);
+    }
+
+    boolean matches(long timestampNanos, int priority, int resultCode) {
+        return timestampNanos >= fromNanos && timestampNanos < toNanos
+                && (priorityMask & (1 << priority)) != 0
+                && (resultMask & (1 << resultCode)) != 0;
+    }
+
+    boolean mayMatchBlock(long minNanos, long maxNanos, int blockPriorityMask, int blockResultMask) {
+        return maxNanos >= fromNanos && minNanos < toNanos
+                && (priorityMask & blockPriorityMask) != 0
+                && (resultMask & blockResultMask) != 0;
+    }
+}
@@ -0,0 +1,183 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.AnalyzedNewsItem;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Lock-free, fixed-capacity ring of analyzed items. An append claims a sequence number with one
+ * atomic increment and writes into slot {@code sequence % capacity}, overwriting (evicting) the item
+ * that was there one lap earlier, so inserts stay constant-time and memory stays flat however long
+ * the server runs. A power-of-two capacity turns the modulo into a mask. Slots are grouped into
+ * segments allocated on first use, so a large capacity costs nothing until it is actually filled.
+ * <p>
+ * Each slot also records the sequence number it holds, written seqlock-style around the item, which
+ * lets readers skip slots that are mid-write or have already been lapped. Optionally, items older than
+ * {@code maxAgeMillis} are evicted by {@link #evictExpired()}.
+ */
+public class SegmentedRingStore implements AnalyzedItemStore {
+    private static final int SEGMENT_BITS = 12;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final long UNPUBLISHED = -1;
+
+    private final int capacity;
+    private final long mask; // capacity - 1 if the capacity is a power of two, otherwise -1
+    private final long maxAgeMillis;
+    private final AtomicReferenceArray<Segment> segments;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong ageFloor = new AtomicLong(); // sequences below this were evicted by age
+
+    private static final class Segment {
+        final AtomicReferenceArray<AnalyzedNewsItem> items;
+        final AtomicLongArray sequences;
+
+        Segment(int size) {
+            items = new AtomicReferenceArray<>(size);
+            sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, UNPUBLISHED);
+            }
+        }
+    }
+
+    /**
+     * @param capacity     maximum number of retained items
+     * @param maxAgeMillis age after which {@link #evictExpired()} drops an item; 0 disables it
+     */
+    public SegmentedRingStore(int capacity, long maxAgeMillis) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Store capacity must be between 1 and 2^30: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = Integer.bitCount(capacity) == 1 ? capacity - 1 : -1;
+        this.maxAgeMillis = maxAgeMillis;
+        this.segments = new AtomicReferenceArray<>((capacity + SEGMENT_SIZE - 1) >>> SEGMENT_BITS);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void append(AnalyzedNewsItem item) {
+        long sequence = nextSequence.getAndIncrement();
+        int slot = slot(sequence);
+        Segment segment = segment(slot >>> SEGMENT_BITS);
+        int offset = slot & (SEGMENT_SIZE - 1);
+        segment.sequences.set(offset, UNPUBLISHED);
+        segment.items.set(offset, item);
+        segment.sequences.set(offset, sequence);
+    }
+
+    /**
+     * Appends a batch with a single atomic claim of its sequence numbers.
+     */
+    @Override
+    public void appendAll(AnalyzedNewsItem[] items, int count) {
+        long first = nextSequence.getAndAdd(count);
+        for (int i = 0; i < count; i++) {
+            long sequence = first + i;
+            int slot = slot(sequence);
+            Segment segment = segment(slot >>> SEGMENT_BITS);
+            int offset = slot & (SEGMENT_SIZE - 1);
+            segment.sequences.set(offset, UNPUBLISHED);
+            segment.items.set(offset, items[i]);
+            segment.sequences.set(offset, sequence);
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) (mask >= 0 ? sequence & mask : sequence % capacity);
+    }
+
+    private Segment segment(int index) {
+        Segment segment = segments.get(index);
+        if (segment == null) {
+            Segment created = new Segment(Math.min(SEGMENT_SIZE, capacity - (index << SEGMENT_BITS)));
+            segment = segments.compareAndSet(index, null, created) ? created : segments.get(index);
+        }
+        return segment;
+    }
+
+    private long floor(long head) {
+        return Math.max(ageFloor.get(), head - capacity);
+    }
+
+    @Override
+    public long size() {
+        long head = nextSequence.get();
+        return Math.max(0, head - floor(head));
+    }
+
+    @Override
+    public long getTotalAppended() {
+        return nextSequence.get();
+    }
+
+    @Override
+    public long getEvictedCount() {
+        return Math.max(0, floor(nextSequence.get()));
+    }
+
+    @Override
+    public void forEach(Consumer<? super AnalyzedNewsItem> action) {
+        long head = nextSequence.get();
+        for (long sequence = floor(head); sequence < head; sequence++) {
+            AnalyzedNewsItem item = read(sequence);
+            if (item != null) {
+                action.accept(item);
+            }
+        }
+    }
+
+    private AnalyzedNewsItem read(long sequence) {
+        int slot = slot(sequence);
+        Segment segment = segments.get(slot >>> SEGMENT_BITS);
+        if (segment == null) {
+            return null;
+        }
+        int offset = slot & (SEGMENT_SIZE - 1);
+        if (segment.sequences.get(offset) != sequence) {
+            return null;
+        }
+        AnalyzedNewsItem item = segment.items.get(offset);
+        return segment.sequences.get(offset) == sequence ? item : null;
+    }
+
+    @Override
+    public void evictExpired() {
+        if (maxAgeMillis <= 0) {
+            return;
+        }
+        long cutoffMillis = System.currentTimeMillis() - maxAgeMillis;
+        long head = nextSequence.get();
+        long sequence = floor(head);
+        while (sequence < head) {
+            AnalyzedNewsItem item = read(sequence);
+            if (item != null && item.getAnalysisTimestamp().toEpochMilli() >= cutoffMillis) {
+                break;
+            }
+            if (item != null) {
+                int slot = slot(sequence);
+                segments.get(slot >>> SEGMENT_BITS).items.compareAndSet(slot & (SEGMENT_SIZE - 1), item, null);
+            } else if (!isWritten(sequence)) {
+                break; // claimed but not yet published; it is brand new, not expired
+            }
+            sequence++;
+        }
+        ageFloor.accumulateAndGet(sequence, Math::max);
+    }
+
+    private boolean isWritten(long sequence) {
+        int slot = slot(sequence);
+        Segment segment = segments.get(slot >>> SEGMENT_BITS);
+        return segment != null && segment.sequences.get(slot & (SEGMENT_SIZE - 1)) >= sequence;
+    }
+}
@@ -0,0 +1,154 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One I/O thread multiplexing many feed connections. It only moves bytes off the sockets and
+ * hands them to the connection's {@link ClientHandler}; nothing here blocks on decoding or analysis.
+ * A handler that is over its in-flight budget asks the loop to stop reading it, which leaves its
+ * bytes in the kernel buffers and lets TCP flow control slow the feed down.
+ */
+public class SelectorLoop implements Runnable {
+    public static final int DEFAULT_READ_BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+    private final Selector selector;
+    private final Queue<ClientHandler> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    private final Queue<ClientHandler> pendingInterestChanges = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer; // shared by every connection of the loop, reads happen one at a time
+    private volatile boolean running = true;
+
+    public SelectorLoop(String name, int readBufferSize) throws IOException {
+        this.name = name;
+        this.readBuffer = ByteBuffer.allocateDirect(readBufferSize);
+        this.selector = Selector.open();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void register(ClientHandler handler) {
+        handler.setSelectorLoop(this);
+        pendingRegistrations.add(handler);
+        selector.wakeup();
+    }
+
+    /**
+     * Applies the handler's current {@link ClientHandler#isReadingPaused()} state to its selection
+     * key on the I/O thread.
+     */
+    void updateInterest(ClientHandler handler) {
+        pendingInterestChanges.add(handler);
+        selector.wakeup();
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                registerPending();
+                applyInterestChanges();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            readFrom(key);
+                        }
+                    } catch (RuntimeException e) {
+                        // One broken connection must not stop the loop and drop every other one.
+                        key.cancel();
+                        ((ClientHandler) key.attachment()).onHandlerFailure(e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            AsyncLog.error("I/O loop {} failed: {}", name, e.getMessage());
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void registerPending() {
+        ClientHandler handler;
+        while ((handler = pendingRegistrations.poll()) != null) {
+            try {
+                handler.getChannel().register(selector, SelectionKey.OP_READ, handler);
+            } catch (ClosedChannelException e) {
+                handler.onReadFailure(e);
+            }
+        }
+    }
+
+    private void applyInterestChanges() {
+        ClientHandler handler;
+        while ((handler = pendingInterestChanges.poll()) != null) {
+            SelectionKey key = handler.getChannel().keyFor(selector);
+            if (key != null && key.isValid()) {
+                boolean paused = handler.isReadingPaused();
+                key.interestOps(paused ? 0 : SelectionKey.OP_READ);
+                if (!paused) {
+                    handler.onReadingResumed();
+                }
+            }
+        }
+    }
+
+    private void readFrom(SelectionKey key) {
+        ClientHandler handler = (ClientHandler) key.attachment();
+        if (handler.isReadingPaused()) {
+            return; // selected before the pause was applied to the key
+        }
+        SocketChannel channel = (SocketChannel) key.channel();
+        readBuffer.clear();
+        int read;
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            key.cancel();
+            handler.onReadFailure(e);
+            return;
+        }
+        if (read < 0) {
+            key.cancel();
+            handler.onEndOfStream();
+            return;
+        }
+        if (read == 0) {
+            return;
+        }
+        readBuffer.flip();
+        handler.onBytesRead(readBuffer);
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            ((ClientHandler) key.attachment()).onEndOfStream();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            AsyncLog.warn("Error closing selector for {}: {}", name, e.getMessage());
+        }
+    }
+}
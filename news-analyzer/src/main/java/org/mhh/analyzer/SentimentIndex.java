@@ -0,0 +1,324 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Pre-aggregated view of recently analyzed items: one bucket per minute holding item counts by priority
+ * and result, and how often each lexicon keyword occurred in headlines of each result. A query adds up
+ * the buckets of its time range, so its cost depends on the number of minutes, never on the number of items.
+ * <p>
+ * Buckets live in a ring covering {@code retentionMinutes}. {@link #rollOver()}, run every second on the
+ * stats scheduler, resets the bucket of the coming minute ahead of time, so recording normally just checks
+ * the bucket's minute and bumps striped counters. An item whose bucket has not been rolled yet (a replayed
+ * item, or a stalled scheduler) rolls it itself; an item older than the ring is counted as expired.
+ * Once a minute is over, {@link #rollOver()} also seals its counters into cumulative counts by priority,
+ * so a sealed minute adds six array reads to a query whatever its priority range. A late item for a sealed minute drops the
+ * seal again and the minute is re-sealed on the next roll-over.
+ */
+public class SentimentIndex {
+    static final int PRIORITY_SLOTS = 16;
+    private static final HeadlineAnalyzer.AnalysisResult[] RESULTS = HeadlineAnalyzer.AnalysisResult.values();
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Bucket[] ring;
+    private final int retentionMinutes;
+    private final boolean trackKeywords;
+    private final LongAdder expired = new LongAdder();
+
+    private static final class Bucket {
+        volatile long minute = Long.MIN_VALUE;
+        final LongAdder[] counts = new LongAdder[PRIORITY_SLOTS * RESULTS.length];
+        // Once the minute is over: [p * results + r] = items of result r with a priority below p. Null while it may change.
+        volatile long[] sealed;
+        volatile KeywordTally keywords;
+
+        Bucket() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        // Caller holds the bucket's monitor.
+        void reset(long newMinute) {
+            sealed = null;
+            for (LongAdder count : counts) {
+                count.reset();
+            }
+            keywords = null;
+            minute = newMinute;
+        }
+    }
+
+    // Keyword ids are only meaningful for the lexicon that assigned them, so a reload mid-minute starts a new tally.
+    private static final class KeywordTally {
+        final Lexicon lexicon;
+        final int keywordCount;
+        final AtomicIntegerArray counts; // result ordinal * keywordCount + keyword id
+        final IntConsumer[] sinks; // per result, so recording a match captures nothing
+        final KeywordTally previous;
+
+        KeywordTally(Lexicon lexicon, KeywordTally previous) {
+            this.lexicon = lexicon;
+            this.keywordCount = lexicon.getMatcher().getKeywordCount();
+            this.counts = new AtomicIntegerArray(RESULTS.length * keywordCount);
+            this.previous = previous;
+            this.sinks = new IntConsumer[RESULTS.length];
+            for (int r = 0; r < RESULTS.length; r++) {
+                int offset = r * keywordCount;
+                sinks[r] = id -> counts.incrementAndGet(offset + id);
+            }
+        }
+    }
+
+    public static final class KeywordCount {
+        private final String keyword;
+        private final long count;
+
+        KeywordCount(String keyword, long count) {
+            this.keyword = keyword;
+            this.count = count;
+        }
+
+        public String getKeyword() {
+            return keyword;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * @param retentionMinutes how many minutes, the current one included, queries can reach back
+     * @param trackKeywords    whether to rescan headlines for keyword counts; costs one matcher pass per item
+     */
+    public SentimentIndex(int retentionMinutes, boolean trackKeywords) {
+        if (retentionMinutes < 1) {
+            throw new IllegalArgumentException("Retention must be at least one minute: " + retentionMinutes);
+        }
+        this.retentionMinutes = retentionMinutes;
+        this.trackKeywords = trackKeywords;
+        // One spare bucket, so rolling the next minute ahead never clears the oldest retained one.
+        this.ring = new Bucket[retentionMinutes + 1];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Bucket();
+        }
+    }
+
+    public void record(long timestampMillis, int priority, HeadlineAnalyzer.AnalysisResult result, CharSequence headline, Lexicon lexicon) {
+        long minute = Math.floorDiv(timestampMillis, MINUTE_MILLIS);
+        Bucket bucket = bucketOf(minute);
+        if (bucket.minute != minute && !roll(bucket, minute)) {
+            expired.increment();
+            return;
+        }
+        bucket.counts[(priority & (PRIORITY_SLOTS - 1)) * RESULTS.length + result.ordinal()].increment();
+        if (bucket.sealed != null) {
+            bucket.sealed = null;
+        }
+        if (trackKeywords && headline != null) {
+            lexicon.getMatcher().forEachMatch(headline, tallyOf(bucket, lexicon).sinks[result.ordinal()]);
+        }
+    }
+
+    /**
+     * Prepares the buckets of the current and the next minute and seals past ones. Run it every few seconds.
+     */
+    public void rollOver() {
+        long minute = currentMinute();
+        for (long m = minute; m <= minute + 1; m++) {
+            Bucket bucket = bucketOf(m);
+            if (bucket.minute < m) {
+                roll(bucket, m);
+            }
+        }
+        for (Bucket bucket : ring) {
+            if (bucket.sealed == null && bucket.minute < minute && bucket.minute != Long.MIN_VALUE) {
+                seal(bucket);
+            }
+        }
+    }
+
+    private static void seal(Bucket bucket) {
+        long[] snapshot = sum(bucket.counts);
+        long[] cumulative = new long[snapshot.length + RESULTS.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            cumulative[i + RESULTS.length] = cumulative[i] + snapshot[i];
+        }
+        bucket.sealed = cumulative;
+        // A recorder that incremented before seeing the seal is caught here; one that increments later unseals.
+        if (!Arrays.equals(snapshot, sum(bucket.counts))) {
+            bucket.sealed = null;
+        }
+    }
+
+    private static long[] sum(LongAdder[] counts) {
+        long[] sums = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            sums[i] = counts[i].sum();
+        }
+        return sums;
+    }
+
+    private Bucket bucketOf(long minute) {
+        return ring[(int) Math.floorMod(minute, (long) ring.length)];
+    }
+
+    // False when the bucket already holds a later minute, i.e. the item is older than the ring.
+    private static boolean roll(Bucket bucket, long minute) {
+        synchronized (bucket) {
+            if (bucket.minute > minute) {
+                return false;
+            }
+            if (bucket.minute < minute) {
+                bucket.reset(minute);
+            }
+            return true;
+        }
+    }
+
+    private static KeywordTally tallyOf(Bucket bucket, Lexicon lexicon) {
+        KeywordTally tally = bucket.keywords;
+        if (tally != null && tally.lexicon == lexicon) {
+            return tally;
+        }
+        synchronized (bucket) {
+            tally = bucket.keywords;
+            if (tally == null || tally.lexicon != lexicon) {
+                tally = new KeywordTally(lexicon, tally);
+                bucket.keywords = tally;
+            }
+            return tally;
+        }
+    }
+
+    public long currentMinute() {
+        return Math.floorDiv(System.currentTimeMillis(), MINUTE_MILLIS);
+    }
+
+    /**
+     * The oldest minute a query ending at {@code toMinute} can still see.
+     */
+    public long oldestMinute(long toMinute) {
+        return toMinute - retentionMinutes + 1;
+    }
+
+    /**
+     * Items per result in minutes {@code fromMinute..toMinute} (inclusive) with a priority in
+     * {@code minPriority..maxPriority}, indexed by result ordinal.
+     */
+    public long[] counts(long fromMinute, long toMinute, int minPriority, int maxPriority) {
+        long[] totals = new long[RESULTS.length];
+        for (long minute = Math.max(fromMinute, oldestMinute(currentMinute())); minute <= toMinute; minute++) {
+            addCounts(minute, minPriority, maxPriority, totals);
+        }
+        return totals;
+    }
+
+    /**
+     * Like {@link #counts} but per minute: row {@code i} holds minute {@code fromMinute + i}.
+     */
+    public long[][] timeline(long fromMinute, long toMinute, int minPriority, int maxPriority) {
+        long oldest = oldestMinute(currentMinute());
+        long[][] rows = new long[(int) Math.max(0, toMinute - fromMinute + 1)][RESULTS.length];
+        for (int i = 0; i < rows.length; i++) {
+            if (fromMinute + i >= oldest) {
+                addCounts(fromMinute + i, minPriority, maxPriority, rows[i]);
+            }
+        }
+        return rows;
+    }
+
+    private void addCounts(long minute, int minPriority, int maxPriority, long[] totals) {
+        Bucket bucket = bucketOf(minute);
+        if (bucket.minute != minute) {
+            return;
+        }
+        int from = Math.max(0, minPriority) * RESULTS.length;
+        int to = (Math.min(PRIORITY_SLOTS - 1, maxPriority) + 1) * RESULTS.length;
+        if (from >= to) {
+            return;
+        }
+        long[] sealed = bucket.sealed;
+        for (int r = 0; r < RESULTS.length; r++) {
+            if (sealed != null) {
+                totals[r] += sealed[to + r] - sealed[from + r];
+            } else {
+                for (int i = from + r; i < to; i += RESULTS.length) {
+                    totals[r] += bucket.counts[i].sum();
+                }
+            }
+        }
+    }
+
+    /**
+     * The {@code limit} keywords that occurred most often in headlines analyzed as {@code result} in
+     * minutes {@code fromMinute..toMinute}, most frequent first. Empty when keyword tracking is off.
+     */
+    public List<KeywordCount> topKeywords(long fromMinute, long toMinute, HeadlineAnalyzer.AnalysisResult result, int limit) {
+        // Summed per lexicon by keyword id first; names are only looked up for the totals.
+        Map<Lexicon, long[]> perLexicon = new IdentityHashMap<>();
+        Lexicon lastLexicon = null;
+        long[] sums = null;
+        for (long minute = Math.max(fromMinute, oldestMinute(currentMinute())); minute <= toMinute; minute++) {
+            Bucket bucket = bucketOf(minute);
+            if (bucket.minute != minute) {
+                continue;
+            }
+            for (KeywordTally tally = bucket.keywords; tally != null; tally = tally.previous) {
+                if (tally.lexicon != lastLexicon) {
+                    lastLexicon = tally.lexicon;
+                    sums = perLexicon.computeIfAbsent(lastLexicon, l -> new long[l.getMatcher().getKeywordCount()]);
+                }
+                int offset = result.ordinal() * tally.keywordCount;
+                for (int id = 0; id < tally.keywordCount; id++) {
+                    sums[id] += tally.counts.get(offset + id);
+                }
+            }
+        }
+        Map<String, Long> byKeyword = new HashMap<>();
+        for (Map.Entry<Lexicon, long[]> entry : perLexicon.entrySet()) {
+            KeywordMatcher matcher = entry.getKey().getMatcher();
+            long[] totals = entry.getValue();
+            for (int id = 0; id < totals.length; id++) {
+                if (totals[id] > 0) {
+                    byKeyword.merge(matcher.getKeyword(id), totals[id], Long::sum);
+                }
+            }
+        }
+        List<KeywordCount> top = new ArrayList<>(byKeyword.size());
+        for (Map.Entry<String, Long> entry : byKeyword.entrySet()) {
+            top.add(new KeywordCount(entry.getKey(), entry.getValue()));
+        }
+        top.sort((a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.keyword.compareTo(b.keyword));
+        return top.size() > limit ? new ArrayList<>(top.subList(0, limit)) : top;
+    }
+
+    public int getRetentionMinutes() {
+        return retentionMinutes;
+    }
+
+    public boolean isTrackingKeywords() {
+        return trackKeywords;
+    }
+
+    /**
+     * Items recorded with a timestamp older than the ring.
+     */
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+}
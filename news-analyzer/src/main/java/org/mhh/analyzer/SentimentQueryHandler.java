@@ -0,0 +1,228 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON queries over a {@link SentimentIndex}, mounted under {@code /query/} on the metrics endpoint:
+ * <pre>
+ *   /query/sentiment   items per result in the range
+ *   /query/timeline    the same per minute
+ *   /query/keywords    most frequent keywords in headlines with {@code result} (default NEGATIVE), up to {@code limit} (10);
+ *                      empty unless {@code analyzer.query.keywords} is on
+ * </pre>
+ * The range is the last {@code minutes} (default 60) up to now, or from {@code since} ({@code today} for
+ * local midnight, or an ISO instant), clipped to the index retention. {@code minPriority} and
+ * {@code maxPriority} narrow the sentiment and timeline queries. Every response reports the range it
+ * actually covered and how long the lookup took.
+ */
+public class SentimentQueryHandler implements HttpHandler {
+    private static final HeadlineAnalyzer.AnalysisResult[] RESULTS = HeadlineAnalyzer.AnalysisResult.values();
+    private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final SentimentIndex index;
+
+    public SentimentQueryHandler(SentimentIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder json = new StringBuilder(1024);
+            int status = 200;
+            try {
+                Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+                switch (exchange.getRequestURI().getPath()) {
+                    case "/query/sentiment":
+                        sentiment(params, json);
+                        break;
+                    case "/query/timeline":
+                        timeline(params, json);
+                        break;
+                    case "/query/keywords":
+                        keywords(params, json);
+                        break;
+                    default:
+                        status = 404;
+                        json.append("{\"error\":\"Unknown query; use /query/sentiment, /query/timeline or /query/keywords\"}");
+                }
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                status = 400;
+                json.setLength(0);
+                json.append("{\"error\":");
+                appendString(json, e.getMessage() != null ? e.getMessage() : e.toString());
+                json.append('}');
+            }
+            byte[] body = json.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void sentiment(Map<String, String> params, StringBuilder json) {
+        long[] range = range(params);
+        int minPriority = intParam(params, "minPriority", 0);
+        int maxPriority = intParam(params, "maxPriority", SentimentIndex.PRIORITY_SLOTS - 1);
+        long start = System.nanoTime();
+        long[] counts = index.counts(range[0], range[1], minPriority, maxPriority);
+        long nanos = System.nanoTime() - start;
+
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        appendRange(json, range);
+        json.append(",\"minPriority\":").append(minPriority).append(",\"maxPriority\":").append(maxPriority);
+        json.append(",\"total\":").append(total).append(",\"counts\":{");
+        for (HeadlineAnalyzer.AnalysisResult result : RESULTS) {
+            json.append(result.ordinal() > 0 ? "," : "").append('"').append(result).append("\":").append(counts[result.ordinal()]);
+        }
+        json.append("},\"percentages\":{");
+        for (HeadlineAnalyzer.AnalysisResult result : RESULTS) {
+            json.append(result.ordinal() > 0 ? "," : "").append('"').append(result).append("\":")
+                    .append(String.format(Locale.ROOT, "%.2f", total > 0 ? 100.0 * counts[result.ordinal()] / total : 0.0));
+        }
+        json.append('}');
+        appendMicros(json, nanos);
+    }
+
+    private void timeline(Map<String, String> params, StringBuilder json) {
+        long[] range = range(params);
+        int minPriority = intParam(params, "minPriority", 0);
+        int maxPriority = intParam(params, "maxPriority", SentimentIndex.PRIORITY_SLOTS - 1);
+        long start = System.nanoTime();
+        long[][] rows = index.timeline(range[0], range[1], minPriority, maxPriority);
+        long nanos = System.nanoTime() - start;
+
+        appendRange(json, range);
+        json.append(",\"minPriority\":").append(minPriority).append(",\"maxPriority\":").append(maxPriority).append(",\"minutes\":[");
+        for (int i = 0; i < rows.length; i++) {
+            json.append(i > 0 ? ",{" : "{").append("\"minute\":\"").append(Instant.ofEpochMilli((range[0] + i) * MINUTE_MILLIS)).append('"');
+            for (HeadlineAnalyzer.AnalysisResult result : RESULTS) {
+                json.append(",\"").append(result).append("\":").append(rows[i][result.ordinal()]);
+            }
+            json.append('}');
+        }
+        json.append(']');
+        appendMicros(json, nanos);
+    }
+
+    private void keywords(Map<String, String> params, StringBuilder json) {
+        long[] range = range(params);
+        HeadlineAnalyzer.AnalysisResult result = HeadlineAnalyzer.AnalysisResult.valueOf(
+                params.getOrDefault("result", "NEGATIVE").trim().toUpperCase(Locale.ROOT));
+        int limit = intParam(params, "limit", 10);
+        long start = System.nanoTime();
+        List<SentimentIndex.KeywordCount> top = index.topKeywords(range[0], range[1], result, limit);
+        long nanos = System.nanoTime() - start;
+
+        appendRange(json, range);
+        json.append(",\"result\":\"").append(result).append("\",\"tracked\":").append(index.isTrackingKeywords()).append(",\"keywords\":[");
+        for (int i = 0; i < top.size(); i++) {
+            json.append(i > 0 ? ",{" : "{").append("\"keyword\":");
+            appendString(json, top.get(i).getKeyword());
+            json.append(",\"count\":").append(top.get(i).getCount()).append('}');
+        }
+        json.append(']');
+        appendMicros(json, nanos);
+    }
+
+    // Inclusive minute range, clipped to what the index retains.
+    private long[] range(Map<String, String> params) {
+        long now = index.currentMinute();
+        long from;
+        String since = params.get("since");
+        if (since == null) {
+            from = now - intParam(params, "minutes", 60) + 1;
+        } else if (since.equalsIgnoreCase("today")) {
+            ZoneId zone = ZoneId.systemDefault();
+            from = Math.floorDiv(LocalDate.now(zone).atStartOfDay(zone).toInstant().toEpochMilli(), MINUTE_MILLIS);
+        } else {
+            from = Math.floorDiv(Instant.parse(since).toEpochMilli(), MINUTE_MILLIS);
+        }
+        return new long[]{Math.max(from, index.oldestMinute(now)), now};
+    }
+
+    private static void appendRange(StringBuilder json, long[] range) {
+        json.append("{\"from\":\"").append(Instant.ofEpochMilli(range[0] * MINUTE_MILLIS))
+                .append("\",\"to\":\"").append(Instant.ofEpochMilli((range[1] + 1) * MINUTE_MILLIS)).append('"');
+    }
+
+    private static void appendMicros(StringBuilder json, long nanos) {
+        json.append(",\"micros\":").append(String.format(Locale.ROOT, "%.1f", nanos / 1000.0)).append('}');
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < ' ') {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        int parsed = Integer.parseInt(value.trim());
+        if (parsed < 0) {
+            throw new IllegalArgumentException(name + " must not be negative: " + parsed);
+        }
+        return parsed;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        try {
+            for (String pair : rawQuery.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return params;
+    }
+}
@@ -0,0 +1,133 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.AnalyzedNewsItem;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Several {@link SegmentedRingStore}s behind one {@link AnalyzedItemStore}, so analysis workers
+ * appending at the same time claim sequence numbers and write slots in different shards instead of
+ * all contending on one counter and its neighbouring slots. Each thread appends to one shard and moves
+ * to the next after {@link #STICKY_APPENDS} items, or fewer if a shard holds fewer; threads start on different shards, and a single
+ * appender, such as the log replay, still fills every shard evenly.
+ * <p>
+ * The capacity is divided among the shards, which differ by at most one item, so the store as a whole
+ * keeps at most {@code capacity} items, about the newest ones. Iteration merges the shards into timestamp order; it copies the retained
+ * items first, which is fine for the shutdown exports that use it.
+ */
+public class ShardedItemStore implements AnalyzedItemStore {
+    static final int STICKY_APPENDS = 1024;
+
+    private final SegmentedRingStore[] shards;
+    private final int stickyAppends;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final ThreadLocal<Cursor> cursors = ThreadLocal.withInitial(this::newCursor);
+
+    private static final class Cursor {
+        int shard;
+        int remaining;
+
+        Cursor(int shard, int remaining) {
+            this.shard = shard;
+            this.remaining = remaining;
+        }
+    }
+
+    /**
+     * @param shardCount   number of shards, typically one per analysis worker; at most {@code capacity}
+     * @param capacity     maximum number of retained items, divided among the shards
+     * @param maxAgeMillis age after which {@link #evictExpired()} drops an item; 0 disables it
+     */
+    public ShardedItemStore(int shardCount, int capacity, long maxAgeMillis) {
+        if (shardCount < 1 || shardCount > capacity) {
+            throw new IllegalArgumentException("Shard count must be between 1 and the capacity " + capacity + ": " + shardCount);
+        }
+        this.shards = new SegmentedRingStore[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new SegmentedRingStore(capacity / shardCount + (i < capacity % shardCount ? 1 : 0), maxAgeMillis);
+        }
+        this.stickyAppends = Math.min(STICKY_APPENDS, capacity / shardCount);
+    }
+
+    private Cursor newCursor() {
+        return new Cursor(Math.floorMod(nextShard.getAndIncrement(), shards.length), stickyAppends);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public void append(AnalyzedNewsItem item) {
+        Cursor cursor = cursors.get();
+        if (--cursor.remaining == 0) {
+            cursor.remaining = stickyAppends;
+            cursor.shard = cursor.shard + 1 == shards.length ? 0 : cursor.shard + 1;
+        }
+        shards[cursor.shard].append(item);
+    }
+
+    @Override
+    public void appendAll(AnalyzedNewsItem[] items, int count) {
+        Cursor cursor = cursors.get();
+        shards[cursor.shard].appendAll(items, count);
+        cursor.remaining -= count;
+        if (cursor.remaining <= 0) {
+            cursor.remaining = stickyAppends;
+            cursor.shard = cursor.shard + 1 == shards.length ? 0 : cursor.shard + 1;
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (SegmentedRingStore shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    @Override
+    public long getTotalAppended() {
+        long total = 0;
+        for (SegmentedRingStore shard : shards) {
+            total += shard.getTotalAppended();
+        }
+        return total;
+    }
+
+    @Override
+    public long getEvictedCount() {
+        long evicted = 0;
+        for (SegmentedRingStore shard : shards) {
+            evicted += shard.getEvictedCount();
+        }
+        return evicted;
+    }
+
+    @Override
+    public void evictExpired() {
+        for (SegmentedRingStore shard : shards) {
+            shard.evictExpired();
+        }
+    }
+
+    // Each shard is already close to time order, which the merge sort takes advantage of.
+    @Override
+    public void forEach(Consumer<? super AnalyzedNewsItem> action) {
+        List<AnalyzedNewsItem> items = new ArrayList<>((int) Math.min(Integer.MAX_VALUE - 8, size()));
+        for (SegmentedRingStore shard : shards) {
+            shard.forEach(items::add);
+        }
+        items.sort(Comparator.comparing(AnalyzedNewsItem::getAnalysisTimestamp));
+        items.forEach(action);
+    }
+}
@@ -0,0 +1,170 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.NewsItem;
+import org.mhh.common.NewsItemCodec;
+import org.mhh.feed.NewsGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs generated headlines through the hot paths before the server accepts connections: binary frames
+ * and a Java-serialized stream are decoded with the same code connections use, and the items go
+ * through an {@link AnalysisStage} whose recorders call the server's own record methods. That loads
+ * the classes, links the lambdas and gets the decode, analyze and record loops compiled, so the first
+ * real items do not pay for it.
+ * <p>
+ * The stage, and everything it records into, are throwaway copies of the live ones, so statistics,
+ * the store, the write-ahead log and the deduplicator do not see the synthetic items. Compiled code
+ * is shared by all instances of a class, so warming the copies warms the live ones. The copies are
+ * built when {@link #run()} starts, sized for the warm-up rather than for live traffic, and dropped
+ * when it returns.
+ */
+final class Warmup {
+    private static final int CORPUS_SIZE = 16 * 1024;
+    private static final long SHUTDOWN_MILLIS = 5000;
+    private static final int SCRATCH_QUEUE_CAPACITY = 1024;
+    private static final int SCRATCH_FRAME_SLACK = 64;
+
+    interface StageFactory {
+        /**
+         * A stage that is not started, with a queue of {@code queueCapacity}, recording into throwaway
+         * targets that keep at most {@code storeItems}.
+         */
+        AnalysisStage create(int storeItems, int queueCapacity);
+    }
+
+    private final long items;
+    private final StageFactory stages;
+    private final int headlineBytes;
+    private AnalysisStage stage; // only while running
+    private HeadlineFramePool framePool; // only while running, and only in the flyweight ingest mode
+    private final AtomicLong analyzed = new AtomicLong();
+    private final AnalysisStage.Origin origin = new AnalysisStage.Origin() {
+        @Override
+        public String getSourceName() {
+            return "warm-up";
+        }
+
+        @Override
+        public void onAnalyzed() {
+            analyzed.incrementAndGet();
+        }
+    };
+    private long submitted;
+
+    /**
+     * @param items         items to send through the stage, about half as binary frames and half serialized
+     * @param stages        builds the throwaway stage
+     * @param headlineBytes headline bytes per frame to decode into, or 0 to decode to {@link NewsItem}s
+     */
+    Warmup(long items, StageFactory stages, int headlineBytes) {
+        this.items = items;
+        this.stages = stages;
+        this.headlineBytes = headlineBytes;
+    }
+
+    /**
+     * Returns the nanoseconds the warm-up took.
+     */
+    long run() throws IOException, ClassNotFoundException, InterruptedException {
+        long start = System.nanoTime();
+        NewsGenerator generator = new NewsGenerator();
+        NewsItem[] corpus = new NewsItem[(int) Math.max(1, Math.min(CORPUS_SIZE, items / 2))];
+        int frameBytes = 0;
+        for (int i = 0; i < corpus.length; i++) {
+            corpus[i] = generator.generateNewsItem();
+            frameBytes += NewsItemCodec.encodedLength(corpus[i]);
+        }
+        ByteBuffer frames = ByteBuffer.allocate(frameBytes);
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream(frameBytes * 2);
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            for (NewsItem item : corpus) {
+                NewsItemCodec.encode(item, frames);
+                out.writeObject(item);
+            }
+        }
+        frames.flip();
+        byte[] stream = serialized.toByteArray();
+
+        stage = stages.create((int) Math.min(items, CORPUS_SIZE), SCRATCH_QUEUE_CAPACITY);
+        framePool = headlineBytes > 0 ? new HeadlineFramePool(SCRATCH_QUEUE_CAPACITY + SCRATCH_FRAME_SLACK, headlineBytes) : null;
+        stage.start();
+        try {
+            NewsItem[] batch = new NewsItem[stage.getBatchSize()];
+            while (submitted < items) {
+                frames.rewind();
+                if (framePool != null) {
+                    submitFrames(frames);
+                } else {
+                    submitDecoded(frames, batch);
+                }
+                submitDeserialized(stream, corpus.length, batch);
+            }
+            while (analyzed.get() < submitted) {
+                Thread.sleep(1);
+            }
+        } finally {
+            stage.shutdown(SHUTDOWN_MILLIS);
+            stage = null;
+            framePool = null;
+        }
+        return System.nanoTime() - start;
+    }
+
+    long getSubmitted() {
+        return submitted;
+    }
+
+    private void submitFrames(ByteBuffer frames) throws IOException, InterruptedException {
+        HeadlineFrame frame;
+        while ((frame = framePool.decode(frames)) != null) {
+            stage.submit(frame, origin);
+            submitted++;
+        }
+    }
+
+    private void submitDecoded(ByteBuffer frames, NewsItem[] batch) throws IOException, InterruptedException {
+        int count = 0;
+        NewsItem item;
+        while ((item = NewsItemCodec.decode(frames)) != null) {
+            batch[count++] = item;
+            if (count == batch.length) {
+                submit(batch, count);
+                count = 0;
+            }
+        }
+        submit(batch, count);
+    }
+
+    private void submitDeserialized(byte[] serialized, int count, NewsItem[] batch)
+            throws IOException, ClassNotFoundException, InterruptedException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            int inBatch = 0;
+            for (int i = 0; i < count; i++) {
+                batch[inBatch++] = (NewsItem) in.readObject();
+                if (inBatch == batch.length) {
+                    submit(batch, inBatch);
+                    inBatch = 0;
+                }
+            }
+            submit(batch, inBatch);
+        }
+    }
+
+    private void submit(NewsItem[] batch, int count) throws InterruptedException {
+        if (count > 0) {
+            stage.submitAll(batch, count, origin);
+            submitted += count;
+        }
+    }
+}
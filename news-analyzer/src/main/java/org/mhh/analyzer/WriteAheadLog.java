@@ -0,0 +1,563 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.AnalyzedNewsItem;
+import org.mhh.common.LatencyHistogram;
+import org.mhh.common.NewsItem;
+import org.mhh.common.NewsItemCodec;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Continuously persists analyzed items to rolling segment files so a crashed server can be rebuilt
+ * by {@link #replay(Consumer)}. Analysis workers only enqueue; a single writer thread drains whatever
+ * has queued up since its last write, encodes the whole batch into a pre-sized direct buffer, writes
+ * it with one {@link FileChannel} call and then syncs according to the {@link FsyncPolicy} (group
+ * commit). When the queue is full, {@link #append(AnalyzedNewsItem)} blocks, which slows the workers
+ * down to the disk's pace instead of growing the heap.
+ * <p>
+ * Segment layout: an 8-byte header ({@code "NWAL"} + format version), then records of
+ * {@code [int bodyLength][int crc32(body)][body]} where the body is the analysis timestamp (epoch
+ * seconds + nanos), the result ordinal and the item in {@link NewsItemCodec} format. A record that is
+ * cut short or fails its checksum marks the end of the valid data in that segment.
+ * <p>
+ * {@link #replay(Consumer)} and {@link #start()} take an exclusive lock on a {@code .lock} file in the
+ * directory, held until {@link #close()}, so two analyzers on one machine cannot share a log.
+ * <p>
+ * A log told to {@link #tail(PackedItemStore)} a store has no queue: the writer reads new items
+ * straight out of the store's slots and the store holds appends back while the writer is a full ring
+ * behind, so persisting an item creates no objects.
+ */
+public class WriteAheadLog {
+    private static final int MAGIC = 0x4E57414C; // "NWAL"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int FIXED_BODY_BYTES = 8 + 4 + 1;
+    private static final int MAX_RECORD_BYTES = RECORD_HEADER_BYTES + FIXED_BODY_BYTES + NewsItemCodec.MAX_FRAME_BYTES;
+    private static final int WRITE_BUFFER_BYTES = 1024 * 1024;
+    private static final int MAX_BATCH_ITEMS = 8192;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String LOCK_FILE = ".lock";
+    private static final HeadlineAnalyzer.AnalysisResult[] RESULTS = HeadlineAnalyzer.AnalysisResult.values();
+
+    public enum FsyncPolicy {
+        /**
+         * Force every group-committed batch to disk before writing the next one.
+         */
+        ALWAYS,
+        /**
+         * Force at most once per configured interval; a crash of the machine (not just the process)
+         * can lose up to one interval of items.
+         */
+        INTERVAL,
+        /**
+         * Leave flushing to the operating system.
+         */
+        NEVER;
+
+        /**
+         * Parses an {@code analyzer.wal.fsync} value; an unknown one is reported and {@link #ALWAYS} used.
+         */
+        public static FsyncPolicy fromProperty(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid analyzer.wal.fsync: " + value + ". Using always (expected always, interval or never)");
+                return ALWAYS;
+            }
+        }
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final int maxSegments;
+    private final BlockingQueue<AnalyzedNewsItem> queue;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+    private final CRC32 crc = new CRC32();
+    private final List<AnalyzedNewsItem> batch = new ArrayList<>(MAX_BATCH_ITEMS);
+    private final AtomicLong droppedItems = new AtomicLong();
+    private final AtomicLong writtenItems = new AtomicLong(); // written by the writer, read by stats and metrics
+    private final AtomicLong syncCount = new AtomicLong();
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+    private final Thread writerThread;
+    private volatile boolean closed;
+    private PackedItemStore tailedStore; // set before start() when tailing
+    private PackedItemStore.Record tailRecord;
+    private volatile long tailCursor; // next store sequence to persist
+
+    // Owned by the writer thread.
+    private FileChannel lockChannel;
+    private FileChannel segment;
+    private long segmentIndex;
+    private long segmentPosition;
+    private boolean unsynced;
+    private long lastSyncNanos;
+
+    public WriteAheadLog(Path directory, long segmentBytes, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis,
+                         int maxSegments, int queueCapacity) {
+        if (segmentBytes < SEGMENT_HEADER_BYTES + MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("Segment size must be at least " + (SEGMENT_HEADER_BYTES + MAX_RECORD_BYTES) + " bytes: " + segmentBytes);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+        this.maxSegments = maxSegments;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writerThread = new Thread(this::writeLoop, "analyzer-wal");
+        this.writerThread.setDaemon(true);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public long getWrittenItems() {
+        return writtenItems.get();
+    }
+
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    public long getDroppedItems() {
+        return droppedItems.get();
+    }
+
+    public int getQueueDepth() {
+        if (tailedStore != null) {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, tailedStore.getTotalAppended() - tailCursor));
+        }
+        return queue.size();
+    }
+
+    /**
+     * Persists the items appended to {@code store} from {@link #start()} on, instead of the items passed
+     * to {@link #append(AnalyzedNewsItem)}. Must be called before {@link #start()}.
+     */
+    public void tail(PackedItemStore store) {
+        this.tailedStore = store;
+        this.tailRecord = store.newRecord();
+    }
+
+    public boolean isTailing() {
+        return tailedStore != null;
+    }
+
+    /**
+     * Nanoseconds per group commit: writing a batch plus the fsync that follows it, if any.
+     */
+    public LatencyHistogram getCommitLatency() {
+        return commitLatency;
+    }
+
+    /**
+     * Reads every segment in order and passes the recovered items to {@code sink}. A damaged tail
+     * (typically the record being written when the process died) is reported and truncated away.
+     * Must be called before {@link #start()}.
+     *
+     * @return the number of items recovered
+     */
+    public long replay(Consumer<AnalyzedNewsItem> sink) throws IOException {
+        lockDirectory();
+        long recovered = 0;
+        for (Path file : listSegments()) {
+            recovered += replaySegment(file, sink);
+        }
+        return recovered;
+    }
+
+    private long replaySegment(Path file, Consumer<AnalyzedNewsItem> sink) throws IOException {
+        long recovered = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size < SEGMENT_HEADER_BYTES) {
+                System.err.println("WAL: ignoring " + file.getFileName() + ", it is too short to hold a segment header.");
+                return 0;
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (data.getInt() != MAGIC || data.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not a write-ahead log segment of version " + FORMAT_VERSION + ": " + file);
+            }
+            CRC32 checksum = new CRC32();
+            while (data.remaining() >= RECORD_HEADER_BYTES) {
+                int recordStart = data.position();
+                int bodyLength = data.getInt();
+                int expectedCrc = data.getInt();
+                if (bodyLength < FIXED_BODY_BYTES || bodyLength > MAX_RECORD_BYTES || bodyLength > data.remaining()) {
+                    data.position(recordStart);
+                    break;
+                }
+                ByteBuffer body = data.slice();
+                body.limit(bodyLength);
+                checksum.reset();
+                checksum.update(body.duplicate());
+                if ((int) checksum.getValue() != expectedCrc) {
+                    data.position(recordStart);
+                    break;
+                }
+                sink.accept(decodeBody(body));
+                data.position(recordStart + RECORD_HEADER_BYTES + bodyLength);
+                recovered++;
+            }
+            if (data.hasRemaining()) {
+                System.err.printf("WAL: %s has %,d bytes of incomplete or corrupt data after %,d valid records; truncating.%n",
+                        file.getFileName(), data.remaining(), recovered);
+                channel.truncate(data.position());
+            }
+        }
+        return recovered;
+    }
+
+    private static AnalyzedNewsItem decodeBody(ByteBuffer body) throws StreamCorruptedException {
+        Instant timestamp = Instant.ofEpochSecond(body.getLong(), body.getInt());
+        int ordinal = body.get();
+        if (ordinal < 0 || ordinal >= RESULTS.length) {
+            throw new StreamCorruptedException("Unknown analysis result ordinal in WAL record: " + ordinal);
+        }
+        NewsItem item = NewsItemCodec.decode(body);
+        if (item == null) {
+            throw new StreamCorruptedException("Truncated news item in checksummed WAL record");
+        }
+        return new AnalyzedNewsItem(item, RESULTS[ordinal], timestamp);
+    }
+
+    public void start() throws IOException {
+        lockDirectory();
+        List<Path> existing = listSegments();
+        segmentIndex = existing.isEmpty() ? 0 : segmentIndexOf(existing.get(existing.size() - 1)) + 1;
+        openSegment();
+        deleteOldSegments();
+        lastSyncNanos = System.nanoTime();
+        if (tailedStore != null) {
+            tailCursor = tailedStore.startTailing();
+        }
+        writerThread.start();
+    }
+
+    /**
+     * Queues an item for persistence, blocking while the writer is a full queue behind.
+     */
+    public void append(AnalyzedNewsItem item) {
+        if (closed) {
+            droppedItems.incrementAndGet();
+            return;
+        }
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            droppedItems.incrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues {@code items[0..count)} in order, blocking like {@link #append(AnalyzedNewsItem)}.
+     */
+    public void appendAll(AnalyzedNewsItem[] items, int count) {
+        for (int i = 0; i < count; i++) {
+            append(items[i]);
+        }
+    }
+
+    /**
+     * Stops accepting items, writes and syncs everything already queued, and closes the segment.
+     */
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            System.err.println("WAL: writer did not finish within 10 seconds; " + getQueueDepth() + " items not persisted.");
+        }
+        unlockDirectory();
+    }
+
+    private synchronized void lockDirectory() throws IOException {
+        if (lockChannel != null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null; // held by another log in this JVM
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException("Write-ahead log directory " + directory.toAbsolutePath()
+                    + " is in use by another analyzer; give each instance its own analyzer.wal.dir");
+        }
+        lockChannel = channel;
+    }
+
+    // Closing the channel releases its lock.
+    private synchronized void unlockDirectory() {
+        if (lockChannel == null) {
+            return;
+        }
+        try {
+            lockChannel.close();
+        } catch (IOException e) {
+            System.err.println("WAL: could not release the lock on " + directory + ": " + e.getMessage());
+        }
+        lockChannel = null;
+    }
+
+    private void writeLoop() {
+        if (tailedStore != null) {
+            tailLoop();
+            return;
+        }
+        try {
+            while (!closed || !queue.isEmpty()) {
+                AnalyzedNewsItem first = queue.poll(pollMillis(), TimeUnit.MILLISECONDS);
+                long start = System.nanoTime();
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH_ITEMS - 1);
+                    writeBatch();
+                }
+                if (unsynced && (fsyncPolicy == FsyncPolicy.ALWAYS
+                        || (fsyncPolicy == FsyncPolicy.INTERVAL && System.nanoTime() - lastSyncNanos >= fsyncIntervalNanos))) {
+                    sync();
+                }
+                if (first != null) {
+                    commitLatency.record(System.nanoTime() - start);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("WAL: writing to " + directory + " failed, persistence stopped: " + e.getMessage());
+            closed = true;
+            droppedItems.addAndGet(batch.size() + queue.size());
+            queue.clear();
+        } finally {
+            closeSegment();
+        }
+    }
+
+    private void tailLoop() {
+        PackedItemStore store = tailedStore;
+        try {
+            while (!closed || store.isPublished(tailCursor)) {
+                long start = System.nanoTime();
+                int written = writeTail(store);
+                if (written == 0) {
+                    store.awaitPublished(tailCursor, TimeUnit.MILLISECONDS.toNanos(pollMillis()));
+                }
+                if (unsynced && (fsyncPolicy == FsyncPolicy.ALWAYS
+                        || (fsyncPolicy == FsyncPolicy.INTERVAL && System.nanoTime() - lastSyncNanos >= fsyncIntervalNanos))) {
+                    sync();
+                }
+                if (written > 0) {
+                    commitLatency.record(System.nanoTime() - start);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("WAL: writing to " + directory + " failed, persistence stopped: " + e.getMessage());
+            closed = true;
+            droppedItems.addAndGet(getQueueDepth());
+        } finally {
+            store.stopTailing();
+            closeSegment();
+        }
+    }
+
+    private long pollMillis() {
+        if (fsyncPolicy == FsyncPolicy.INTERVAL && unsynced) {
+            return Math.max(1, TimeUnit.NANOSECONDS.toMillis(fsyncIntervalNanos - (System.nanoTime() - lastSyncNanos)));
+        }
+        return 100;
+    }
+
+    private void writeBatch() throws IOException {
+        for (AnalyzedNewsItem item : batch) {
+            NewsItem original = item.getOriginalItem();
+            int bodyLength = FIXED_BODY_BYTES + NewsItemCodec.encodedLength(original);
+            int recordStart = beginRecord(bodyLength);
+            Instant timestamp = item.getAnalysisTimestamp();
+            writeBuffer.putLong(timestamp.getEpochSecond());
+            writeBuffer.putInt(timestamp.getNano());
+            writeBuffer.put((byte) item.getResult().ordinal());
+            NewsItemCodec.encode(original, writeBuffer);
+            endRecord(recordStart, bodyLength);
+        }
+        flushBuffer();
+        writtenItems.addAndGet(batch.size());
+        batch.clear();
+    }
+
+    // Writes the published items from the cursor on, up to a batch, and returns how many.
+    private int writeTail(PackedItemStore store) throws IOException {
+        PackedItemStore.Record record = tailRecord;
+        long cursor = tailCursor;
+        int count = 0;
+        while (count < MAX_BATCH_ITEMS && store.read(cursor, record)) {
+            String spilled = record.getSpilledHeadline();
+            NewsItem spilledItem = spilled == null ? null : new NewsItem(spilled, record.getPriority());
+            int bodyLength = FIXED_BODY_BYTES + (spilledItem == null
+                    ? NewsItemCodec.encodedLength(record.getHeadlineLength()) : NewsItemCodec.encodedLength(spilledItem));
+            int recordStart = beginRecord(bodyLength);
+            writeBuffer.putLong(Math.floorDiv(record.getEpochNanos(), 1_000_000_000L));
+            writeBuffer.putInt((int) Math.floorMod(record.getEpochNanos(), 1_000_000_000L));
+            writeBuffer.put((byte) record.getResult().ordinal());
+            if (spilledItem == null) {
+                NewsItemCodec.encode(record.getHeadlineBytes(), record.getHeadlineLength(), record.getPriority(), writeBuffer);
+            } else {
+                NewsItemCodec.encode(spilledItem, writeBuffer);
+            }
+            endRecord(recordStart, bodyLength);
+            cursor++;
+            count++;
+        }
+        if (count > 0) {
+            flushBuffer();
+            writtenItems.addAndGet(count);
+            tailCursor = cursor;
+            store.advanceTail(cursor);
+        }
+        return count;
+    }
+
+    // Makes room for a record, rolling the segment if it would not fit, and positions the buffer at its body.
+    private int beginRecord(int bodyLength) throws IOException {
+        int recordLength = RECORD_HEADER_BYTES + bodyLength;
+        if (segmentPosition + writeBuffer.position() + recordLength > segmentBytes) {
+            flushBuffer();
+            rollSegment();
+        } else if (writeBuffer.remaining() < recordLength) {
+            flushBuffer();
+        }
+        int recordStart = writeBuffer.position();
+        writeBuffer.position(recordStart + RECORD_HEADER_BYTES);
+        return recordStart;
+    }
+
+    // Checksums the body just written, in place, and fills in the record header.
+    private void endRecord(int recordStart, int bodyLength) {
+        int end = writeBuffer.position();
+        writeBuffer.position(recordStart + RECORD_HEADER_BYTES);
+        writeBuffer.limit(end);
+        crc.reset();
+        crc.update(writeBuffer);
+        writeBuffer.limit(writeBuffer.capacity());
+        writeBuffer.putInt(recordStart, bodyLength);
+        writeBuffer.putInt(recordStart + 4, (int) crc.getValue());
+    }
+
+    private void flushBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            segmentPosition += segment.write(writeBuffer);
+        }
+        writeBuffer.clear();
+        unsynced = true;
+    }
+
+    private void sync() throws IOException {
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            segment.force(false);
+            syncCount.incrementAndGet();
+        }
+        unsynced = false;
+        lastSyncNanos = System.nanoTime();
+    }
+
+    private void rollSegment() throws IOException {
+        sync();
+        segment.close();
+        segmentIndex++;
+        openSegment();
+        deleteOldSegments();
+    }
+
+    private void openSegment() throws IOException {
+        Path file = directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, segmentIndex, SEGMENT_SUFFIX));
+        segment = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        writeBuffer.putInt(MAGIC).putInt(FORMAT_VERSION);
+        segmentPosition = 0;
+        flushBuffer();
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            if (segment.isOpen()) {
+                sync();
+                segment.close();
+            }
+        } catch (IOException e) {
+            System.err.println("WAL: could not close the current segment: " + e.getMessage());
+        }
+    }
+
+    private void deleteOldSegments() throws IOException {
+        if (maxSegments <= 0) {
+            return;
+        }
+        List<Path> segments = listSegments();
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        Collections.sort(segments); // zero-padded indexes sort lexicographically
+        return segments;
+    }
+
+    private static long segmentIndexOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
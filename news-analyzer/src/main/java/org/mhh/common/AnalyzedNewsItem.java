@@ -14,9 +14,13 @@ public class AnalyzedNewsItem {
     private final Instant analysisTimestamp;
 
     public AnalyzedNewsItem(NewsItem originalItem, HeadlineAnalyzer.AnalysisResult result) {
+        this(originalItem, result, Instant.now());
+    }
+
+    public AnalyzedNewsItem(NewsItem originalItem, HeadlineAnalyzer.AnalysisResult result, Instant analysisTimestamp) {
         this.originalItem = originalItem;
         this.result = result;
-        this.analysisTimestamp = Instant.now();
+        this.analysisTimestamp = analysisTimestamp;
     }
 
     public NewsItem getOriginalItem() {
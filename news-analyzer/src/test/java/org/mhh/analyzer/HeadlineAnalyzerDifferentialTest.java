@@ -0,0 +1,143 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mhh.feed.NewsGenerator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the automaton-based {@link HeadlineAnalyzer} against the original analyzer's substring scan:
+ * lower-case the headline, count every (overlapping) occurrence of each keyword with {@code indexOf}
+ * and sum the weights. Compared on generated headlines, on random text mixing keyword fragments with
+ * case and Unicode edge cases, and on random lexicons.
+ */
+public class HeadlineAnalyzerDifferentialTest {
+    private static final String[] EDGE_FRAGMENTS = {
+            " ", "-", "GOOD", "Bad", "sUcCeSs", "İ", "WIN", "K", "ß", "ẞ", "Σ",
+            "𐐀", "\uD801", "\t", "lo", "ss", "los", "e", "crisi", "happ", "É"
+    };
+    private static final long SEED = 42L;
+
+    private static Locale defaultLocale;
+
+    // The reference lower-cases with the default locale, as the original analyzer did.
+    @BeforeClass
+    public static void useRootLocale() {
+        defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.ROOT);
+    }
+
+    @AfterClass
+    public static void restoreLocale() {
+        Locale.setDefault(defaultLocale);
+    }
+
+    @Test
+    public void builtInLexiconMatchesSubstringScan() {
+        HeadlineAnalyzer analyzer = new HeadlineAnalyzer();
+        Lexicon lexicon = analyzer.getLexicon();
+        SplittableRandom random = new SplittableRandom(SEED);
+        NewsGenerator generator = new NewsGenerator();
+        List<String> fragments = new ArrayList<>(lexicon.getWeights().keySet());
+        for (String edge : EDGE_FRAGMENTS) {
+            fragments.add(edge);
+        }
+
+        for (int i = 0; i < 20_000; i++) {
+            assertSameResult(generator.generateNewsItem().getHeadline(), lexicon, analyzer);
+            assertSameResult(randomText(random, fragments), lexicon, analyzer);
+        }
+    }
+
+    @Test
+    public void randomLexiconsMatchSubstringScan() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int l = 0; l < 20; l++) {
+            Lexicon lexicon = randomLexicon(random, 2_000);
+            HeadlineAnalyzer analyzer = new HeadlineAnalyzer(lexicon);
+            for (int i = 0; i < 2_000; i++) {
+                assertSameResult(randomWord(random, random.nextInt(60)), lexicon, analyzer);
+            }
+        }
+    }
+
+    @Test
+    public void blankHeadlinesAreNeutral() {
+        HeadlineAnalyzer analyzer = new HeadlineAnalyzer();
+        assertEquals(HeadlineAnalyzer.AnalysisResult.NEUTRAL, analyzer.analyze(null));
+        assertEquals(HeadlineAnalyzer.AnalysisResult.NEUTRAL, analyzer.analyze(" \t "));
+    }
+
+    private static void assertSameResult(String headline, Lexicon lexicon, HeadlineAnalyzer analyzer) {
+        assertEquals("\"" + headline + "\"", reference(headline, lexicon), analyzer.analyze(headline));
+    }
+
+    private static HeadlineAnalyzer.AnalysisResult reference(String headline, Lexicon lexicon) {
+        if (headline == null || headline.trim().isEmpty()) {
+            return HeadlineAnalyzer.AnalysisResult.NEUTRAL;
+        }
+        String lowerCaseHeadline = headline.toLowerCase();
+        long score = 0;
+        for (Map.Entry<String, Integer> entry : lexicon.getWeights().entrySet()) {
+            int from = 0;
+            int found;
+            while ((found = lowerCaseHeadline.indexOf(entry.getKey(), from)) >= 0) {
+                score += entry.getValue();
+                from = found + 1;
+            }
+        }
+        if (score >= lexicon.getPositiveThreshold()) {
+            return HeadlineAnalyzer.AnalysisResult.POSITIVE;
+        } else if (score <= lexicon.getNegativeThreshold()) {
+            return HeadlineAnalyzer.AnalysisResult.NEGATIVE;
+        }
+        return HeadlineAnalyzer.AnalysisResult.NEUTRAL;
+    }
+
+    private static Lexicon randomLexicon(SplittableRandom random, int size) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        while (weights.size() < size) {
+            weights.put(randomWord(random, 1 + random.nextInt(6)), random.nextInt(7) - 3);
+        }
+        int positive = 1 + random.nextInt(3);
+        return new Lexicon("random", 0, weights, positive, -positive);
+    }
+
+    private static String randomText(SplittableRandom random, List<String> fragments) {
+        StringBuilder text = new StringBuilder();
+        int parts = random.nextInt(8);
+        for (int i = 0; i < parts; i++) {
+            String fragment = fragments.get(random.nextInt(fragments.size()));
+            if (random.nextInt(4) == 0) {
+                fragment = fragment.toUpperCase(Locale.ROOT);
+            }
+            text.append(fragment);
+            if (random.nextBoolean()) {
+                text.append(' ');
+            }
+        }
+        return text.toString();
+    }
+
+    private static String randomWord(SplittableRandom random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            int pick = random.nextInt(20);
+            chars[i] = pick == 0 ? (char) ('A' + random.nextInt(3)) : pick == 1 ? 'é' : (char) ('a' + random.nextInt(3));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,178 @@
+package org.mhh.analyzer;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mhh.common.AnalyzedNewsItem;
+import org.mhh.common.NewsItem;
+import org.mhh.common.NewsItemCodec;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes real segments with {@link WriteAheadLog}, damages them the way a crash or a bad disk would,
+ * and checks what {@link WriteAheadLog#replay} recovers.
+ */
+public class WriteAheadLogTest {
+    private static final long SEGMENT_BYTES = 128 * 1024; // the smallest allowed is just over 64 KiB
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int FIXED_BODY_BYTES = 8 + 4 + 1;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayRecoversEveryItemAcrossSegments() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        List<AnalyzedNewsItem> written = write(dir, 0, 5_000, 0);
+        assertTrue("expected the log to roll over several segments", segments(dir).size() > 2);
+
+        List<AnalyzedNewsItem> replayed = replay(dir);
+        assertSameItems(written, replayed);
+    }
+
+    @Test
+    public void partialTailRecordIsTruncated() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        List<AnalyzedNewsItem> written = write(dir, 0, 100, 0);
+        Path segment = lastSegment(dir);
+        long intact = Files.size(segment);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(intact - 5); // the last record was half written when the process died
+        }
+
+        assertSameItems(written.subList(0, 99), replay(dir));
+        assertEquals(intact - recordBytes(written.get(99)), Files.size(segment));
+        assertSameItems(written.subList(0, 99), replay(dir)); // the truncated log replays cleanly again
+    }
+
+    @Test
+    public void checksumMismatchStopsReplayAtTheDamagedRecord() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        List<AnalyzedNewsItem> written = write(dir, 0, 100, 0);
+        Path segment = lastSegment(dir);
+        long damaged = SEGMENT_HEADER_BYTES;
+        for (int i = 0; i < 40; i++) {
+            damaged += recordBytes(written.get(i));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            long headlineByte = damaged + RECORD_HEADER_BYTES + FIXED_BODY_BYTES + 3;
+            file.seek(headlineByte);
+            int value = file.read();
+            file.seek(headlineByte);
+            file.write(value ^ 0x20);
+        }
+
+        assertSameItems(written.subList(0, 40), replay(dir));
+        assertEquals(damaged, Files.size(segment));
+    }
+
+    @Test
+    public void newItemsAfterRecoveryGoToANewSegment() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        List<AnalyzedNewsItem> first = write(dir, 0, 50, 0);
+        Path segment = lastSegment(dir);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(Files.size(segment) - 1);
+        }
+        List<AnalyzedNewsItem> expected = new ArrayList<>(replay(dir));
+        assertSameItems(first.subList(0, 49), expected);
+
+        expected.addAll(write(dir, 50, 30, 0));
+        assertEquals(2, segments(dir).size());
+        assertSameItems(expected, replay(dir));
+    }
+
+    @Test
+    public void retentionKeepsOnlyTheNewestSegments() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        List<AnalyzedNewsItem> written = write(dir, 0, 5_000, 2);
+        assertEquals(2, segments(dir).size());
+
+        List<AnalyzedNewsItem> replayed = replay(dir);
+        assertTrue(replayed.size() > 0 && replayed.size() < written.size());
+        assertSameItems(written.subList(written.size() - replayed.size(), written.size()), replayed);
+
+        write(dir, 5_000, 1, 1); // a restart with a lower limit trims the old segments right away
+        assertEquals(1, segments(dir).size());
+    }
+
+    private static List<AnalyzedNewsItem> write(Path dir, int first, int count, int maxSegments) throws IOException {
+        WriteAheadLog log = new WriteAheadLog(dir, SEGMENT_BYTES, WriteAheadLog.FsyncPolicy.NEVER, 0, maxSegments, 1024);
+        List<AnalyzedNewsItem> items = new ArrayList<>(count);
+        log.start();
+        try {
+            HeadlineAnalyzer.AnalysisResult[] results = HeadlineAnalyzer.AnalysisResult.values();
+            for (int i = first; i < first + count; i++) {
+                NewsItem item = new NewsItem(String.format("Headline %06d with \"quotes\", commas and ünïcödé", i), i % 10);
+                AnalyzedNewsItem analyzed = new AnalyzedNewsItem(item, results[i % results.length],
+                        Instant.ofEpochSecond(1_700_000_000L + i, i * 1_000L));
+                log.append(analyzed);
+                items.add(analyzed);
+            }
+        } finally {
+            log.close();
+        }
+        assertEquals(count, log.getWrittenItems());
+        return items;
+    }
+
+    private static List<AnalyzedNewsItem> replay(Path dir) throws IOException {
+        WriteAheadLog log = new WriteAheadLog(dir, SEGMENT_BYTES, WriteAheadLog.FsyncPolicy.NEVER, 0, 0, 1024);
+        List<AnalyzedNewsItem> items = new ArrayList<>();
+        try {
+            long recovered = log.replay(items::add);
+            assertEquals(items.size(), recovered);
+        } finally {
+            log.close();
+        }
+        return items;
+    }
+
+    private static long recordBytes(AnalyzedNewsItem item) {
+        return RECORD_HEADER_BYTES + FIXED_BODY_BYTES + NewsItemCodec.encodedLength(item.getOriginalItem());
+    }
+
+    private static void assertSameItems(List<AnalyzedNewsItem> expected, List<AnalyzedNewsItem> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            AnalyzedNewsItem e = expected.get(i);
+            AnalyzedNewsItem a = actual.get(i);
+            assertEquals(e.getOriginalItem(), a.getOriginalItem());
+            assertEquals(e.getResult(), a.getResult());
+            assertEquals(e.getAnalysisTimestamp(), a.getAnalysisTimestamp());
+        }
+    }
+
+    private static Path lastSegment(Path dir) throws IOException {
+        List<Path> segments = segments(dir);
+        return segments.get(segments.size() - 1);
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "segment-*.wal")) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+}
@@ -0,0 +1,78 @@
+package org.mhh.benchmarks;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.analyzer.AnalysisStage;
+import org.mhh.analyzer.PriorityLaneQueue;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Items per second handed from decode threads to analysis workers through the {@link PriorityLaneQueue},
+ * with two producers spreading items over all priority lanes and four consumers. Neither side waits:
+ * {@code handedOff} counts the polls that returned an item. Change the split with {@code -tg}, e.g.
+ * {@code -tg 2,8}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class AnalysisHandoffBenchmark {
+    private static final Object ITEM = new Object();
+
+    private PriorityLaneQueue<Object> queue;
+
+    @Setup(Level.Iteration)
+    public void createQueue() {
+        queue = new PriorityLaneQueue<>(16 * 1024, AnalysisStage.linearWeights());
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        int lane;
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Consumer {
+        public long handedOff;
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(2)
+    public boolean produce(Producer producer) {
+        int lane = producer.lane;
+        producer.lane = lane + 1 == AnalysisStage.PRIORITY_LEVELS ? 0 : lane + 1;
+        return queue.offer(ITEM, lane);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(4)
+    public Object consume(Consumer consumer) throws InterruptedException {
+        Object item = queue.poll(0, TimeUnit.NANOSECONDS);
+        if (item != null) {
+            consumer.handedOff++;
+        }
+        return item;
+    }
+}
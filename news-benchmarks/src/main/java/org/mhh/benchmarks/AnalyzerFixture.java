@@ -0,0 +1,96 @@
+package org.mhh.benchmarks;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.analyzer.NewsAnalyzerServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * A {@link NewsAnalyzerServer} running on a free loopback port for the duration of a benchmark trial,
+ * with its write-ahead log (when enabled) in a temporary directory. The server's console output is
+ * discarded while it runs so that the benchmark measures the server rather than the terminal.
+ */
+final class AnalyzerFixture {
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private final NewsAnalyzerServer server;
+    private final Thread serverThread;
+    private final int port;
+    private final Path walDirectory;
+    private final PrintStream originalOut;
+
+    AnalyzerFixture(boolean walEnabled) throws IOException, InterruptedException {
+        this(walEnabled, false);
+    }
+
+    AnalyzerFixture(boolean walEnabled, boolean flyweightIngest) throws IOException, InterruptedException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        walDirectory = Files.createTempDirectory("bench-wal");
+        System.setProperty("analyzer.wal.enabled", String.valueOf(walEnabled));
+        System.setProperty("analyzer.wal.dir", walDirectory.toString());
+        System.setProperty("analyzer.wal.fsync", "never");
+        System.setProperty("analyzer.metrics.port", "-1");
+        System.setProperty("analyzer.ingest.flyweight", String.valueOf(flyweightIngest));
+
+        originalOut = System.out;
+        System.setOut(DISCARD);
+        server = new NewsAnalyzerServer(port, Integer.getInteger("analyzer.workers", 10));
+        serverThread = new Thread(server::startServer, "bench-analyzer");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        awaitListening();
+    }
+
+    private void awaitListening() throws InterruptedException, IOException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            try {
+                new Socket("127.0.0.1", port).close();
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    NewsAnalyzerServer getServer() {
+        return server;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    void close() throws IOException, InterruptedException {
+        server.stop();
+        serverThread.join(15_000);
+        System.setOut(originalOut);
+        try (Stream<Path> files = Files.walk(walDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.mhh.benchmarks;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.analyzer.HeadlineAnalyzer;
+import org.mhh.analyzer.NewsAnalyzerServer;
+import org.mhh.common.NewsItem;
+import org.mhh.feed.NewsGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Items per second through analysis and recording, the work an analysis worker does per item:
+ * {@link HeadlineAnalyzer#analyzeBatch} plus {@link NewsAnalyzerServer#recordBatch} at batch sizes 1, 16
+ * and 256, against {@code analyze} plus {@code recordAnalysis} one item at a time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchAnalysisBenchmark {
+    private static final int ITEMS = 256;
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({"false"})
+        public boolean wal;
+
+        AnalyzerFixture fixture;
+        HeadlineAnalyzer analyzer = new HeadlineAnalyzer();
+
+        @Setup(Level.Trial)
+        public void start() throws IOException, InterruptedException {
+            fixture = new AnalyzerFixture(wal);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws IOException, InterruptedException {
+            fixture.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Items {
+        NewsItem[] items = new NewsItem[ITEMS];
+
+        @Setup(Level.Trial)
+        public void generate() {
+            NewsGenerator generator = new NewsGenerator();
+            for (int i = 0; i < ITEMS; i++) {
+                items[i] = generator.generateNewsItem();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Batches {
+        @Param({"1", "16", "256"})
+        public int batch;
+
+        NewsItem[][] items;
+        String[][] headlines;
+        HeadlineAnalyzer.AnalysisResult[] results;
+
+        @Setup(Level.Trial)
+        public void split(Items source) {
+            items = new NewsItem[ITEMS / batch][batch];
+            headlines = new String[ITEMS / batch][batch];
+            results = new HeadlineAnalyzer.AnalysisResult[batch];
+            for (int i = 0; i < ITEMS; i++) {
+                items[i / batch][i % batch] = source.items[i];
+                headlines[i / batch][i % batch] = source.items[i].getHeadline();
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public void batched(Server server, Batches batches) {
+        NewsAnalyzerServer analyzerServer = server.fixture.getServer();
+        for (int b = 0; b < batches.items.length; b++) {
+            server.analyzer.analyzeBatch(batches.headlines[b], batches.batch, batches.results);
+            analyzerServer.recordBatch(batches.items[b], batches.results, batches.batch);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public void itemByItem(Server server, Items items) {
+        NewsAnalyzerServer analyzerServer = server.fixture.getServer();
+        for (NewsItem item : items.items) {
+            analyzerServer.recordAnalysis(item, server.analyzer.analyze(item.getHeadline()));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.mhh.benchmarks;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Runs the JMH benchmarks with the usual JMH command line, except that results are written as JSON to
+ * {@code jmh-results/results-<timestamp>.json} unless {@code -rf}/{@code -rff} say otherwise, so runs
+ * can be kept and compared over time.
+ * <p>
+ * Usage: {@code java -jar news-benchmarks-1.0-SNAPSHOT-jar-with-dependencies.jar [JMH options] [benchmark regex]}
+ */
+public class BenchmarkMain {
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            Path directory = Paths.get("jmh-results");
+            Files.createDirectories(directory);
+            Path result = directory.resolve("results-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".json");
+            options.result(result.toString());
+            System.out.println("Writing benchmark results to " + result);
+        }
+        Runner runner = new Runner(options.build());
+        if (commandLine.shouldList()) {
+            runner.list();
+            return;
+        }
+        runner.run();
+    }
+}
@@ -0,0 +1,92 @@
+package org.mhh.benchmarks;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.NewsItem;
+import org.mhh.feed.NewsGenerator;
+import org.mhh.feed.NewsItemSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Items per second through the whole server over a loopback socket: a feed connection writes a batch,
+ * and the operation completes once the server has analyzed and recorded every item of it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndIngestBenchmark {
+    private static final int BATCH = 1000;
+    private static final long BATCH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    @Param({"binary", "java"})
+    public String protocol;
+
+    @Param({"false"})
+    public boolean wal;
+
+    private AnalyzerFixture fixture;
+    private Socket socket;
+    private NewsItemSender sender;
+    private NewsItem[] items;
+    private long expected;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException, InterruptedException {
+        fixture = new AnalyzerFixture(wal);
+        NewsGenerator generator = new NewsGenerator();
+        items = new NewsItem[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            items[i] = generator.generateNewsItem();
+        }
+        socket = new Socket("127.0.0.1", fixture.getPort());
+        sender = new NewsItemSender(socket.getOutputStream(), NewsItemSender.Protocol.fromProperty(protocol));
+        expected = fixture.getServer().getAnalyzedCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException, InterruptedException {
+        sender.close();
+        socket.close();
+        fixture.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void ingestBatch() throws IOException {
+        for (NewsItem item : items) {
+            sender.write(item);
+        }
+        sender.flush();
+        expected += BATCH;
+        long deadline = System.nanoTime() + BATCH_TIMEOUT_NANOS;
+        while (fixture.getServer().getAnalyzedCount() < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Server analyzed " + fixture.getServer().getAnalyzedCount() + " of " + expected + " items");
+            }
+            LockSupport.parkNanos(20_000);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.mhh.benchmarks;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.NewsItem;
+import org.mhh.common.NewsItemCodec;
+import org.mhh.feed.NewsGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The binary ingest path with and without {@code analyzer.ingest.flyweight}. The feed side writes one
+ * pre-encoded batch of frames per operation, so it allocates nothing itself; since the server runs in
+ * the benchmark's JVM, {@code -prof gc} then reports the server's allocation per item
+ * ({@code gc.alloc.rate.norm}), decode to record, write-ahead log included when {@code wal} is on.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlyweightIngestBenchmark {
+    private static final int BATCH = 1000;
+    private static final long BATCH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    @Param({"false", "true"})
+    public boolean flyweight;
+
+    @Param({"false", "true"})
+    public boolean wal;
+
+    private AnalyzerFixture fixture;
+    private Socket socket;
+    private OutputStream out;
+    private byte[] frames;
+    private long expected;
+
+    @Setup(Level.Trial)
+    public void start() throws IOException, InterruptedException {
+        fixture = new AnalyzerFixture(wal, flyweight);
+        NewsGenerator generator = new NewsGenerator();
+        ByteBuffer encoded = ByteBuffer.allocate(BATCH * 256);
+        for (int i = 0; i < BATCH; i++) {
+            NewsItem item = generator.generateNewsItem();
+            NewsItemCodec.encode(item, encoded);
+        }
+        frames = new byte[encoded.position()];
+        encoded.flip();
+        encoded.get(frames);
+        socket = new Socket("127.0.0.1", fixture.getPort());
+        out = socket.getOutputStream();
+        out.write(NewsItemCodec.HANDSHAKE);
+        expected = fixture.getServer().getAnalyzedCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException, InterruptedException {
+        socket.close();
+        fixture.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void ingestBatch() throws IOException {
+        out.write(frames);
+        expected += BATCH;
+        long deadline = System.nanoTime() + BATCH_TIMEOUT_NANOS;
+        while (fixture.getServer().getAnalyzedCount() < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Server analyzed " + fixture.getServer().getAnalyzedCount() + " of " + expected + " items");
+            }
+            LockSupport.parkNanos(20_000);
+        }
+    }
+}
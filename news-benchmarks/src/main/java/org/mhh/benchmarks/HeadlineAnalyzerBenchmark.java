@@ -0,0 +1,71 @@
+package org.mhh.benchmarks;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.analyzer.CachingHeadlineAnalyzer;
+import org.mhh.analyzer.HeadlineAnalyzer;
+import org.mhh.analyzer.Lexicon;
+import org.mhh.feed.NewsGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HeadlineAnalyzer#analyze(String)} over a corpus of headlines from {@link NewsGenerator}:
+ * {@code generated} uses them as they are, {@code long} joins four of them into one headline. With
+ * {@code cache} set the analyzer is a {@link CachingHeadlineAnalyzer} large enough for the corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeadlineAnalyzerBenchmark {
+    private static final int CORPUS_SIZE = 4096;
+
+    @Param({"generated", "long"})
+    public String corpus;
+
+    @Param({"false", "true"})
+    public boolean cache;
+
+    private HeadlineAnalyzer analyzer;
+    private String[] headlines;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        analyzer = cache ? new CachingHeadlineAnalyzer(Lexicon.defaults(), 4 * CORPUS_SIZE) : new HeadlineAnalyzer();
+        NewsGenerator generator = new NewsGenerator();
+        int parts = "long".equals(corpus) ? 4 : 1;
+        headlines = new String[CORPUS_SIZE];
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            StringBuilder headline = new StringBuilder();
+            for (int p = 0; p < parts; p++) {
+                if (p > 0) {
+                    headline.append(' ');
+                }
+                headline.append(generator.generateNewsItem().getHeadline());
+            }
+            headlines[i] = headline.toString();
+        }
+    }
+
+    @Benchmark
+    public HeadlineAnalyzer.AnalysisResult analyze() {
+        return analyzer.analyze(headlines[next++ & (CORPUS_SIZE - 1)]);
+    }
+}
@@ -0,0 +1,104 @@
+package org.mhh.benchmarks;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.NewsItem;
+import org.mhh.common.NewsItemCodec;
+import org.mhh.feed.NewsGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-item cost of writing and reading a batch of news items with Java serialization (the legacy
+ * feed protocol) and with {@link NewsItemCodec} frames (what {@code ClientHandler} decodes).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NewsItemCodecBenchmark {
+    private static final int BATCH = 256;
+
+    private NewsItem[] items;
+    private ByteArrayOutputStream javaOut;
+    private byte[] javaBytes;
+    private ByteBuffer binary;
+
+    @Setup
+    public void setUp() throws IOException {
+        NewsGenerator generator = new NewsGenerator();
+        items = new NewsItem[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            items[i] = generator.generateNewsItem();
+        }
+        javaOut = new ByteArrayOutputStream(64 * BATCH);
+        javaSerialize();
+        javaBytes = javaOut.toByteArray();
+        binary = ByteBuffer.allocate(NewsItemCodec.MAX_FRAME_BYTES * 2 + 64 * BATCH);
+        binaryEncode();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int javaSerialize() throws IOException {
+        javaOut.reset();
+        ObjectOutputStream out = new ObjectOutputStream(javaOut);
+        for (NewsItem item : items) {
+            out.writeObject(item);
+        }
+        out.flush();
+        return javaOut.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void javaDeserialize(Blackhole blackhole) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(javaBytes));
+        for (int i = 0; i < BATCH; i++) {
+            blackhole.consume(in.readObject());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int binaryEncode() {
+        binary.clear();
+        for (NewsItem item : items) {
+            NewsItemCodec.encode(item, binary);
+        }
+        binary.flip();
+        return binary.remaining();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void binaryDecode(Blackhole blackhole) throws IOException {
+        ByteBuffer in = binary.duplicate();
+        NewsItem item;
+        while ((item = NewsItemCodec.decode(in)) != null) {
+            blackhole.consume(item);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.mhh.benchmarks;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.analyzer.HeadlineAnalyzer;
+import org.mhh.analyzer.NewsAnalyzerServer;
+import org.mhh.common.NewsItem;
+import org.mhh.feed.NewsGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link NewsAnalyzerServer#recordAnalysis} called from 1, 4 and 16 threads at once,
+ * with and without the write-ahead log, to expose contention in the store, statistics and log.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordAnalysisBenchmark {
+    private static final int ITEMS_PER_THREAD = 1024;
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({"false", "true"})
+        public boolean wal;
+
+        AnalyzerFixture fixture;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException, InterruptedException {
+            fixture = new AnalyzerFixture(wal);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws IOException, InterruptedException {
+            fixture.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Items {
+        NewsItem[] items;
+        HeadlineAnalyzer.AnalysisResult[] results;
+        int next;
+
+        @Setup(Level.Trial)
+        public void generate() {
+            NewsGenerator generator = new NewsGenerator();
+            HeadlineAnalyzer analyzer = new HeadlineAnalyzer();
+            items = new NewsItem[ITEMS_PER_THREAD];
+            results = new HeadlineAnalyzer.AnalysisResult[ITEMS_PER_THREAD];
+            for (int i = 0; i < ITEMS_PER_THREAD; i++) {
+                items[i] = generator.generateNewsItem();
+                results[i] = analyzer.analyze(items[i].getHeadline());
+            }
+        }
+    }
+
+    private static void record(Server server, Items items) {
+        int i = items.next++ & (ITEMS_PER_THREAD - 1);
+        server.fixture.getServer().recordAnalysis(items.items[i], items.results[i]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void oneThread(Server server, Items items) {
+        record(server, items);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void fourThreads(Server server, Items items) {
+        record(server, items);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void sixteenThreads(Server server, Items items) {
+        record(server, items);
+    }
+}
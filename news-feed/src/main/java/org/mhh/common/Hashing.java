@@ -0,0 +1,51 @@
+package org.mhh.common;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+/**
+ * 64-bit string hash shared by the result cache, the headline deduplicator and the feed's consistent
+ * hash ring: FNV-1a over the UTF-16 chars, finished with the MurmurHash3 mixer so that both the high
+ * and the low bits are well spread. Not for anything security related.
+ */
+public final class Hashing {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing() {
+    }
+
+    public static long hash64(CharSequence value) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return mix64(h);
+    }
+
+    /**
+     * Like {@link #hash64} with ASCII letters folded to lower case, so values differing only in their
+     * case hash the same.
+     */
+    public static long hash64IgnoreAsciiCase(CharSequence value) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            h ^= c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+            h *= FNV_PRIME;
+        }
+        return mix64(h);
+    }
+
+    // MurmurHash3 fmix64.
+    private static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
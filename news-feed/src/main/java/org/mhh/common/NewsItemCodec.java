@@ -0,0 +1,220 @@
+package org.mhh.common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+/**
+ * Compact binary frame for {@link NewsItem}: varint headline length, UTF-8 headline bytes, one
+ * priority byte. A feed that wants this format sends {@link #HANDSHAKE} as the very first byte of
+ * the connection; anything else is treated as a legacy Java serialization stream (which always
+ * starts with {@code 0xACED}).
+ */
+public final class NewsItemCodec {
+
+    public static final byte HANDSHAKE = (byte) 0x4E;
+    public static final int MAX_HEADLINE_BYTES = 64 * 1024;
+    public static final int MAX_FRAME_BYTES = MAX_HEADLINE_BYTES + 4;
+
+    private NewsItemCodec() {
+    }
+
+    public static int encodedLength(NewsItem item) {
+        return encodedLength(utf8Length(item.getHeadline()));
+    }
+
+    public static int encodedLength(int headlineBytes) {
+        return varintLength(headlineBytes) + headlineBytes + 1;
+    }
+
+    public static void encode(NewsItem item, ByteBuffer out) {
+        byte[] headline = item.getHeadline().getBytes(StandardCharsets.UTF_8);
+        checkHeadlineLength(headline.length);
+        writeVarint(headline.length, out);
+        out.put(headline);
+        out.put((byte) item.getPriority());
+    }
+
+    /**
+     * Encodes a frame from a headline that is already UTF-8: the first {@code length} bytes of {@code headline}.
+     */
+    public static void encode(byte[] headline, int length, int priority, ByteBuffer out) {
+        checkHeadlineLength(length);
+        writeVarint(length, out);
+        out.put(headline, 0, length);
+        out.put((byte) priority);
+    }
+
+    public static void write(NewsItem item, OutputStream out) throws IOException {
+        byte[] headline = item.getHeadline().getBytes(StandardCharsets.UTF_8);
+        checkHeadlineLength(headline.length);
+        int value = headline.length;
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+        out.write(headline);
+        out.write(item.getPriority());
+    }
+
+    /**
+     * Decodes one frame from {@code in}. Returns {@code null} and leaves the position untouched when
+     * the buffer does not yet hold a complete frame.
+     */
+    public static NewsItem decode(ByteBuffer in) throws StreamCorruptedException {
+        int length = readHeadlineLength(in);
+        if (length < 0) {
+            return null;
+        }
+        String headline;
+        if (in.hasArray()) {
+            headline = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            headline = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return newItem(headline, in.get());
+    }
+
+    /**
+     * Reads the headline length of the frame at {@code in}'s position and leaves the position at the
+     * first headline byte, which is followed by the headline and the priority byte. Returns -1 and
+     * leaves the position untouched when the buffer does not yet hold the complete frame.
+     */
+    public static int readHeadlineLength(ByteBuffer in) throws StreamCorruptedException {
+        int start = in.position();
+        int length;
+        try {
+            length = readVarint(in);
+        } catch (BufferUnderflowException e) {
+            in.position(start);
+            return -1;
+        }
+        checkFrameLength(length);
+        if (in.remaining() < length + 1) {
+            in.position(start);
+            return -1;
+        }
+        return length;
+    }
+
+    /**
+     * Blocking counterpart of {@link #decode(ByteBuffer)}. Returns {@code null} on a clean end of
+     * stream between frames.
+     */
+    public static NewsItem read(InputStream in) throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return null;
+        }
+        int length = first & 0x7F;
+        int shift = 7;
+        while ((first & 0x80) != 0) {
+            if (shift > 28) {
+                throw new StreamCorruptedException("Varint length is too long");
+            }
+            first = in.read();
+            if (first < 0) {
+                throw new EOFException("Stream ended inside a frame length");
+            }
+            length |= (first & 0x7F) << shift;
+            shift += 7;
+        }
+        checkFrameLength(length);
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int n = in.read(bytes, offset, length - offset);
+            if (n < 0) {
+                throw new EOFException("Stream ended inside a headline");
+            }
+            offset += n;
+        }
+        int priority = in.read();
+        if (priority < 0) {
+            throw new EOFException("Stream ended before the priority byte");
+        }
+        return newItem(new String(bytes, StandardCharsets.UTF_8), (byte) priority);
+    }
+
+    private static NewsItem newItem(String headline, byte priority) throws StreamCorruptedException {
+        try {
+            return new NewsItem(headline, priority);
+        } catch (IllegalArgumentException e) {
+            throw new StreamCorruptedException("Invalid news item frame: " + e.getMessage());
+        }
+    }
+
+    private static void checkHeadlineLength(int length) {
+        if (length > MAX_HEADLINE_BYTES) {
+            throw new IllegalArgumentException("Headline exceeds " + MAX_HEADLINE_BYTES + " bytes: " + length);
+        }
+    }
+
+    private static void checkFrameLength(int length) throws StreamCorruptedException {
+        if (length < 0 || length > MAX_HEADLINE_BYTES) {
+            throw new StreamCorruptedException("Invalid headline length in frame: " + length);
+        }
+    }
+
+    static void writeVarint(int value, ByteBuffer out) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int readVarint(ByteBuffer in) throws StreamCorruptedException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Varint length is too long");
+    }
+
+    static int varintLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    static int utf8Length(CharSequence s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++; // unpaired surrogates are encoded as '?'
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,118 @@
+package org.mhh.common;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * TCP options and user-space buffer size for one side of a feed connection, read from system
+ * properties under a prefix ({@code analyzer.socket} on the server, {@code feed.socket} on the feed):
+ * <ul>
+ *     <li>{@code tcpNoDelay}: send each flush at once instead of letting Nagle's algorithm hold small
+ *     segments back until the previous one is acknowledged. The feed already coalesces a batch into one
+ *     write, so there is nothing left for Nagle to merge, only a delayed-ACK stall to risk.</li>
+ *     <li>{@code sendBufferBytes}, {@code receiveBufferBytes}: kernel socket buffers; 0 keeps the
+ *     operating system's default and auto-tuning. They are applied before connecting or binding, so a
+ *     window larger than 64 KiB can be negotiated.</li>
+ *     <li>{@code keepAlive}: let the kernel probe idle connections, so a peer that vanished is noticed.</li>
+ *     <li>{@code backlog}: pending connections the listening socket queues before refusing new ones.</li>
+ *     <li>{@code bufferBytes}: the per-connection buffer bytes are gathered in before each write or
+ *     read system call; 0 on the feed writes straight to the socket.</li>
+ * </ul>
+ */
+public final class SocketProfile {
+    public static final int DEFAULT_BACKLOG = 128;
+
+    private final boolean tcpNoDelay;
+    private final int sendBufferBytes;
+    private final int receiveBufferBytes;
+    private final boolean keepAlive;
+    private final int backlog;
+    private final int bufferBytes;
+
+    public SocketProfile(boolean tcpNoDelay, int sendBufferBytes, int receiveBufferBytes, boolean keepAlive, int backlog,
+                         int bufferBytes) {
+        if (sendBufferBytes < 0 || receiveBufferBytes < 0 || backlog < 1 || bufferBytes < 0) {
+            throw new IllegalArgumentException("Socket buffer sizes must not be negative and the backlog must be positive");
+        }
+        this.tcpNoDelay = tcpNoDelay;
+        this.sendBufferBytes = sendBufferBytes;
+        this.receiveBufferBytes = receiveBufferBytes;
+        this.keepAlive = keepAlive;
+        this.backlog = backlog;
+        this.bufferBytes = bufferBytes;
+    }
+
+    /**
+     * Reads {@code <prefix>.tcpNoDelay}, {@code .sendBufferBytes}, {@code .receiveBufferBytes},
+     * {@code .keepAlive}, {@code .backlog} and {@code .bufferBytes}.
+     */
+    public static SocketProfile fromProperties(String prefix, int defaultBufferBytes) {
+        return new SocketProfile(
+                Boolean.parseBoolean(System.getProperty(prefix + ".tcpNoDelay", "true")),
+                Integer.getInteger(prefix + ".sendBufferBytes", 0),
+                Integer.getInteger(prefix + ".receiveBufferBytes", 0),
+                Boolean.parseBoolean(System.getProperty(prefix + ".keepAlive", "true")),
+                Integer.getInteger(prefix + ".backlog", DEFAULT_BACKLOG),
+                Integer.getInteger(prefix + ".bufferBytes", defaultBufferBytes));
+    }
+
+    /**
+     * Applies the options to a socket that is not connected yet, or to one just accepted.
+     */
+    public void apply(Socket socket) throws IOException {
+        socket.setTcpNoDelay(tcpNoDelay);
+        socket.setKeepAlive(keepAlive);
+        if (sendBufferBytes > 0) {
+            socket.setSendBufferSize(sendBufferBytes);
+        }
+        if (receiveBufferBytes > 0) {
+            socket.setReceiveBufferSize(receiveBufferBytes);
+        }
+    }
+
+    /**
+     * Applies the receive buffer to a listening socket before it is bound; accepted sockets inherit it.
+     */
+    public void apply(ServerSocket socket) throws IOException {
+        if (receiveBufferBytes > 0) {
+            socket.setReceiveBufferSize(receiveBufferBytes);
+        }
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public int getSendBufferBytes() {
+        return sendBufferBytes;
+    }
+
+    public int getReceiveBufferBytes() {
+        return receiveBufferBytes;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public int getBufferBytes() {
+        return bufferBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "tcpNoDelay=" + tcpNoDelay
+                + ", sndbuf=" + (sendBufferBytes > 0 ? sendBufferBytes : "os")
+                + ", rcvbuf=" + (receiveBufferBytes > 0 ? receiveBufferBytes : "os")
+                + ", keepAlive=" + keepAlive + ", backlog=" + backlog + ", buffer=" + bufferBytes;
+    }
+}
@@ -0,0 +1,97 @@
+package org.mhh.feed;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.NewsItem;
+import org.mhh.common.NewsItemCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes a generated corpus in both wire formats and prints encode/decode throughput and
+ * bytes per item for each. Correctness is covered by {@code NewsItemCodecTest}.
+ * <p>
+ * Usage: {@code java -cp news-feed.jar org.mhh.feed.CodecComparison [items] [rounds]}
+ */
+public class CodecComparison {
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int itemCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        NewsGenerator generator = new NewsGenerator();
+        NewsItem[] corpus = new NewsItem[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            corpus[i] = generator.generateNewsItem();
+        }
+
+        for (int round = 1; round <= rounds; round++) {
+            System.out.printf("%nRound %d/%d (%d items)%n", round, rounds, itemCount);
+            measureJavaSerialization(corpus);
+            measureBinaryFrames(corpus);
+        }
+    }
+
+    private static void measureJavaSerialization(NewsItem[] items) throws IOException, ClassNotFoundException {
+        long start = System.nanoTime();
+        byte[] bytes = writeJava(items);
+        long encoded = System.nanoTime();
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            for (int i = 0; i < items.length; i++) {
+                in.readObject();
+            }
+        }
+        long decoded = System.nanoTime();
+        report("java", items.length, bytes.length, encoded - start, decoded - encoded);
+    }
+
+    private static void measureBinaryFrames(NewsItem[] items) throws IOException {
+        long start = System.nanoTime();
+        ByteBuffer frames = writeBinary(items);
+        long encoded = System.nanoTime();
+        int bytes = frames.remaining();
+        for (int i = 0; i < items.length; i++) {
+            NewsItemCodec.decode(frames);
+        }
+        long decoded = System.nanoTime();
+        report("binary", items.length, bytes, encoded - start, decoded - encoded);
+    }
+
+    private static byte[] writeJava(NewsItem[] items) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            for (NewsItem item : items) {
+                out.writeObject(item);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ByteBuffer writeBinary(NewsItem[] items) {
+        int size = 0;
+        for (NewsItem item : items) {
+            size += NewsItemCodec.encodedLength(item);
+        }
+        ByteBuffer frames = ByteBuffer.allocate(size);
+        for (NewsItem item : items) {
+            NewsItemCodec.encode(item, frames);
+        }
+        frames.flip();
+        return frames;
+    }
+
+    private static void report(String format, int items, int bytes, long encodeNanos, long decodeNanos) {
+        System.out.printf("  %-7s %6.1f bytes/item | encode %,12.0f items/s | decode %,12.0f items/s%n",
+                format,
+                (double) bytes / items,
+                items / (encodeNanos / 1e9),
+                items / (decodeNanos / 1e9));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,82 @@
+package org.mhh.feed;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.Hashing;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Maps keys to one of a fixed list of nodes by consistent hashing. Every node is placed at
+ * {@link #VIRTUAL_NODES} points of a 64-bit ring, hashed from its name, so nodes get about equal shares
+ * and every feed given the same node list routes a key the same way. A key belongs to the first point at
+ * or after its hash; when that node is unavailable the search continues clockwise, so only the keys of a
+ * failed node move, and they spread over the remaining nodes.
+ */
+public class ConsistentHashRing {
+    static final int VIRTUAL_NODES = 160;
+
+    private final int nodeCount;
+    private final long[] points;
+    private final int[] owners;
+
+    public ConsistentHashRing(List<String> nodeNames) {
+        if (nodeNames.isEmpty() || nodeNames.size() > 0xFFFF) {
+            throw new IllegalArgumentException("A ring needs between 1 and 65535 nodes: " + nodeNames.size());
+        }
+        this.nodeCount = nodeNames.size();
+        long[] placed = new long[nodeCount * VIRTUAL_NODES];
+        for (int node = 0; node < nodeCount; node++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                // Low bits carry the owner so sorting keeps it attached to its point.
+                placed[node * VIRTUAL_NODES + v] = (Hashing.hash64(nodeNames.get(node) + "#" + v) & ~0xFFFFL) | node;
+            }
+        }
+        Arrays.sort(placed);
+        this.points = new long[placed.length];
+        this.owners = new int[placed.length];
+        for (int i = 0; i < placed.length; i++) {
+            points[i] = placed[i];
+            owners[i] = (int) (placed[i] & 0xFFFF);
+        }
+    }
+
+    /**
+     * The node index for {@code key}, skipping nodes {@code available} rejects, or -1 if it rejects them all.
+     */
+    public int nodeFor(CharSequence key, IntPredicate available) {
+        if (nodeCount == 1) {
+            return available.test(0) ? 0 : -1;
+        }
+        int start = Arrays.binarySearch(points, Hashing.hash64(key));
+        if (start < 0) {
+            start = -start - 1;
+        }
+        int owner = owners[start % points.length];
+        if (available.test(owner)) {
+            return owner;
+        }
+        boolean[] rejected = new boolean[nodeCount];
+        rejected[owner] = true;
+        int remaining = nodeCount - 1;
+        for (int i = 1; i < points.length && remaining > 0; i++) {
+            owner = owners[(start + i) % points.length];
+            if (!rejected[owner]) {
+                if (available.test(owner)) {
+                    return owner;
+                }
+                rejected[owner] = true;
+                remaining--;
+            }
+        }
+        return -1;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+}
@@ -0,0 +1,143 @@
+package org.mhh.feed;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.NewsItem;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Streams the rows of an {@code analyzed_news_items.csv}, or of a columnar archive exported to CSV, one
+ * line at a time: {@code "AnalysisTimestamp","Headline",Priority,AnalysisResult} with an ISO offset
+ * timestamp and doubled quotes inside the headline. Header lines are skipped wherever they occur, since
+ * the analyzer appends each run to the same file. Rows that do not parse, or whose headline or
+ * priority a {@link NewsItem} would reject, are skipped and counted.
+ */
+public class CsvReplaySource implements ReplaySource {
+    private static final String HEADER_PREFIX = "AnalysisTimestamp,";
+
+    private final Path file;
+    private long skipped;
+    // The last timestamp parsed in full, without its fraction of a second, which is all that changes
+    // between most consecutive rows.
+    private String cachedSecondsText = "";
+    private long cachedSecondsNanos;
+
+    public CsvReplaySource(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void forEach(Sink sink) throws IOException, InterruptedException {
+        skipped = 0;
+        StringBuilder headline = new StringBuilder(128);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith(HEADER_PREFIX)) {
+                    continue;
+                }
+                if (!readRow(line, reader, headline, sink)) {
+                    skipped++;
+                }
+            }
+        }
+    }
+
+    // Returns false if the row is malformed; a headline with line breaks continues on the following lines.
+    private boolean readRow(String line, BufferedReader reader, StringBuilder headline, Sink sink)
+            throws IOException, InterruptedException {
+        int timestampEnd = line.indexOf('"', 1);
+        if (line.charAt(0) != '"' || timestampEnd < 0 || !line.startsWith(",\"", timestampEnd + 1)) {
+            return false;
+        }
+        long epochNanos = parseTimestamp(line, 1, timestampEnd);
+        if (epochNanos == Long.MIN_VALUE) {
+            return false;
+        }
+
+        headline.setLength(0);
+        int i = timestampEnd + 3;
+        while (true) {
+            if (i >= line.length()) {
+                line = reader.readLine();
+                if (line == null) {
+                    return false;
+                }
+                headline.append('\n');
+                i = 0;
+                continue;
+            }
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    headline.append('"');
+                    i += 2;
+                    continue;
+                }
+                break;
+            }
+            headline.append(c);
+            i++;
+        }
+
+        int priorityStart = i + 2;
+        int priorityEnd = line.indexOf(',', priorityStart);
+        if (priorityStart > line.length() || line.charAt(i + 1) != ',' || priorityEnd < 0) {
+            return false;
+        }
+        NewsItem item;
+        try {
+            item = new NewsItem(headline.toString(), Integer.parseInt(line.substring(priorityStart, priorityEnd)));
+        } catch (IllegalArgumentException e) {
+            return false; // includes NumberFormatException
+        }
+        sink.accept(epochNanos, item);
+        return true;
+    }
+
+    // Returns Long.MIN_VALUE if the text between start and end is not an ISO offset date-time.
+    private long parseTimestamp(String line, int start, int end) {
+        int dot = line.indexOf('.', start);
+        int fractionEnd = dot + 1;
+        while (dot >= 0 && fractionEnd < end && fractionEnd - dot <= 9 && Character.isDigit(line.charAt(fractionEnd))) {
+            fractionEnd++;
+        }
+        if (dot >= 0 && dot < end && fractionEnd > dot + 1
+                && cachedSecondsText.length() == end - start - (fractionEnd - dot)
+                && line.regionMatches(start, cachedSecondsText, 0, dot - start)
+                && line.regionMatches(fractionEnd, cachedSecondsText, dot - start, end - fractionEnd)) {
+            long fraction = 0;
+            for (int i = dot + 1; i < dot + 10; i++) {
+                fraction = fraction * 10 + (i < fractionEnd ? line.charAt(i) - '0' : 0);
+            }
+            return cachedSecondsNanos + fraction;
+        }
+        try {
+            String text = line.substring(start, end);
+            Instant timestamp = OffsetDateTime.parse(text).toInstant();
+            long epochSecondNanos = Math.multiplyExact(timestamp.getEpochSecond(), 1_000_000_000L);
+            if (dot >= 0 && dot < end && fractionEnd > dot + 1) {
+                cachedSecondsText = text.substring(0, dot - start) + text.substring(fractionEnd - start);
+                cachedSecondsNanos = epochSecondNanos;
+            }
+            return epochSecondNanos + timestamp.getNano();
+        } catch (DateTimeParseException | ArithmeticException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    @Override
+    public long getSkippedCount() {
+        return skipped;
+    }
+}
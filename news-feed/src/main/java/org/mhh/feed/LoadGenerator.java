@@ -0,0 +1,184 @@
+package org.mhh.feed;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.LatencyHistogram;
+import org.mhh.common.NewsItem;
+import org.mhh.common.SocketProfile;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load-generator mode of the mock feed: N concurrent connections, each writing batches of items
+ * with a single flush per batch, either paced to a total target rate or unthrottled. With several
+ * analyzer nodes every connection is a {@link RoutingNewsSender} holding one socket per node.
+ * <p>
+ * Send latency is measured per batch from the moment the batch was <em>due</em> according to the
+ * pacing schedule until its flush returns, so a feed that falls behind the target rate reports the
+ * backlog instead of hiding it. In unthrottled mode a batch is due when it starts.
+ */
+public class LoadGenerator {
+    private static final int CORPUS_SIZE = 16 * 1024;
+
+    private final List<InetSocketAddress> nodes;
+    private final NewsItemSender.Protocol protocol;
+    private final SocketProfile socketProfile;
+    private final int connections;
+    private final long itemsPerConnection;
+    private final double targetRate;
+    private final int batchSize;
+    private final long writeTimeoutMillis;
+    private final long retryMillis;
+
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    private final AtomicLong itemsSent = new AtomicLong();
+    private final AtomicInteger failedConnections = new AtomicInteger();
+    private final AtomicLongArray sentPerNode;
+    private final AtomicLong failovers = new AtomicLong();
+    private final AtomicLong rerouted = new AtomicLong();
+
+    public LoadGenerator(List<InetSocketAddress> nodes, NewsItemSender.Protocol protocol, SocketProfile socketProfile,
+                         int connections, long itemsPerConnection, double targetRate, int batchSize, long writeTimeoutMillis, long retryMillis) {
+        if (connections < 1 || batchSize < 1 || itemsPerConnection < 1 || targetRate < 0) {
+            throw new IllegalArgumentException("connections, batch size and item count must be positive and the rate non-negative");
+        }
+        this.nodes = nodes;
+        this.sentPerNode = new AtomicLongArray(nodes.size());
+        this.protocol = protocol;
+        this.socketProfile = socketProfile;
+        this.connections = connections;
+        this.itemsPerConnection = itemsPerConnection;
+        this.targetRate = targetRate;
+        this.batchSize = batchSize;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.retryMillis = retryMillis;
+    }
+
+    public void run() {
+        NewsItem[] corpus = buildCorpus();
+        System.out.printf("Load generator: %d connection(s) x %,d items, batch size %d, target rate %s, protocol %s, %s%n",
+                connections, itemsPerConnection, batchSize,
+                targetRate > 0 ? String.format("%,.0f items/s", targetRate) : "unthrottled", protocol,
+                nodes.size() == 1 ? "analyzer " + nodes.get(0) : nodes.size() + " analyzer nodes " + nodes);
+        System.out.println("Socket profile: " + socketProfile);
+
+        List<Thread> senders = new ArrayList<>(connections);
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            final int connectionIndex = i;
+            Thread sender = new Thread(() -> sendFrom(connectionIndex, corpus), "feed-sender-" + i);
+            senders.add(sender);
+            sender.start();
+        }
+        for (Thread sender : senders) {
+            try {
+                sender.join();
+            } catch (InterruptedException e) {
+                System.err.println("Load generator interrupted while waiting for senders.");
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        printReport(System.nanoTime() - start);
+    }
+
+    private NewsItem[] buildCorpus() {
+        NewsGenerator generator = new NewsGenerator();
+        NewsItem[] corpus = new NewsItem[(int) Math.min(CORPUS_SIZE, itemsPerConnection)];
+        for (int i = 0; i < corpus.length; i++) {
+            corpus[i] = generator.generateNewsItem();
+        }
+        return corpus;
+    }
+
+    private void sendFrom(int connectionIndex, NewsItem[] corpus) {
+        long batchIntervalNanos = targetRate > 0 ? (long) (batchSize * connections * 1e9 / targetRate) : 0;
+        int next = (connectionIndex * 7919) % corpus.length; // stagger connections through the corpus
+
+        RoutingNewsSender out = new RoutingNewsSender(nodes, protocol, socketProfile, writeTimeoutMillis, retryMillis);
+        try {
+            out.connect();
+            long scheduleStart = System.nanoTime();
+            long sent = 0;
+            for (long batch = 0; sent < itemsPerConnection; batch++) {
+                long due = scheduleStart + batch * batchIntervalNanos;
+                if (batchIntervalNanos > 0) {
+                    waitUntil(due);
+                } else {
+                    due = System.nanoTime();
+                }
+                int inBatch = (int) Math.min(batchSize, itemsPerConnection - sent);
+                for (int i = 0; i < inBatch; i++) {
+                    out.write(corpus[next]);
+                    next = next + 1 == corpus.length ? 0 : next + 1;
+                }
+                out.flush();
+                sendLatency.record(System.nanoTime() - due);
+                sent += inBatch;
+                itemsSent.addAndGet(inBatch);
+            }
+        } catch (IOException e) {
+            failedConnections.incrementAndGet();
+            System.err.println("Connection " + connectionIndex + " to " + nodes + " failed: " + e.getMessage());
+        } finally {
+            for (int i = 0; i < nodes.size(); i++) {
+                sentPerNode.addAndGet(i, out.getSentCount(i));
+            }
+            failovers.addAndGet(out.getFailoverCount());
+            rerouted.addAndGet(out.getReroutedCount());
+            try {
+                out.close();
+            } catch (IOException e) {
+                // the run is over; a node that failed at the very end was already reported
+            }
+        }
+    }
+
+    private static void waitUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private void printReport(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long total = itemsSent.get();
+        System.out.println();
+        System.out.println("--- Load Generator Report ---");
+        System.out.printf("  Items sent:        %,d (%d connection(s), %d failed)%n", total, connections, failedConnections.get());
+        if (nodes.size() > 1) {
+            StringBuilder perNode = new StringBuilder();
+            for (int i = 0; i < nodes.size(); i++) {
+                perNode.append(i > 0 ? ", " : "").append(nodes.get(i).getHostString()).append(':').append(nodes.get(i).getPort())
+                        .append('=').append(String.format("%,d", sentPerNode.get(i)));
+            }
+            System.out.printf("  Per node:          %s%n", perNode);
+            System.out.printf("  Failovers:         %,d (%,d unflushed items re-routed)%n", failovers.get(), rerouted.get());
+        }
+        System.out.printf("  Elapsed:           %.3f s%n", seconds);
+        System.out.printf("  Achieved rate:     %,.0f items/s%n", seconds > 0 ? total / seconds : 0.0);
+        System.out.printf("  Batches:           %,d of up to %d items%n", sendLatency.getCount(), batchSize);
+        System.out.printf("  Send latency (us): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f mean=%.1f%n",
+                micros(sendLatency.getValueAtPercentile(50)),
+                micros(sendLatency.getValueAtPercentile(90)),
+                micros(sendLatency.getValueAtPercentile(99)),
+                micros(sendLatency.getValueAtPercentile(99.9)),
+                micros(sendLatency.getMax()),
+                sendLatency.getMean() / TimeUnit.MICROSECONDS.toNanos(1));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
@@ -6,44 +6,82 @@ package org.mhh.feed;
 
 
 import org.mhh.common.NewsItem;
+import org.mhh.common.SocketProfile;
 
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.net.UnknownHostException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.List;
 
 public class MockNewsFeedApp {
 
-    private static final String DEFAULT_ANALYZER_HOST = "localhost";
-    private static final int DEFAULT_ANALYZER_PORT = 9090;
+    static final String DEFAULT_ANALYZER_HOST = "localhost";
+    static final int DEFAULT_ANALYZER_PORT = 9090;
     private static final int NEWS_ITEMS_TO_SEND = 5;
     private static final long SEND_INTERVAL_MS = 2000;
+    private static final long DEFAULT_LOAD_ITEMS_PER_CONNECTION = 100_000;
+    static final int DEFAULT_LOAD_BATCH_SIZE = 100;
+    static final long DEFAULT_WRITE_TIMEOUT_MS = 30_000;
+    static final long DEFAULT_RETRY_MS = 2000;
 
     public static void main(String[] args) {
         String host = System.getProperty("analyzer.host", DEFAULT_ANALYZER_HOST);
         int port = Integer.parseInt(System.getProperty("analyzer.port", String.valueOf(DEFAULT_ANALYZER_PORT)));
+        NewsItemSender.Protocol protocol = NewsItemSender.Protocol.fromProperty(System.getProperty("feed.protocol"));
+        SocketProfile socketProfile;
+        try {
+            socketProfile = SocketProfile.fromProperties("feed.socket", NewsItemSender.DEFAULT_BUFFER_SIZE);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: Invalid feed.socket settings: " + e.getMessage());
+            return;
+        }
+        long writeTimeoutMs = Long.getLong("feed.writeTimeoutMs", DEFAULT_WRITE_TIMEOUT_MS);
+        long retryMs = Long.getLong("feed.retryMs", DEFAULT_RETRY_MS);
+        List<InetSocketAddress> nodes;
+        try {
+            nodes = RoutingNewsSender.parseNodes(System.getProperty("feed.nodes", host + ":" + port));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: Invalid feed.nodes: " + e.getMessage());
+            return;
+        }
+
+        if ("replay".equalsIgnoreCase(System.getProperty("feed.mode"))) {
+            replay(System.getProperty("feed.replay.file"));
+            return;
+        }
+
+        if ("load".equalsIgnoreCase(System.getProperty("feed.mode"))) {
+            new LoadGenerator(nodes, protocol, socketProfile,
+                    Integer.getInteger("feed.connections", 1),
+                    Long.getLong("feed.items", DEFAULT_LOAD_ITEMS_PER_CONNECTION),
+                    Double.parseDouble(System.getProperty("feed.rate", "0")),
+                    Integer.getInteger("feed.batchSize", DEFAULT_LOAD_BATCH_SIZE), writeTimeoutMs, retryMs).run();
+            System.out.println("Mock News Feed finished.");
+            return;
+        }
 
+        int itemsToSend = Integer.getInteger("feed.items", NEWS_ITEMS_TO_SEND);
+        long sendIntervalMs = Long.getLong("feed.intervalMs", SEND_INTERVAL_MS);
         NewsGenerator generator = new NewsGenerator();
 
         System.out.println("Mock News Feed starting...");
-        System.out.println("Attempting to connect to Analyzer at " + host + ":" + port);
-
-        try (Socket socket = new Socket(host, port);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
+        System.out.println("Attempting to connect to Analyzer at " + nodes + " using the " + protocol + " protocol");
 
+        try (RoutingNewsSender out = new RoutingNewsSender(nodes, protocol, socketProfile, writeTimeoutMs, retryMs)) {
+            out.connect();
             System.out.println("Successfully connected to News Analyzer.");
 
-            for (int i = 0; i < NEWS_ITEMS_TO_SEND; i++) {
+            for (int i = 0; i < itemsToSend; i++) {
                 NewsItem itemToSend = generator.generateNewsItem();
-                System.out.println("Generated (" + (i + 1) + "/" + NEWS_ITEMS_TO_SEND + "): " + itemToSend.getHeadline());
+                System.out.println("Generated (" + (i + 1) + "/" + itemsToSend + "): " + itemToSend.getHeadline());
                 System.out.println("Sending news item to analyzer...");
-                out.writeObject(itemToSend);
+                out.write(itemToSend);
                 out.flush();
                 System.out.println("News item sent successfully.");
 
-                if (i < NEWS_ITEMS_TO_SEND - 1) {
+                if (i < itemsToSend - 1) {
                     try {
-                        Thread.sleep(SEND_INTERVAL_MS);
+                        Thread.sleep(sendIntervalMs);
                     } catch (InterruptedException e) {
                         System.err.println("Feed interrupted while waiting.");
                         Thread.currentThread().interrupt();
@@ -51,19 +89,39 @@ public class MockNewsFeedApp {
                     }
                 }
             }
-            System.out.println("Finished sending " + NEWS_ITEMS_TO_SEND + " news items.");
+            System.out.println("Finished sending " + itemsToSend + " news items.");
 
-        } catch (UnknownHostException e) {
-            System.err.println("Error: Analyzer host not found: " + host + " (" + e.getMessage() + ")");
         } catch (IOException e) {
-            System.err.println("Error connecting or sending data to Analyzer at " + host + ":" + port);
+            System.err.println("Error connecting or sending data to Analyzer at " + nodes);
             System.err.println("Message: " + e.getMessage());
         } catch (SecurityException e) {
-            System.err.println("Security Exception connecting to " + host + ":" + port + " (" + e.getMessage() + ")");
-        } catch (IllegalArgumentException e) {
-            System.err.println("Error: Invalid port number: " + port + " (" + e.getMessage() + ")");
+            System.err.println("Security Exception connecting to " + nodes + " (" + e.getMessage() + ")");
         }
 
         System.out.println("Mock News Feed finished.");
     }
+
+    private static void replay(String file) {
+        if (file == null) {
+            System.err.println("Error: feed.replay.file must name the CSV file to replay.");
+            return;
+        }
+        if (file.endsWith(".ncol")) {
+            System.err.println("Error: columnar archives are replayed with the analyzer jar: ColumnarArchiveTool replay " + file);
+            return;
+        }
+        ReplayFeed replay;
+        try {
+            replay = ReplayFeed.fromProperties();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: Invalid replay settings: " + e.getMessage());
+            return;
+        }
+        try {
+            replay.run(new CsvReplaySource(Paths.get(file)), file);
+        } catch (IOException e) {
+            System.err.println("Error reading " + file + ": " + e.getMessage());
+        }
+        System.out.println("Mock News Feed finished.");
+    }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+package org.mhh.feed;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.NewsItem;
+import org.mhh.common.NewsItemCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Locale;
+
+/**
+ * Writes news items to an analyzer connection in either the compact binary frame format or the
+ * legacy Java serialization format. Nothing is sent until {@link #flush()} is called: both formats
+ * are gathered in one buffer per connection, so a flushed batch reaches the socket in as few writes
+ * as the buffer allows.
+ */
+public class NewsItemSender implements Closeable {
+
+    public enum Protocol {
+        BINARY, JAVA_SERIALIZATION;
+
+        public static Protocol fromProperty(String value) {
+            if (value == null || value.equalsIgnoreCase("binary")) {
+                return BINARY;
+            }
+            if (value.equalsIgnoreCase("java")) {
+                return JAVA_SERIALIZATION;
+            }
+            throw new IllegalArgumentException("Unknown feed protocol '" + value + "', expected binary or java");
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    private final Protocol protocol;
+    private final OutputStream binaryOut;
+    private final ObjectOutputStream objectOut;
+    private boolean resetPending;
+
+    public NewsItemSender(OutputStream out, Protocol protocol) throws IOException {
+        this(out, protocol, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize bytes gathered before they are written to {@code out}; 0 writes through
+     */
+    public NewsItemSender(OutputStream out, Protocol protocol, int bufferSize) throws IOException {
+        this.protocol = protocol;
+        OutputStream buffered = bufferSize > 0 ? new BufferedOutputStream(out, bufferSize) : out;
+        if (protocol == Protocol.BINARY) {
+            this.binaryOut = buffered;
+            this.objectOut = null;
+            binaryOut.write(NewsItemCodec.HANDSHAKE);
+        } else {
+            this.binaryOut = null;
+            this.objectOut = new ObjectOutputStream(buffered);
+        }
+    }
+
+    /**
+     * Sender on {@code socket} whose writes fail with a timeout once they have been blocked for
+     * {@code writeTimeoutMillis}; 0 means writes may block indefinitely.
+     */
+    public NewsItemSender(Socket socket, Protocol protocol, long writeTimeoutMillis) throws IOException {
+        this(socket, protocol, writeTimeoutMillis, DEFAULT_BUFFER_SIZE);
+    }
+
+    public NewsItemSender(Socket socket, Protocol protocol, long writeTimeoutMillis, int bufferSize) throws IOException {
+        this(writeTimeoutMillis > 0 ? new WriteTimeoutOutputStream(socket, writeTimeoutMillis) : socket.getOutputStream(), protocol,
+                bufferSize);
+    }
+
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
+    public void write(NewsItem item) throws IOException {
+        if (binaryOut != null) {
+            NewsItemCodec.write(item, binaryOut);
+        } else {
+            // Forget the previous batch's objects so a repeated item or headline is sent in full
+            // rather than as a back-reference, and the handle tables on both ends stay bounded. The
+            // reset goes out just ahead of the next object, never as the last bytes of a flush.
+            if (resetPending) {
+                objectOut.reset();
+                resetPending = false;
+            }
+            objectOut.writeObject(item);
+        }
+    }
+
+    public void flush() throws IOException {
+        if (binaryOut != null) {
+            binaryOut.flush();
+        } else {
+            objectOut.flush();
+            resetPending = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (binaryOut != null) {
+            binaryOut.close();
+        } else {
+            objectOut.close();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package org.mhh.feed;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.LatencyHistogram;
+import org.mhh.common.NewsItem;
+import org.mhh.common.SocketProfile;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends a recording back to the analyzer with its original timing: each item is due at its recorded
+ * offset from the first item divided by the speed factor, so 1 replays in real time, 10 ten times
+ * faster, and "max" (0) as fast as the connections take them. Gaps longer than {@code maxGapMillis} of
+ * recorded time, such as the pause between two runs appended to one CSV, are shortened to it, and
+ * timestamps that go backwards count as no gap.
+ * <p>
+ * One thread reads the {@link ReplaySource} and hands items out round robin, when they are due, to
+ * {@code connections} sender threads through small bounded queues; a sender writes whatever has
+ * queued, up to {@code batchSize} items, and flushes. A reader that falls behind schedule, because the
+ * connections cannot keep up, reports it as schedule lag instead of skipping ahead. Send latency is
+ * measured per batch from the moment its first item was due until the flush returns, as in
+ * {@link LoadGenerator}.
+ */
+public class ReplayFeed {
+    private static final int QUEUED_BATCHES_PER_CONNECTION = 4;
+    private static final Due END = new Due(null, 0);
+
+    private final List<InetSocketAddress> nodes;
+    private final NewsItemSender.Protocol protocol;
+    private final SocketProfile socketProfile;
+    private final int connections;
+    private final double speed;
+    private final long maxGapNanos;
+    private final int batchSize;
+    private final long writeTimeoutMillis;
+    private final long retryMillis;
+
+    private final LatencyHistogram scheduleLag = new LatencyHistogram();
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    private final AtomicLong itemsSent = new AtomicLong();
+    private final AtomicLong itemsDropped = new AtomicLong();
+    private final AtomicInteger failedConnections = new AtomicInteger();
+    private long itemsRead;
+    private long recordedSpanNanos;
+
+    private static final class Due {
+        final NewsItem item;
+        final long dueNanos;
+
+        Due(NewsItem item, long dueNanos) {
+            this.item = item;
+            this.dueNanos = dueNanos;
+        }
+    }
+
+    // Stops the source's forEach once no connection is left to send to; the sink cannot return early.
+    private static final class AllConnectionsFailed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        AllConnectionsFailed() {
+            super("every connection failed", null, false, false);
+        }
+    }
+
+    /**
+     * @param speed        recorded time divided by replay time; 0 sends as fast as possible
+     * @param maxGapMillis longest pause in recorded time that is replayed; 0 keeps every pause
+     */
+    public ReplayFeed(List<InetSocketAddress> nodes, NewsItemSender.Protocol protocol, SocketProfile socketProfile,
+                      int connections, double speed, long maxGapMillis, int batchSize, long writeTimeoutMillis, long retryMillis) {
+        if (connections < 1 || batchSize < 1 || speed < 0 || maxGapMillis < 0) {
+            throw new IllegalArgumentException("connections and batch size must be positive and the speed and gap non-negative");
+        }
+        this.nodes = nodes;
+        this.protocol = protocol;
+        this.socketProfile = socketProfile;
+        this.connections = connections;
+        this.speed = speed;
+        this.maxGapNanos = TimeUnit.MILLISECONDS.toNanos(maxGapMillis);
+        this.batchSize = batchSize;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.retryMillis = retryMillis;
+    }
+
+    /**
+     * A replay configured like the other feed modes: {@code feed.nodes} (or {@code analyzer.host} and
+     * {@code analyzer.port}), {@code feed.protocol}, {@code feed.socket.*}, {@code feed.connections},
+     * {@code feed.batchSize}, {@code feed.writeTimeoutMs} and {@code feed.retryMs}, plus
+     * {@code feed.replay.speed} and {@code feed.replay.maxGapMillis}.
+     */
+    public static ReplayFeed fromProperties() {
+        String host = System.getProperty("analyzer.host", MockNewsFeedApp.DEFAULT_ANALYZER_HOST);
+        int port = Integer.getInteger("analyzer.port", MockNewsFeedApp.DEFAULT_ANALYZER_PORT);
+        return new ReplayFeed(
+                RoutingNewsSender.parseNodes(System.getProperty("feed.nodes", host + ":" + port)),
+                NewsItemSender.Protocol.fromProperty(System.getProperty("feed.protocol")),
+                SocketProfile.fromProperties("feed.socket", NewsItemSender.DEFAULT_BUFFER_SIZE),
+                Integer.getInteger("feed.connections", 1),
+                parseSpeed(System.getProperty("feed.replay.speed", "1")),
+                Long.getLong("feed.replay.maxGapMillis", 0L),
+                Integer.getInteger("feed.batchSize", MockNewsFeedApp.DEFAULT_LOAD_BATCH_SIZE),
+                Long.getLong("feed.writeTimeoutMs", MockNewsFeedApp.DEFAULT_WRITE_TIMEOUT_MS),
+                Long.getLong("feed.retryMs", MockNewsFeedApp.DEFAULT_RETRY_MS));
+    }
+
+    /**
+     * Parses a speed factor such as {@code 1}, {@code 10}, {@code 0.5} or {@code max}.
+     */
+    public static double parseSpeed(String value) {
+        String trimmed = value.trim().toLowerCase(Locale.ROOT);
+        if (trimmed.equals("max")) {
+            return 0;
+        }
+        if (trimmed.endsWith("x")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        double speed = Double.parseDouble(trimmed);
+        if (speed < 0 || Double.isNaN(speed) || Double.isInfinite(speed)) {
+            throw new IllegalArgumentException("Replay speed must be a non-negative factor or 'max': " + value);
+        }
+        return speed;
+    }
+
+    public void run(ReplaySource source, String description) throws IOException {
+        System.out.printf("Replay: %s at %s over %d connection(s), batch size %d, protocol %s, %s%n",
+                description, speed > 0 ? speed + "x" : "maximum speed", connections, batchSize, protocol,
+                nodes.size() == 1 ? "analyzer " + nodes.get(0) : nodes.size() + " analyzer nodes " + nodes);
+        System.out.println("Socket profile: " + socketProfile);
+
+        List<BlockingQueue<Due>> queues = new ArrayList<>(connections);
+        List<Thread> senders = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            BlockingQueue<Due> queue = new ArrayBlockingQueue<>(batchSize * QUEUED_BATCHES_PER_CONNECTION);
+            final int connectionIndex = i;
+            Thread sender = new Thread(() -> sendFrom(connectionIndex, queue), "feed-replay-" + i);
+            queues.add(queue);
+            senders.add(sender);
+            sender.start();
+        }
+
+        long start = System.nanoTime();
+        try {
+            source.forEach(new ReplaySource.Sink() {
+                private boolean started;
+                private long previous;
+                private long offsetNanos;
+                private int next;
+
+                @Override
+                public void accept(long epochNanos, NewsItem item) throws InterruptedException {
+                    if (failedConnections.get() == connections) {
+                        throw new AllConnectionsFailed();
+                    }
+                    if (!started) {
+                        started = true;
+                        previous = epochNanos;
+                    }
+                    long gap = epochNanos - previous;
+                    previous = epochNanos;
+                    if (gap > 0) {
+                        offsetNanos += maxGapNanos > 0 ? Math.min(gap, maxGapNanos) : gap;
+                    }
+                    long due;
+                    if (speed > 0) {
+                        due = start + (long) (offsetNanos / speed);
+                        waitUntil(due);
+                        scheduleLag.record(System.nanoTime() - due);
+                    } else {
+                        due = System.nanoTime();
+                    }
+                    queues.get(next).put(new Due(item, due));
+                    next = next + 1 == connections ? 0 : next + 1;
+                    itemsRead++;
+                    recordedSpanNanos = offsetNanos;
+                }
+            });
+            for (BlockingQueue<Due> queue : queues) {
+                queue.put(END);
+            }
+        } catch (AllConnectionsFailed e) {
+            System.err.println("Every connection failed; replay stopped.");
+            stopSenders(queues);
+        } catch (InterruptedException e) {
+            System.err.println("Replay interrupted.");
+            stopSenders(queues);
+        } catch (IOException | RuntimeException | Error e) {
+            // The senders only stop at END, so without it the joins below would wait forever.
+            stopSenders(queues);
+            throw e;
+        } finally {
+            for (Thread sender : senders) {
+                try {
+                    sender.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        printReport(source, System.nanoTime() - start);
+    }
+
+    private static void stopSenders(List<BlockingQueue<Due>> queues) {
+        for (BlockingQueue<Due> queue : queues) {
+            queue.clear();
+            queue.offer(END);
+        }
+    }
+
+    private void sendFrom(int connectionIndex, BlockingQueue<Due> queue) {
+        RoutingNewsSender out = new RoutingNewsSender(nodes, protocol, socketProfile, writeTimeoutMillis, retryMillis);
+        List<Due> batch = new ArrayList<>(batchSize);
+        boolean end = false;
+        try {
+            out.connect();
+            while (!end) {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                if (batch.get(batch.size() - 1) == END) {
+                    batch.remove(batch.size() - 1);
+                    end = true;
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (Due due : batch) {
+                    out.write(due.item);
+                }
+                out.flush();
+                sendLatency.record(System.nanoTime() - batch.get(0).dueNanos);
+                itemsSent.addAndGet(batch.size());
+                batch.clear();
+            }
+        } catch (IOException e) {
+            connectionFailed(connectionIndex, e.getMessage(), batch, end ? null : queue);
+        } catch (RuntimeException e) {
+            connectionFailed(connectionIndex, e.toString(), batch, end ? null : queue);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // the replay is over for this connection
+            }
+        }
+    }
+
+    // queue is null if the connection already took its END.
+    private void connectionFailed(int connectionIndex, String reason, List<Due> batch, BlockingQueue<Due> queue) {
+        failedConnections.incrementAndGet();
+        System.err.println("Connection " + connectionIndex + " to " + nodes + " failed: " + reason);
+        itemsDropped.addAndGet(batch.size());
+        if (queue != null) {
+            discardUntilEnd(queue);
+        }
+    }
+
+    // Keeps the reader from blocking on a connection that is gone.
+    private void discardUntilEnd(BlockingQueue<Due> queue) {
+        try {
+            while (queue.take() != END) {
+                itemsDropped.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(long deadlineNanos) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private void printReport(ReplaySource source, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long sent = itemsSent.get();
+        System.out.println();
+        System.out.println("--- Replay Report ---");
+        System.out.printf("  Items read:        %,d (%,d unreadable rows skipped)%n", itemsRead, source.getSkippedCount());
+        System.out.printf("  Items sent:        %,d (%d connection(s), %d failed, %,d items dropped)%n",
+                sent, connections, failedConnections.get(), itemsDropped.get());
+        System.out.printf("  Recorded span:     %.3f s, replayed in %.3f s (%.1fx)%n",
+                recordedSpanNanos / 1e9, seconds, seconds > 0 ? recordedSpanNanos / 1e9 / seconds : 0.0);
+        System.out.printf("  Achieved rate:     %,.0f items/s%n", seconds > 0 ? sent / seconds : 0.0);
+        if (speed > 0) {
+            System.out.printf("  Schedule lag (us): p50=%.1f p99=%.1f max=%.1f%n",
+                    micros(scheduleLag.getValueAtPercentile(50)), micros(scheduleLag.getValueAtPercentile(99)),
+                    micros(scheduleLag.getMax()));
+        }
+        System.out.printf("  Batches:           %,d of up to %d items%n", sendLatency.getCount(), batchSize);
+        System.out.printf("  Send latency (us): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f mean=%.1f%n",
+                micros(sendLatency.getValueAtPercentile(50)),
+                micros(sendLatency.getValueAtPercentile(90)),
+                micros(sendLatency.getValueAtPercentile(99)),
+                micros(sendLatency.getValueAtPercentile(99.9)),
+                micros(sendLatency.getMax()),
+                sendLatency.getMean() / TimeUnit.MICROSECONDS.toNanos(1));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
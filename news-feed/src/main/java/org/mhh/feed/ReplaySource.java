@@ -0,0 +1,36 @@
+package org.mhh.feed;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.NewsItem;
+
+import java.io.IOException;
+
+/**
+ * A recording of analyzed news items for {@link ReplayFeed}, such as an {@code analyzed_news_items.csv}
+ * ({@link CsvReplaySource}) or a columnar archive. Items are streamed from disk in recorded order, never
+ * loaded all at once, so a recording can be much larger than the heap.
+ */
+public interface ReplaySource {
+
+    interface Sink {
+        /**
+         * Receives one recorded item. May block, which holds the source back.
+         */
+        void accept(long epochNanos, NewsItem item) throws InterruptedException;
+    }
+
+    /**
+     * Passes every recorded item to {@code sink} with the time it was analyzed.
+     */
+    void forEach(Sink sink) throws IOException, InterruptedException;
+
+    /**
+     * Rows the last {@link #forEach} skipped because they could not be read as an item.
+     */
+    default long getSkippedCount() {
+        return 0;
+    }
+}
@@ -0,0 +1,244 @@
+package org.mhh.feed;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.NewsItem;
+import org.mhh.common.SocketProfile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends news items to a cluster of analyzers, one connection per node, each headline to the node the
+ * {@link ConsistentHashRing} assigns it, so a headline always reaches the same node while that node is
+ * up. A node whose write or flush fails is marked down; its share of the ring falls to the next nodes,
+ * and the items written to it since its last successful flush are sent there instead. Items the
+ * operating system had already accepted for a node that then dies cannot be recovered, since analyzers
+ * do not acknowledge them. A down node is reconnected at most once per {@code retryMillis} and takes
+ * its headlines back as soon as it is up.
+ * <p>
+ * Like {@link NewsItemSender}, nothing is sent until {@link #flush()} is called. Not thread-safe.
+ */
+public class RoutingNewsSender implements Closeable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private final Node[] nodes;
+    private final ConsistentHashRing ring;
+    private final NewsItemSender.Protocol protocol;
+    private final SocketProfile socketProfile;
+    private final long writeTimeoutMillis;
+    private final long retryMillis;
+    private int downNodes;
+    private long failovers;
+    private long rerouted;
+
+    private static final class Node {
+        final InetSocketAddress address;
+        final List<NewsItem> unflushed = new ArrayList<>();
+        NewsItemSender sender; // null while down
+        long retryAtMillis;
+        long sent;
+
+        Node(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        String name() {
+            return address.getHostString() + ":" + address.getPort();
+        }
+    }
+
+    public RoutingNewsSender(List<InetSocketAddress> addresses, NewsItemSender.Protocol protocol, SocketProfile socketProfile,
+                             long writeTimeoutMillis, long retryMillis) {
+        this.nodes = new Node[addresses.size()];
+        List<String> names = new ArrayList<>(addresses.size());
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Node(addresses.get(i));
+            names.add(nodes[i].name());
+        }
+        this.ring = new ConsistentHashRing(names);
+        this.downNodes = nodes.length;
+        this.protocol = protocol;
+        this.socketProfile = socketProfile;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.retryMillis = retryMillis;
+    }
+
+    /**
+     * Parses {@code host:port[,host:port...]}.
+     */
+    public static List<InetSocketAddress> parseNodes(String value) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String node : value.split(",")) {
+            String trimmed = node.trim();
+            int colon = trimmed.lastIndexOf(':');
+            if (colon <= 0 || colon == trimmed.length() - 1) {
+                throw new IllegalArgumentException("Expected host:port, got '" + trimmed + "'");
+            }
+            addresses.add(new InetSocketAddress(trimmed.substring(0, colon), Integer.parseInt(trimmed.substring(colon + 1))));
+        }
+        return addresses;
+    }
+
+    /**
+     * Connects to every node; fails only if none of them can be reached.
+     */
+    public void connect() throws IOException {
+        IOException lastFailure = null;
+        for (Node node : nodes) {
+            try {
+                open(node);
+            } catch (IOException e) {
+                lastFailure = e;
+                node.retryAtMillis = System.currentTimeMillis() + retryMillis;
+                if (nodes.length > 1) {
+                    System.err.println("Analyzer node " + node.name() + " is not reachable (" + e.getMessage() + "); routing around it.");
+                }
+            }
+        }
+        if (downNodes == nodes.length) {
+            throw lastFailure != null ? lastFailure : new IOException("No analyzer nodes configured");
+        }
+    }
+
+    public void write(NewsItem item) throws IOException {
+        if (downNodes > 0) {
+            reconnectDueNodes();
+        }
+        while (true) {
+            int index = ring.nodeFor(item.getHeadline(), i -> nodes[i].sender != null);
+            if (index < 0) {
+                throw new IOException("No analyzer node is reachable");
+            }
+            Node node = nodes[index];
+            try {
+                node.sender.write(item);
+                node.unflushed.add(item);
+                return;
+            } catch (IOException e) {
+                fail(node, e);
+            }
+        }
+    }
+
+    public void flush() throws IOException {
+        boolean pending = true;
+        while (pending) {
+            pending = false;
+            for (Node node : nodes) {
+                if (node.sender == null || node.unflushed.isEmpty()) {
+                    continue;
+                }
+                try {
+                    node.sender.flush();
+                    node.sent += node.unflushed.size();
+                    node.unflushed.clear();
+                } catch (IOException e) {
+                    fail(node, e);
+                    pending = true; // its items went to other nodes, which may already have been flushed
+                }
+            }
+        }
+    }
+
+    private void fail(Node node, IOException cause) throws IOException {
+        failovers++;
+        closeQuietly(node);
+        node.retryAtMillis = System.currentTimeMillis() + retryMillis;
+        List<NewsItem> orphaned = new ArrayList<>(node.unflushed);
+        node.unflushed.clear();
+        System.err.println("Analyzer node " + node.name() + " failed (" + cause.getMessage() + "); re-routing "
+                + orphaned.size() + " unflushed items and retrying it in " + retryMillis + " ms.");
+        rerouted += orphaned.size();
+        for (NewsItem item : orphaned) {
+            write(item);
+        }
+    }
+
+    private void reconnectDueNodes() {
+        long now = System.currentTimeMillis();
+        for (Node node : nodes) {
+            if (node.sender == null && now >= node.retryAtMillis) {
+                try {
+                    open(node);
+                    System.err.println("Analyzer node " + node.name() + " is reachable again.");
+                } catch (IOException e) {
+                    node.retryAtMillis = now + retryMillis;
+                }
+            }
+        }
+    }
+
+    private void open(Node node) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socketProfile.apply(socket);
+            socket.connect(node.address, CONNECT_TIMEOUT_MILLIS);
+            node.sender = new NewsItemSender(socket, protocol, writeTimeoutMillis, socketProfile.getBufferBytes());
+            downNodes--;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void closeQuietly(Node node) {
+        if (node.sender == null) {
+            return;
+        }
+        try {
+            node.sender.close();
+        } catch (IOException e) {
+            // the connection is being abandoned
+        }
+        node.sender = null;
+        downNodes++;
+    }
+
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    public String getNodeName(int index) {
+        return nodes[index].name();
+    }
+
+    /**
+     * Items successfully flushed to node {@code index}.
+     */
+    public long getSentCount(int index) {
+        return nodes[index].sent;
+    }
+
+    public long getFailoverCount() {
+        return failovers;
+    }
+
+    public long getReroutedCount() {
+        return rerouted;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Node node : nodes) {
+            if (node.sender != null) {
+                try {
+                    node.sender.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+                node.sender = null;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
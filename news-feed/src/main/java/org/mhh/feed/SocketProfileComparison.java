@@ -0,0 +1,169 @@
+package org.mhh.feed;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.mhh.common.NewsItem;
+import org.mhh.common.SocketProfile;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Sends the same items over a loopback connection under several socket profiles and prints, for each,
+ * the throughput, the write system calls that reached the socket and the TCP segments the kernel sent
+ * per item. Segments come from the system-wide {@code OutSegs} counter in {@code /proc/net/snmp} (both
+ * directions, so acknowledgements are included), and are shown as n/a where that file does not exist.
+ * The first row is the old feed: Java serialization straight onto the socket with Nagle's algorithm on.
+ * <p>
+ * Usage: {@code java -cp news-feed.jar org.mhh.feed.SocketProfileComparison [items] [batchSize] [rounds]}
+ */
+public class SocketProfileComparison {
+    private static final int SINK_BUFFER_SIZE = 64 * 1024;
+
+    private static final class Case {
+        final String name;
+        final NewsItemSender.Protocol protocol;
+        final SocketProfile profile;
+
+        Case(String name, NewsItemSender.Protocol protocol, boolean tcpNoDelay, int bufferBytes) {
+            this.name = name;
+            this.protocol = protocol;
+            this.profile = new SocketProfile(tcpNoDelay, 0, 0, true, SocketProfile.DEFAULT_BACKLOG, bufferBytes);
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long writes;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            writes++;
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writes++;
+            out.write(b, off, len);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        int itemCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        NewsGenerator generator = new NewsGenerator();
+        NewsItem[] corpus = new NewsItem[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            corpus[i] = generator.generateNewsItem();
+        }
+        Case[] cases = {
+                new Case("java, unbuffered, nagle", NewsItemSender.Protocol.JAVA_SERIALIZATION, false, 0),
+                new Case("java, 8 KiB buffer, nodelay", NewsItemSender.Protocol.JAVA_SERIALIZATION, true, 8 * 1024),
+                new Case("binary, unbuffered, nagle", NewsItemSender.Protocol.BINARY, false, 0),
+                new Case("binary, unbuffered, nodelay", NewsItemSender.Protocol.BINARY, true, 0),
+                new Case("binary, 8 KiB buffer, nagle", NewsItemSender.Protocol.BINARY, false, 8 * 1024),
+                new Case("binary, 8 KiB buffer, nodelay", NewsItemSender.Protocol.BINARY, true, 8 * 1024),
+                new Case("binary, 64 KiB buffer, nodelay", NewsItemSender.Protocol.BINARY, true, 64 * 1024)
+        };
+
+        try (ServerSocket server = new ServerSocket(0, SocketProfile.DEFAULT_BACKLOG, InetAddress.getLoopbackAddress())) {
+            for (int round = 1; round <= rounds; round++) {
+                System.out.printf("%nRound %d/%d (%,d items, flushed every %d)%n", round, rounds, itemCount, batchSize);
+                System.out.printf("%-32s %14s %12s %14s %14s%n", "profile", "items/s", "MB/s", "writes/item", "segments/item");
+                for (Case c : cases) {
+                    measure(server, c, corpus, batchSize);
+                }
+            }
+        }
+    }
+
+    private static void measure(ServerSocket server, Case c, NewsItem[] corpus, int batchSize)
+            throws IOException, InterruptedException, ExecutionException {
+        CompletableFuture<Long> received = CompletableFuture.supplyAsync(() -> drain(server));
+        long segmentsBefore = readOutSegments();
+        long start = System.nanoTime();
+        CountingOutputStream counted;
+        try (Socket socket = new Socket()) {
+            c.profile.apply(socket);
+            socket.connect(new InetSocketAddress(server.getInetAddress(), server.getLocalPort()));
+            counted = new CountingOutputStream(socket.getOutputStream());
+            try (NewsItemSender sender = new NewsItemSender(counted, c.protocol, c.profile.getBufferBytes())) {
+                for (int i = 0; i < corpus.length; i++) {
+                    sender.write(corpus[i]);
+                    if ((i + 1) % batchSize == 0) {
+                        sender.flush();
+                    }
+                }
+                sender.flush();
+            }
+        }
+        long bytes = received.get(); // the sink has read everything once it sees the end of the stream
+        long elapsed = System.nanoTime() - start;
+        long segments = readOutSegments() - segmentsBefore;
+
+        System.out.printf("%-32s %,14.0f %12.1f %14.3f %14s%n", c.name,
+                corpus.length * 1e9 / elapsed, bytes * 1e3 / elapsed,
+                (double) counted.writes / corpus.length,
+                segmentsBefore < 0 ? "n/a" : String.format("%.3f", (double) segments / corpus.length));
+    }
+
+    private static long drain(ServerSocket server) {
+        try (Socket socket = server.accept(); InputStream in = socket.getInputStream()) {
+            byte[] buffer = new byte[SINK_BUFFER_SIZE];
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                total += read;
+            }
+            return total;
+        } catch (IOException e) {
+            throw new IllegalStateException("Loopback sink failed", e);
+        }
+    }
+
+    // The value under OutSegs on the second "Tcp:" line of /proc/net/snmp; -1 where it is not available.
+    private static long readOutSegments() {
+        try {
+            List<String> lines = Files.readAllLines(Paths.get("/proc/net/snmp"), StandardCharsets.US_ASCII);
+            String[] names = null;
+            for (String line : lines) {
+                if (!line.startsWith("Tcp:")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (names == null) {
+                    names = fields;
+                    continue;
+                }
+                for (int i = 1; i < names.length; i++) {
+                    if (names[i].equals("OutSegs")) {
+                        return Long.parseLong(fields[i]);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // not Linux, or a format this does not know
+        }
+        return -1;
+    }
+}
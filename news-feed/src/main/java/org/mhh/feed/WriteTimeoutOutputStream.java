@@ -0,0 +1,113 @@
+package org.mhh.feed;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Socket output stream whose writes give up after a timeout. Blocking socket writes have no timeout
+ * of their own, so when the analyzer stops reading (it pauses connections that are over their
+ * in-flight budget) a sender would wait forever once the socket buffers are full. A shared watchdog
+ * thread closes the socket of any write or flush blocked for longer than the timeout, and the write
+ * then fails with a {@link SocketTimeoutException}.
+ */
+public class WriteTimeoutOutputStream extends FilterOutputStream {
+    private static final long CHECK_INTERVAL_MILLIS = 100;
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "feed-write-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Socket socket;
+    private final long timeoutNanos;
+    private final ScheduledFuture<?> check;
+    private volatile long blockedSinceNanos; // 0 while no write is in progress
+    private volatile boolean timedOut;
+
+    public WriteTimeoutOutputStream(Socket socket, long timeoutMillis) throws IOException {
+        super(socket.getOutputStream());
+        this.socket = socket;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.check = WATCHDOG.scheduleWithFixedDelay(this::checkBlocked, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkBlocked() {
+        long since = blockedSinceNanos;
+        if (since != 0 && System.nanoTime() - since > timeoutNanos && !timedOut) {
+            timedOut = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // the blocked write fails either way
+            }
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        begin();
+        try {
+            out.write(b);
+        } catch (IOException e) {
+            throw translate(e);
+        } finally {
+            blockedSinceNanos = 0;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        begin();
+        try {
+            out.write(b, off, len);
+        } catch (IOException e) {
+            throw translate(e);
+        } finally {
+            blockedSinceNanos = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        begin();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw translate(e);
+        } finally {
+            blockedSinceNanos = 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        check.cancel(false);
+        super.close();
+    }
+
+    private void begin() throws SocketTimeoutException {
+        if (timedOut) {
+            throw timeoutException();
+        }
+        blockedSinceNanos = System.nanoTime();
+    }
+
+    private IOException translate(IOException e) {
+        return timedOut ? timeoutException() : e;
+    }
+
+    private SocketTimeoutException timeoutException() {
+        return new SocketTimeoutException("Write blocked for more than "
+                + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms; the analyzer is not reading");
+    }
+}
@@ -0,0 +1,113 @@
+package org.mhh.common;
+
+/**
+ * @auther:MHEsfandiari
+ */
+
+import org.junit.Test;
+import org.mhh.feed.NewsGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NewsItemCodecTest {
+    private static final NewsItem[] EDGE_CASES = {
+            new NewsItem("x", 0),
+            new NewsItem("Ünïcödé headline — ✓ 𝄞", 9),
+            new NewsItem(repeat('a', 200), 5), // needs a two-byte varint
+            new NewsItem(repeat('b', NewsItemCodec.MAX_HEADLINE_BYTES), 1)
+    };
+
+    @Test
+    public void binaryFramesRoundTrip() throws IOException {
+        for (NewsItem[] items : corpora()) {
+            ByteBuffer frames = encode(items);
+            for (NewsItem expected : items) {
+                assertTrue("encodedLength disagrees with encode for " + expected,
+                        frames.remaining() >= NewsItemCodec.encodedLength(expected));
+                assertEquals(expected, NewsItemCodec.decode(frames));
+            }
+            assertFalse("trailing bytes after the last frame", frames.hasRemaining());
+        }
+    }
+
+    @Test
+    public void binaryStreamRoundTrip() throws IOException {
+        for (NewsItem[] items : corpora()) {
+            ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+            for (NewsItem item : items) {
+                NewsItemCodec.write(item, streamed);
+            }
+            ByteArrayInputStream in = new ByteArrayInputStream(streamed.toByteArray());
+            for (NewsItem expected : items) {
+                assertEquals(expected, NewsItemCodec.read(in));
+            }
+            assertNull("expected end of stream after the last frame", NewsItemCodec.read(in));
+        }
+    }
+
+    @Test
+    public void truncatedFrameIsLeftUntouched() throws IOException {
+        for (NewsItem item : EDGE_CASES) {
+            ByteBuffer partial = encode(new NewsItem[]{item});
+            partial.limit(partial.limit() - 1);
+            assertNull(NewsItemCodec.decode(partial));
+            assertEquals(0, partial.position());
+        }
+    }
+
+    @Test
+    public void javaSerializationStaysCompatible() throws IOException, ClassNotFoundException {
+        for (NewsItem[] items : corpora()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                for (NewsItem item : items) {
+                    out.writeObject(item);
+                }
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                for (NewsItem expected : items) {
+                    assertEquals(expected, in.readObject());
+                }
+            }
+        }
+    }
+
+    private static NewsItem[][] corpora() {
+        NewsGenerator generator = new NewsGenerator();
+        NewsItem[] generated = new NewsItem[10_000];
+        for (int i = 0; i < generated.length; i++) {
+            generated[i] = generator.generateNewsItem();
+        }
+        return new NewsItem[][]{EDGE_CASES, generated};
+    }
+
+    private static ByteBuffer encode(NewsItem[] items) {
+        int size = 0;
+        for (NewsItem item : items) {
+            size += NewsItemCodec.encodedLength(item);
+        }
+        ByteBuffer frames = ByteBuffer.allocate(size);
+        for (NewsItem item : items) {
+            NewsItemCodec.encode(item, frames);
+        }
+        frames.flip();
+        return frames;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}